@@ -0,0 +1,94 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.CouponServiceApplication;
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.dto.ValidationResponse;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.service.CouponService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный путь validateAndApply против встроенной H2
+ *
+ * hot - все потоки применяют один купон (конкуренция за одну строку),
+ * cold - каждый вызов применяет случайный купон из большого набора.
+ * Дополнительные свойства контекста можно передать через -Dbench.profiles.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ApplyBenchmark {
+
+    private static final int COLD_COUPONS = 1000;
+
+    private final BigDecimal orderAmount = new BigDecimal("1500.00");
+    private ConfigurableApplicationContext context;
+    private CouponService couponService;
+    private String hotCode;
+    private String[] coldCodes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(CouponServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(System.getProperty("bench.profiles", "default").split(","))
+                .properties(
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN",
+                        "logging.level.com.ecommerce.coupon=WARN",
+                        "logging.level.org.hibernate.SQL=WARN")
+                .run();
+        couponService = context.getBean(CouponService.class);
+
+        hotCode = createCoupon();
+        coldCodes = new String[COLD_COUPONS];
+        for (int i = 0; i < COLD_COUPONS; i++) {
+            coldCodes[i] = createCoupon();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ValidationResponse applyHotSingleThread() {
+        return couponService.validateAndApply(hotCode, orderAmount);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ValidationResponse applyHotContended() {
+        return couponService.validateAndApply(hotCode, orderAmount);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ValidationResponse applyColdContended() {
+        String code = coldCodes[ThreadLocalRandom.current().nextInt(coldCodes.length)];
+        return couponService.validateAndApply(code, orderAmount);
+    }
+
+    private String createCoupon() {
+        CouponCreateRequest request = CouponCreateRequest.builder()
+                .discountType(DiscountType.PERCENTAGE)
+                .discountValue(new BigDecimal("10.00"))
+                .minOrderAmount(new BigDecimal("100.00"))
+                .expiryDate(LocalDateTime.now().plusYears(1))
+                .usageLimit(Integer.MAX_VALUE)
+                .build();
+        return couponService.createCoupon(request).getCode();
+    }
+}
@@ -0,0 +1,74 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.repository.CouponRepository;
+import com.ecommerce.coupon.service.PermutationCouponCodeGenerator;
+import com.ecommerce.coupon.service.RandomCouponCodeGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Генерация кодов: исходный способ (общий java.util.Random + StringBuilder)
+ * против стратегий {@link RandomCouponCodeGenerator} и {@link PermutationCouponCodeGenerator}
+ *
+ * Проверка уникальности в БД не учитывается, сравнивается только генерация.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodeGeneratorBenchmark {
+
+    private static final Random LEGACY_RANDOM = new Random();
+
+    private RandomCouponCodeGenerator randomGenerator;
+    private PermutationCouponCodeGenerator permutationGenerator;
+
+    @Setup
+    public void setUp() {
+        CouponRepository repository = StubCouponRepository.create();
+        randomGenerator = new RandomCouponCodeGenerator(repository);
+        permutationGenerator = new PermutationCouponCodeGenerator(repository, "benchmark-key");
+    }
+
+    @Benchmark
+    public String legacy() {
+        StringBuilder codeBuilder = new StringBuilder("SALE");
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        for (int i = 0; i < 6; i++) {
+            codeBuilder.append(chars.charAt(LEGACY_RANDOM.nextInt(chars.length())));
+        }
+        return codeBuilder.toString();
+    }
+
+    @Benchmark
+    public String random() {
+        return randomGenerator.nextCode();
+    }
+
+    @Benchmark
+    public String permutation() {
+        return permutationGenerator.nextCode();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String legacyContended() {
+        return legacy();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String randomContended() {
+        return randomGenerator.nextCode();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String permutationContended() {
+        return permutationGenerator.nextCode();
+    }
+}
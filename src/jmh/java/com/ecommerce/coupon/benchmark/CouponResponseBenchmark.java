@@ -0,0 +1,54 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.dto.CouponResponse;
+import com.ecommerce.coupon.model.Coupon;
+import com.ecommerce.coupon.model.DiscountType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Конвертация entity в DTO и сериализация ответа в JSON
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CouponResponseBenchmark {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private Coupon coupon;
+
+    @Setup
+    public void setUp() {
+        coupon = Coupon.builder()
+                .id(42L)
+                .code("SALEBENCH1")
+                .discountType(DiscountType.PERCENTAGE)
+                .discountValue(new BigDecimal("15.00"))
+                .minOrderAmount(new BigDecimal("1000.00"))
+                .expiryDate(LocalDateTime.now().plusYears(1))
+                .usageLimit(1000)
+                .usageCount(10)
+                .active(true)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    @Benchmark
+    public CouponResponse fromEntity() {
+        return CouponResponse.fromEntity(coupon);
+    }
+
+    @Benchmark
+    public byte[] fromEntityAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(CouponResponse.fromEntity(coupon));
+    }
+}
@@ -0,0 +1,136 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.service.CustomerUsageSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Учет использований одного купона по покупателям: память и задержка проверки
+ *
+ * compact - {@link CustomerUsageSet} (long[] + byte[], открытая адресация),
+ * boxed - ConcurrentHashMap&lt;Long, Integer&gt; с атомарным compute.
+ * В таблице customers покупателей со случайными идентификаторами, лимит - 1.
+ * repeatCustomer - проверка покупателя, уже применившего купон (отказ),
+ * newCustomer - проверка нового покупателя и возврат его использования.
+ *
+ * Память таблицы (прирост кучи после сборки мусора, для compact - и точный
+ * размер массивов) печатается после замеров в пересчете на миллион
+ * покупателей. Конкуренцию за один купон показывает запуск с -t 4.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CustomerLimitBenchmark {
+
+    private static final int LIMIT = 1;
+    private static final int PROBES = 1 << 16;
+
+    @Param({"100000", "1000000"})
+    private int customers;
+
+    @Param({"compact", "boxed"})
+    private String structure;
+
+    private CustomerUsageSet compact;
+    private ConcurrentHashMap<Long, Integer> boxed;
+    private long[] existing;
+    private long[] absent;
+    private long heapBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        existing = new long[PROBES];
+        absent = new long[PROBES];
+        long[] ids = new long[customers];
+        for (int i = 0; i < customers; i++) {
+            // Четные идентификаторы в таблице, нечетные - новые покупатели
+            ids[i] = (random.nextLong(1L << 40) + 1) << 1;
+        }
+        for (int i = 0; i < PROBES; i++) {
+            existing[i] = ids[random.nextInt(customers)];
+            absent[i] = ((random.nextLong(1L << 40)) << 1) | 1;
+        }
+
+        long before = usedHeap();
+        if ("compact".equals(structure)) {
+            compact = new CustomerUsageSet(0);
+            for (long id : ids) {
+                compact.tryAcquire(id, LIMIT);
+            }
+        } else {
+            boxed = new ConcurrentHashMap<>();
+            for (long id : ids) {
+                acquireBoxed(id);
+            }
+        }
+        heapBytes = usedHeap() - before;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        double perMillion = 1_000_000.0 / customers / (1 << 20);
+        System.out.printf("%n%s, покупателей %d: куча %.1f МБ на миллион (%.1f байт на покупателя)",
+                structure, customers, heapBytes * perMillion, (double) heapBytes / customers);
+        if (compact != null) {
+            System.out.printf(", массивы %.1f МБ на миллион", compact.sizeInBytes() * perMillion);
+        }
+        System.out.println();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int advance() {
+            next = (next + 1) & (PROBES - 1);
+            return next;
+        }
+    }
+
+    @Benchmark
+    public boolean repeatCustomer(Cursor cursor) {
+        long id = existing[cursor.advance()];
+        return compact != null ? compact.tryAcquire(id, LIMIT) : acquireBoxed(id);
+    }
+
+    @Benchmark
+    public boolean newCustomer(Cursor cursor) {
+        long id = absent[cursor.advance()];
+        if (compact != null) {
+            boolean acquired = compact.tryAcquire(id, LIMIT);
+            compact.release(id, 1);
+            return acquired;
+        }
+        boolean acquired = acquireBoxed(id);
+        boxed.computeIfPresent(id, (key, uses) -> uses > 1 ? uses - 1 : null);
+        return acquired;
+    }
+
+    private boolean acquireBoxed(long id) {
+        boolean[] acquired = new boolean[1];
+        boxed.compute(id, (key, uses) -> {
+            int current = uses == null ? 0 : uses;
+            if (current >= LIMIT) {
+                return uses;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,61 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.service.DiscountCalculator;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчет скидки для каждого типа купона
+ *
+ * decimal - исходный расчет на BigDecimal, fixedPoint - расчет в копейках.
+ * Скорость аллокаций видна при запуске с -prof gc.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DiscountCalculatorBenchmark {
+
+    @Param({"PERCENTAGE", "FIXED_AMOUNT", "FREE_SHIPPING"})
+    private DiscountType discountType;
+
+    private final DiscountCalculator calculator = new DiscountCalculator();
+    private final DiscountCalculator decimalCalculator = new DiscountCalculator("decimal");
+    private final BigDecimal orderAmount = new BigDecimal("1234.56");
+    private CouponDefinition coupon;
+
+    @Setup
+    public void setUp() {
+        coupon = CouponDefinition.builder()
+                .code("SALEBENCH1")
+                .discountType(discountType)
+                .discountValue(discountType == DiscountType.PERCENTAGE ? new BigDecimal("15.00") : new BigDecimal("500.00"))
+                .minOrderAmount(BigDecimal.ZERO)
+                .expiryDate(LocalDateTime.now().plusYears(1))
+                .usageLimit(Integer.MAX_VALUE)
+                .active(true)
+                .build();
+    }
+
+    @Benchmark
+    public BigDecimal calculate() {
+        return calculator.calculate(coupon, orderAmount);
+    }
+
+    @Benchmark
+    public DiscountCalculator.Price decimal() {
+        return decimalCalculator.price(coupon, orderAmount);
+    }
+
+    @Benchmark
+    public DiscountCalculator.Price fixedPoint() {
+        return calculator.price(coupon, orderAmount);
+    }
+}
@@ -0,0 +1,111 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.CouponServiceApplication;
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.dto.EvaluateRequest;
+import com.ecommerce.coupon.dto.EvaluateResponse;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.service.BulkCouponService;
+import com.ecommerce.coupon.service.CouponService;
+import com.ecommerce.coupon.service.CouponThresholdIndex;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Подбор лучших купонов к сумме заказа по индексу порогов minOrderAmount
+ *
+ * 100k активных купонов: 40 шаблонов (тип скидки, значение, порог, срок)
+ * по 2500 купонов, все публичные (publicOffer). all - подбор среди всех купонов,
+ * codes - среди 20 кандидатов.
+ * Цель - меньше миллисекунды на вызов.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluateBenchmark {
+
+    private static final int TEMPLATES = 40;
+    private static final int COUPONS_PER_TEMPLATE = 2500;
+    /** Типы без правил промо-акции (RULES требует rules) */
+    private static final DiscountType[] TYPES = {
+            DiscountType.PERCENTAGE, DiscountType.FIXED_AMOUNT, DiscountType.FREE_SHIPPING};
+
+    @Param({"150.00", "1500.00", "50000.00"})
+    private String orderAmount;
+
+    private ConfigurableApplicationContext context;
+    private CouponService couponService;
+    private EvaluateRequest all;
+    private EvaluateRequest candidates;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(CouponServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.jpa.show-sql=false",
+                        "coupon.sweeper.enabled=false",
+                        "logging.level.root=WARN",
+                        "logging.level.com.ecommerce.coupon=WARN",
+                        "logging.level.org.hibernate.SQL=WARN")
+                .run();
+        couponService = context.getBean(CouponService.class);
+
+        BulkCouponService bulkCouponService = context.getBean(BulkCouponService.class);
+        for (int i = 0; i < TEMPLATES; i++) {
+            bulkCouponService.generate(COUPONS_PER_TEMPLATE, template(i), progress -> { });
+        }
+        List<String> codes = IntStream.range(0, 20)
+                .mapToObj(i -> couponService.createCoupon(template(i)).getCode())
+                .collect(Collectors.toList());
+        if (context.getBean(CouponThresholdIndex.class).size() < (long) TEMPLATES * COUPONS_PER_TEMPLATE) {
+            throw new IllegalStateException("Индекс заполнен не полностью");
+        }
+
+        BigDecimal amount = new BigDecimal(orderAmount);
+        all = EvaluateRequest.builder().orderAmount(amount).limit(10).build();
+        candidates = EvaluateRequest.builder().orderAmount(amount).codes(codes).limit(10).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public EvaluateResponse all() {
+        return couponService.evaluate(all);
+    }
+
+    @Benchmark
+    public EvaluateResponse codes() {
+        return couponService.evaluate(candidates);
+    }
+
+    private static CouponCreateRequest template(int i) {
+        DiscountType type = TYPES[i % TYPES.length];
+        BigDecimal value = type == DiscountType.PERCENTAGE
+                ? BigDecimal.valueOf(5 + i % 30)
+                : BigDecimal.valueOf(100L * (1 + i % 25));
+        return CouponCreateRequest.builder()
+                .discountType(type)
+                .discountValue(value)
+                .minOrderAmount(BigDecimal.valueOf(100L * (i % 10)))
+                .expiryDate(LocalDateTime.now().plusDays(30 + i))
+                .usageLimit(100)
+                .publicOffer(true)
+                .build();
+    }
+}
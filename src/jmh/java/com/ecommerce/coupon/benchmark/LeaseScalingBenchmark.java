@@ -0,0 +1,172 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.CouponServiceApplication;
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.service.ApplyResult;
+import com.ecommerce.coupon.service.CouponService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Масштабирование применения одного купона на нескольких узлах
+ *
+ * Узлы - отдельные контексты приложения в одной JVM с общей файловой H2
+ * (профиль prod). database - каждый узел обновляет строку купона на каждое
+ * применение, lease - узлы арендуют блоки квоты.
+ *
+ * Потоков (THREADS) больше, чем соединений в пуле узла (10 в профиле prod):
+ * потоки, ожидающие lock аренды внутри транзакции применения, удерживают все
+ * соединения пула, и получение блока не должно от них зависеть.
+ *
+ * После замеров проверяется точность лимита: все узлы конкурентно применяют
+ * купон с небольшим лимитом, затем узлы останавливаются (аренды возвращаются)
+ * и usageCount в БД должен совпасть с количеством успешных применений и не
+ * превысить лимит.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(LeaseScalingBenchmark.THREADS)
+@State(Scope.Benchmark)
+public class LeaseScalingBenchmark {
+
+    static final int THREADS = 32;
+
+    private static final BigDecimal ORDER_AMOUNT = new BigDecimal("1500.00");
+    private static final int EXACTNESS_LIMIT = 20_000;
+
+    @Param({"1", "2", "4"})
+    private int nodes;
+
+    @Param({"database", "lease"})
+    private String mode;
+
+    private Path dataDir;
+    private List<ConfigurableApplicationContext> contexts;
+    private CouponService[] services;
+    private String hotCode;
+    private final AtomicInteger nextNode = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Node {
+        private CouponService service;
+
+        @Setup(Level.Trial)
+        public void pick(LeaseScalingBenchmark benchmark) {
+            service = benchmark.services[benchmark.nextNode.getAndIncrement() % benchmark.nodes];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("coupon-lease-bench");
+        contexts = new ArrayList<>();
+        services = new CouponService[nodes];
+        // Узлы запускаются по очереди: миграции выполняет первый
+        for (int i = 0; i < nodes; i++) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(CouponServiceApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .profiles("prod")
+                    .properties(
+                            "coupon.storage.path=" + dataDir.resolve("coupondb").toAbsolutePath(),
+                            "coupon.redemption.mode=" + mode,
+                            "coupon.sweeper.enabled=false",
+                            "logging.level.root=WARN",
+                            "logging.level.com.ecommerce.coupon=WARN")
+                    .run();
+            contexts.add(context);
+            services[i] = context.getBean(CouponService.class);
+        }
+        hotCode = createCoupon(Integer.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try {
+            verifyExactLimit();
+        } finally {
+            try (Stream<Path> files = Files.walk(dataDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public ApplyResult applyHot(Node node) {
+        return node.service.tryApply(hotCode, ORDER_AMOUNT);
+    }
+
+    private void verifyExactLimit() throws InterruptedException, SQLException {
+        String code = createCoupon(EXACTNESS_LIMIT);
+        AtomicLong applied = new AtomicLong();
+        int workers = THREADS;
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        for (int w = 0; w < workers; w++) {
+            CouponService service = services[w % nodes];
+            executor.execute(() -> {
+                for (int i = 0; i < EXACTNESS_LIMIT / workers * 2; i++) {
+                    if (service.tryApply(code, ORDER_AMOUNT).isApplied()) {
+                        applied.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.MINUTES);
+
+        // Остановка узлов возвращает неиспользованные аренды
+        contexts.forEach(ConfigurableApplicationContext::close);
+
+        int usageCount;
+        String url = "jdbc:h2:file:" + dataDir.resolve("coupondb").toAbsolutePath();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT usage_count FROM coupons WHERE code = ?")) {
+            statement.setString(1, code);
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                usageCount = rs.getInt(1);
+            }
+        }
+        if (applied.get() > EXACTNESS_LIMIT || usageCount != applied.get()) {
+            throw new IllegalStateException("Лимит нарушен: применено " + applied.get()
+                    + ", usageCount " + usageCount + ", лимит " + EXACTNESS_LIMIT);
+        }
+    }
+
+    private String createCoupon(int usageLimit) {
+        return services[0].createCoupon(CouponCreateRequest.builder()
+                        .discountType(DiscountType.PERCENTAGE)
+                        .discountValue(new BigDecimal("10.00"))
+                        .minOrderAmount(new BigDecimal("100.00"))
+                        .expiryDate(LocalDateTime.now().plusYears(1))
+                        .usageLimit(usageLimit)
+                        .build())
+                .getCode();
+    }
+}
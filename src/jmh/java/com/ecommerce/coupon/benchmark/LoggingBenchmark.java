@@ -0,0 +1,74 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.CouponServiceApplication;
+import com.ecommerce.coupon.controller.CouponController;
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.dto.ValidationRequest;
+import com.ecommerce.coupon.model.DiscountType;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность применения купона при разных настройках логирования
+ *
+ * default - текущая конфигурация (синхронная консоль, SQL в логе, DEBUG),
+ * prod - асинхронный аппендер и выборочное логирование запросов.
+ * Вызов идет через контроллер, чтобы учитывались и логи запроса.
+ * В обоих случаях используется in-memory H2 (prod создает схему миграциями),
+ * чтобы сравнивалось только логирование.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    @Param({"default", "prod"})
+    private String profile;
+
+    private ConfigurableApplicationContext context;
+    private CouponController controller;
+    private String code;
+    private final ValidationRequest request = ValidationRequest.builder()
+            .orderAmount(new BigDecimal("1500.00"))
+            .build();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(CouponServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(profile)
+                .properties("spring.datasource.url=jdbc:h2:mem:logging-bench")
+                .run();
+        controller = context.getBean(CouponController.class);
+        code = controller.createCoupon(CouponCreateRequest.builder()
+                        .discountType(DiscountType.PERCENTAGE)
+                        .discountValue(new BigDecimal("10.00"))
+                        .minOrderAmount(new BigDecimal("100.00"))
+                        .expiryDate(LocalDateTime.now().plusYears(1))
+                        .usageLimit(Integer.MAX_VALUE)
+                        .build())
+                .getBody()
+                .getCode();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ResponseEntity<?> apply() {
+        return controller.applyCoupon(code, request, null);
+    }
+}
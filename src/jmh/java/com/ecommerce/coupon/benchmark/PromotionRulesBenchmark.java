@@ -0,0 +1,156 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.model.CartLine;
+import com.ecommerce.coupon.model.CompiledPromotion;
+import com.ecommerce.coupon.model.FixedPointPricing;
+import com.ecommerce.coupon.model.PromotionRules;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчет скидки по правилам промо-акции в зависимости от числа правил и строк корзины
+ *
+ * compiled - {@link CompiledPromotion}: один проход по строкам и массивы правил,
+ * interpreted - обход модели правил на BigDecimal с отбором строк для каждого
+ * правила (правила x строки). Правила чередуют процент по категории, сумму по
+ * артикулу и ступени по сумме заказа, сочетание - SUM.
+ * Скорость аллокаций видна при запуске с -prof gc.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PromotionRulesBenchmark {
+
+    @Param({"1", "8", "64"})
+    private int ruleCount;
+
+    @Param({"10", "100"})
+    private int lineCount;
+
+    private PromotionRules rules;
+    private CompiledPromotion promotion;
+    private List<CartLine> lines;
+    private BigDecimal orderAmount;
+    private long orderMinor;
+
+    @Setup
+    public void setUp() {
+        List<PromotionRules.Rule> ruleList = new ArrayList<>();
+        for (int i = 0; i < ruleCount; i++) {
+            switch (i % 3) {
+                case 0 -> ruleList.add(new PromotionRules.Rule(PromotionRules.Effect.PERCENTAGE,
+                        new BigDecimal("5"), null, new BigDecimal("300"), null,
+                        new PromotionRules.Condition(null, "cat" + (i % 8), 2, null),
+                        PromotionRules.Scope.MATCHED));
+                case 1 -> ruleList.add(new PromotionRules.Rule(PromotionRules.Effect.FIXED_AMOUNT,
+                        null, new BigDecimal("50"), null, null,
+                        new PromotionRules.Condition("sku" + i, null, null, null),
+                        PromotionRules.Scope.ORDER));
+                default -> ruleList.add(new PromotionRules.Rule(PromotionRules.Effect.TIERED,
+                        null, null, null,
+                        List.of(new PromotionRules.Tier(new BigDecimal("1000"), null, new BigDecimal("100")),
+                                new PromotionRules.Tier(new BigDecimal("5000"), new BigDecimal("3"), null)),
+                        null, PromotionRules.Scope.ORDER));
+            }
+        }
+        rules = new PromotionRules(PromotionRules.Stacking.SUM, ruleList);
+        promotion = CompiledPromotion.of(rules);
+
+        lines = new ArrayList<>();
+        BigDecimal total = BigDecimal.ZERO;
+        for (int j = 0; j < lineCount; j++) {
+            CartLine line = CartLine.builder()
+                    .sku("sku" + j)
+                    .category("cat" + (j % 8))
+                    .quantity(1 + j % 3)
+                    .unitPrice(BigDecimal.valueOf(10_000 + 37L * j, 2))
+                    .build();
+            lines.add(line);
+            total = total.add(line.getUnitPrice().multiply(BigDecimal.valueOf(line.getQuantity())));
+        }
+        orderAmount = total;
+        orderMinor = FixedPointPricing.toMinor(total);
+
+        long compiled = promotion.discount(orderMinor, lines);
+        long interpreted = FixedPointPricing.toMinor(interpret(rules, orderAmount, lines));
+        if (compiled != interpreted) {
+            throw new IllegalStateException("Расчеты расходятся: " + compiled + " и " + interpreted);
+        }
+    }
+
+    @Benchmark
+    public long compiled() {
+        return promotion.discount(orderMinor, lines);
+    }
+
+    @Benchmark
+    public BigDecimal interpreted() {
+        return interpret(rules, orderAmount, lines);
+    }
+
+    /**
+     * Прямой обход модели правил: для каждого правила - отбор строк корзины
+     */
+    private static BigDecimal interpret(PromotionRules rules, BigDecimal orderAmount, List<CartLine> lines) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (PromotionRules.Rule rule : rules.rules()) {
+            PromotionRules.Condition when = rule.when();
+            long quantity = 0;
+            BigDecimal amount = BigDecimal.ZERO;
+            boolean filtered = when != null && (when.sku() != null || when.category() != null);
+            for (CartLine line : lines) {
+                boolean matches = !filtered
+                        || (when.sku() != null && when.sku().equals(line.getSku()))
+                        || (when.category() != null && when.category().equals(line.getCategory()));
+                if (matches) {
+                    quantity += line.getQuantity();
+                    amount = amount.add(line.getUnitPrice().multiply(BigDecimal.valueOf(line.getQuantity())));
+                }
+            }
+            if (!filtered) {
+                amount = orderAmount;
+            } else if (quantity == 0) {
+                continue;
+            }
+            if (when != null && ((when.minQuantity() != null && quantity < when.minQuantity())
+                    || (when.minAmount() != null && amount.compareTo(when.minAmount()) < 0))) {
+                continue;
+            }
+            BigDecimal base = rule.scope() == PromotionRules.Scope.MATCHED ? amount : orderAmount;
+            BigDecimal discount;
+            switch (rule.effect()) {
+                case PERCENTAGE -> discount = percent(base, rule.percent());
+                case FIXED_AMOUNT -> discount = rule.amount().min(base);
+                default -> {
+                    PromotionRules.Tier reached = null;
+                    for (PromotionRules.Tier tier : rule.tiers()) {
+                        if (base.compareTo(tier.from()) >= 0) {
+                            reached = tier;
+                        }
+                    }
+                    if (reached == null) {
+                        continue;
+                    }
+                    discount = reached.percent() != null ? percent(base, reached.percent()) : reached.amount().min(base);
+                }
+            }
+            if (rule.cap() != null) {
+                discount = discount.min(rule.cap());
+            }
+            total = total.add(discount);
+        }
+        return total.min(orderAmount).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal percent(BigDecimal base, BigDecimal percent) {
+        return base.multiply(percent).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+    }
+}
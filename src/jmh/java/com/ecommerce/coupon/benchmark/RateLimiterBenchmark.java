@@ -0,0 +1,59 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.service.KeyedRateLimiter;
+import com.ecommerce.coupon.service.TokenBucket;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость проверки ограничителя частоты на один запрос
+ *
+ * Лимиты заданы так, чтобы запросы проходили: измеряется сама проверка,
+ * а не доля отказов.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+
+    private static final int CLIENTS = 10_000;
+
+    private TokenBucket bucket;
+    private KeyedRateLimiter limiter;
+    private String[] clients;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bucket = new TokenBucket(1e9, Integer.MAX_VALUE, System.nanoTime());
+        limiter = new KeyedRateLimiter(1e9, Integer.MAX_VALUE, CLIENTS * 2L, Duration.ofMinutes(10));
+        clients = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = "10.0." + (i / 256) + "." + (i % 256);
+            limiter.tryAcquire(clients[i], System.nanoTime());
+        }
+    }
+
+    @Benchmark
+    public boolean bucket() {
+        return bucket.tryAcquire(System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean bucketContended() {
+        return bucket.tryAcquire(System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean keyedManyClients() {
+        String client = clients[ThreadLocalRandom.current().nextInt(CLIENTS)];
+        return limiter.tryAcquire(client, System.nanoTime());
+    }
+}
@@ -0,0 +1,114 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.CouponServiceApplication;
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.dto.ValidationResponse;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.service.CouponService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Время старта и пропускная способность применения купона:
+ * in-memory H2 с ddl-auto (memory) против файловой H2 с миграциями Flyway (file)
+ *
+ * startup - запуск и остановка контекста; для file после первого запуска
+ * база уже существует, как при обычном перезапуске сервиса.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class StorageBenchmark {
+
+    private static final BigDecimal ORDER_AMOUNT = new BigDecimal("1500.00");
+
+    @State(Scope.Benchmark)
+    public static class Storage {
+
+        @Param({"memory", "file"})
+        private String storage;
+
+        private Path dataDir;
+
+        @Setup(Level.Trial)
+        public void createDataDir() throws IOException {
+            dataDir = Files.createTempDirectory("coupon-storage-bench");
+        }
+
+        @TearDown(Level.Trial)
+        public void deleteDataDir() throws IOException {
+            try (Stream<Path> files = Files.walk(dataDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+
+        ConfigurableApplicationContext start() {
+            SpringApplicationBuilder builder = new SpringApplicationBuilder(CouponServiceApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .properties(
+                            "spring.jpa.show-sql=false",
+                            "logging.level.root=WARN",
+                            "logging.level.com.ecommerce.coupon=WARN",
+                            "logging.level.org.hibernate.SQL=WARN");
+            if ("file".equals(storage)) {
+                builder.profiles("prod")
+                        .properties("coupon.storage.path=" + dataDir.resolve("coupondb").toAbsolutePath());
+            }
+            return builder.run();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Running {
+
+        private ConfigurableApplicationContext context;
+        private CouponService couponService;
+        private String code;
+
+        @Setup(Level.Trial)
+        public void start(Storage storage) {
+            context = storage.start();
+            couponService = context.getBean(CouponService.class);
+            code = couponService.createCoupon(CouponCreateRequest.builder()
+                            .discountType(DiscountType.PERCENTAGE)
+                            .discountValue(new BigDecimal("10.00"))
+                            .minOrderAmount(new BigDecimal("100.00"))
+                            .expiryDate(LocalDateTime.now().plusYears(1))
+                            .usageLimit(Integer.MAX_VALUE)
+                            .build())
+                    .getCode();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 10)
+    public void startup(Storage storage) {
+        storage.start().close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Threads(4)
+    public ValidationResponse apply(Running running) {
+        return running.couponService.validateAndApply(running.code, ORDER_AMOUNT);
+    }
+}
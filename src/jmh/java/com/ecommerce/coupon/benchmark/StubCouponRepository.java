@@ -0,0 +1,30 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.repository.CouponRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Заглушка репозитория для бенчмарков без БД
+ *
+ * Поддерживает только методы, которые нужны генераторам кодов.
+ */
+final class StubCouponRepository {
+
+    private StubCouponRepository() {
+    }
+
+    static CouponRepository create() {
+        AtomicLong sequence = new AtomicLong(1);
+        return (CouponRepository) Proxy.newProxyInstance(
+                CouponRepository.class.getClassLoader(),
+                new Class<?>[]{CouponRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "count" -> 0L;
+                    case "existsByCode" -> false;
+                    case "nextCodeBlock" -> sequence.getAndAdd(1000);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
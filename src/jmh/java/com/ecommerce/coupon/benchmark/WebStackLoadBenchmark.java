@@ -0,0 +1,193 @@
+package com.ecommerce.coupon.benchmark;
+
+import com.ecommerce.coupon.CouponServiceApplication;
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.service.CouponService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочное сравнение стеков на POST /apply: servlet на пуле потоков,
+ * servlet на виртуальных потоках (профиль virtual) и WebFlux/R2DBC
+ *
+ * Приложение запускается целиком на случайном порту, клиент (java.net.http)
+ * держит concurrency одновременных запросов. Одна операция - волна из
+ * concurrency запросов, запросов в секунду = score * concurrency.
+ * Задержка каждого запроса записывается, p50/p99/p99.9 печатаются после
+ * каждой итерации (последние строки - итерации замера). Ответы кроме 200
+ * (например, 503 при перегрузке реактивного стека) подсчитываются и
+ * печатаются после замера.
+ *
+ * Каждый запрос волны идет по своему соединению, и клиент и сервер живут в
+ * одном процессе: при concurrency 10000 нужно около 20000 дескрипторов
+ * (ulimit -n), лимит соединений Tomcat поднят до concurrency.
+ *
+ * Стек virtual требует JDK 21 (профиль Maven java21), reactive - профиль
+ * Maven reactive; без них соответствующий вариант завершается ошибкой,
+ * остальные замеряются. Все три стека:
+ * ./mvnw -Pjava21,benchmarks,reactive compile exec:exec -Djmh.include=WebStackLoad
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WebStackLoadBenchmark {
+
+    private static final String ORDER_JSON = "{\"orderAmount\": 1500.00}";
+
+    @Param({"servlet", "virtual", "reactive"})
+    private String stack;
+
+    @Param({"1000", "5000", "10000"})
+    private int concurrency;
+
+    private ConfigurableApplicationContext context;
+    private ExecutorService clientExecutor;
+    private HttpClient client;
+    private HttpRequest apply;
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final LatencyRecorder latencies = new LatencyRecorder(1 << 22);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(CouponServiceApplication.class)
+                .properties(
+                        "server.port=0",
+                        "server.tomcat.max-connections=" + (concurrency + 1000),
+                        "server.tomcat.accept-count=" + concurrency,
+                        "spring.jpa.show-sql=false",
+                        "coupon.rate-limit.enabled=false",
+                        "coupon.sweeper.enabled=false",
+                        "coupon.logging.request-sample-rate=0",
+                        "logging.level.root=WARN",
+                        "logging.level.com.ecommerce.coupon=WARN");
+        if ("virtual".equals(stack)) {
+            // На JDK 17 Spring Boot молча оставил бы пул платформенных потоков
+            if (Runtime.version().feature() < 21) {
+                throw new IllegalStateException("Стек virtual требует JDK 21 (профиль Maven java21)");
+            }
+            builder.profiles("virtual");
+        } else if ("reactive".equals(stack)) {
+            builder.profiles("reactive");
+        }
+        context = builder.run();
+
+        String code = context.getBean(CouponService.class).createCoupon(CouponCreateRequest.builder()
+                        .discountType(DiscountType.PERCENTAGE)
+                        .discountValue(new BigDecimal("10.00"))
+                        .minOrderAmount(new BigDecimal("100.00"))
+                        .expiryDate(LocalDateTime.now().plusYears(1))
+                        .usageLimit(Integer.MAX_VALUE)
+                        .build())
+                .getCode();
+
+        int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+        clientExecutor = Executors.newFixedThreadPool(8);
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        apply = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/coupons/" + code + "/apply"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(ORDER_JSON))
+                .build();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetLatencies() {
+        latencies.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printLatencies() {
+        System.out.printf("%n%s, concurrency %d: p50 %.2f мс, p99 %.2f мс, p99.9 %.2f мс (%d запросов)%n",
+                stack, concurrency, latencies.percentileMillis(0.50), latencies.percentileMillis(0.99),
+                latencies.percentileMillis(0.999), latencies.count());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%s, concurrency %d: запросов %d, ответов не 200: %d%n",
+                stack, concurrency, requests.get(), failures.get());
+        clientExecutor.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public void applyWave() {
+        CompletableFuture<?>[] wave = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            long sentAt = System.nanoTime();
+            wave[i] = client.sendAsync(apply, HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(response -> {
+                        latencies.record(System.nanoTime() - sentAt);
+                        if (response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                    });
+        }
+        CompletableFuture.allOf(wave).join();
+        requests.addAndGet(concurrency);
+    }
+
+    /**
+     * Задержки запросов одной итерации (сверх capacity не записываются)
+     */
+    static final class LatencyRecorder {
+
+        private final long[] samples;
+        private final AtomicInteger next = new AtomicInteger();
+
+        LatencyRecorder(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        void record(long nanos) {
+            int slot = next.getAndIncrement();
+            if (slot < samples.length) {
+                samples[slot] = nanos;
+            }
+        }
+
+        void reset() {
+            next.set(0);
+        }
+
+        int count() {
+            return Math.min(next.get(), samples.length);
+        }
+
+        double percentileMillis(double percentile) {
+            int count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(count - 1, Math.ceil(percentile * count) - 1);
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.ecommerce.coupon.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DataSource с ограничением числа одновременно занятых соединений
+ *
+ * Перед пулом соединений стоит семафор: при тысячах виртуальных потоков
+ * ожидающие запросы паркуются на семафоре и не перегружают пул.
+ * Разрешение возвращается при закрытии соединения.
+ */
+public class GatedDataSource extends DelegatingDataSource implements MeterBinder {
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final long acquireTimeoutNanos;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public GatedDataSource(DataSource target, int maxConcurrent, long acquireTimeoutMs) {
+        super(target);
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquirePermit();
+        try {
+            return gate(super.getConnection());
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquirePermit();
+        try {
+            return gate(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Количество потоков, ожидающих разрешения
+     */
+    public int getQueueDepth() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Количество занятых соединений
+     */
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Суммарное время ожидания разрешений, нс
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    /**
+     * Максимальное время ожидания разрешения, нс
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("jdbc.gate.queue.depth", this, GatedDataSource::getQueueDepth)
+                .description("Потоки, ожидающие соединения с БД")
+                .register(registry);
+        Gauge.builder("jdbc.gate.active", this, GatedDataSource::getActive)
+                .description("Занятые соединения с БД")
+                .register(registry);
+        FunctionTimer.builder("jdbc.gate.wait", this,
+                        GatedDataSource::getAcquiredCount, GatedDataSource::getTotalWaitNanos, TimeUnit.NANOSECONDS)
+                .description("Ожидание разрешения на соединение с БД")
+                .register(registry);
+        FunctionCounter.builder("jdbc.gate.timeouts", this, GatedDataSource::getTimeoutCount)
+                .description("Отказы по таймауту ожидания соединения")
+                .register(registry);
+    }
+
+    private void acquirePermit() throws SQLException {
+        long startedAt = System.nanoTime();
+        boolean granted;
+        try {
+            granted = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Ожидание соединения с БД прервано", ex);
+        }
+        long waited = System.nanoTime() - startedAt;
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        if (!granted) {
+            timeouts.increment();
+            throw new SQLTransientConnectionException(
+                    "Превышено время ожидания соединения с БД (" + getQueueDepth() + " в очереди)");
+        }
+        acquired.increment();
+    }
+
+    private Connection gate(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getTargetException();
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getTargetException();
+                    }
+                });
+    }
+}
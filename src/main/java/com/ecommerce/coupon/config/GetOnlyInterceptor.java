@@ -0,0 +1,24 @@
+package com.ecommerce.coupon.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Применяет вложенный interceptor только к GET запросам
+ * (шаблон /api/coupons/* совпадает и с DELETE)
+ */
+class GetOnlyInterceptor implements HandlerInterceptor {
+
+    private final HandlerInterceptor delegate;
+
+    GetOnlyInterceptor(HandlerInterceptor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws Exception {
+        return !"GET".equals(request.getMethod()) || delegate.preHandle(request, response, handler);
+    }
+}
@@ -0,0 +1,34 @@
+package com.ecommerce.coupon.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Ограничитель конкурентности JDBC перед пулом соединений
+ *
+ * Включается свойством coupon.jdbc-gate.enabled (по умолчанию в профиле virtual).
+ */
+@Configuration
+@ConditionalOnProperty(name = "coupon.jdbc-gate.enabled", havingValue = "true")
+public class JdbcGateConfig {
+
+    @Bean
+    public static BeanPostProcessor jdbcGatePostProcessor(
+            @Value("${coupon.jdbc-gate.max-concurrent:10}") int maxConcurrent,
+            @Value("${coupon.jdbc-gate.acquire-timeout-ms:5000}") long acquireTimeoutMs) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof GatedDataSource)) {
+                    return new GatedDataSource(dataSource, maxConcurrent, acquireTimeoutMs);
+                }
+                return bean;
+            }
+        };
+    }
+}
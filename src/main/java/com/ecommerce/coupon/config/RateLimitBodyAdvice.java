@@ -0,0 +1,55 @@
+package com.ecommerce.coupon.config;
+
+import com.ecommerce.coupon.dto.BatchApplyRequest;
+import com.ecommerce.coupon.dto.EvaluateRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+import java.util.Objects;
+
+/**
+ * Лимит по коду купона для запросов с кодами в теле
+ *
+ * Пакетное применение списывает разрешение группы apply за каждую позицию,
+ * подбор купонов - разрешение группы evaluate за каждый код-кандидат: пакет
+ * из 100 позиций одного кода расходует лимит кода так же, как 100 отдельных
+ * применений. Проверка выполняется сразу после чтения тела, до контроллера;
+ * превышение - {@link com.ecommerce.coupon.exception.RateLimitExceededException}
+ * (ответ 429). Реактивный контроллер вызывает ту же
+ * {@link RateLimitRules#checkCodes} сам.
+ */
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "coupon.rate-limit.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class RateLimitBodyAdvice extends RequestBodyAdviceAdapter {
+
+    private final RateLimitRules rateLimitRules;
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return targetType == BatchApplyRequest.class || targetType == EvaluateRequest.class;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter,
+                                Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        if (body instanceof BatchApplyRequest batch && batch.getItems() != null) {
+            rateLimitRules.checkCodes("apply", batch.getItems().stream()
+                    .filter(Objects::nonNull)
+                    .map(BatchApplyRequest.Item::getCode)
+                    .toList());
+        } else if (body instanceof EvaluateRequest evaluate && evaluate.getCodes() != null) {
+            rateLimitRules.checkCodes("evaluate", evaluate.getCodes());
+        }
+        return body;
+    }
+}
@@ -0,0 +1,78 @@
+package com.ecommerce.coupon.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Ограничение частоты запросов одной группы endpoint'ов
+ *
+ * Проверяет два ограничения: по клиенту (IP или заголовок с идентификатором
+ * клиента) и по коду купона из пути. Выполняется до контроллера, поэтому
+ * отклоненный запрос (429) не доходит ни до сервиса, ни до БД.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final RateLimitRule rule;
+    private final String clientHeader;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param rule         ограничения группы endpoint'ов
+     * @param clientHeader заголовок с идентификатором клиента (пусто - IP адрес)
+     */
+    public RateLimitInterceptor(RateLimitRule rule, String clientHeader, ObjectMapper objectMapper) {
+        this.rule = rule;
+        this.clientHeader = clientHeader;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        if (CorsUtils.isPreFlightRequest(request)) {
+            return true;
+        }
+        long retryAfterNanos = rule.tryAcquire(clientId(request), code(request), System.nanoTime());
+        if (retryAfterNanos > 0) {
+            reject(response, retryAfterNanos);
+            return false;
+        }
+        return true;
+    }
+
+    private String clientId(HttpServletRequest request) {
+        if (!clientHeader.isEmpty()) {
+            String value = request.getHeader(clientHeader);
+            if (value != null && !value.isBlank()) {
+                return value;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static String code(HttpServletRequest request) {
+        Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables instanceof Map<?, ?> map && map.get("code") instanceof String code) {
+            return code;
+        }
+        return null;
+    }
+
+    private void reject(HttpServletResponse response, long retryAfterNanos) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(RateLimitRule.retryAfterSeconds(retryAfterNanos)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        objectMapper.writeValue(response.getOutputStream(), RateLimitRule.tooManyRequests());
+    }
+}
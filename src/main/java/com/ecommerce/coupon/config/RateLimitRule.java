@@ -0,0 +1,133 @@
+package com.ecommerce.coupon.config;
+
+import com.ecommerce.coupon.exception.GlobalExceptionHandler;
+import com.ecommerce.coupon.service.KeyedRateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничения частоты одной группы endpoint'ов: по клиенту и по коду купона
+ *
+ * Не зависит от web стека: используется и servlet interceptor'ом,
+ * и WebFilter'ом реактивного варианта. Ограничитель со скоростью 0 выключен.
+ */
+public class RateLimitRule {
+
+    private final String endpoint;
+    private final KeyedRateLimiter clientLimiter;
+    private final KeyedRateLimiter codeLimiter;
+    private final Counter clientRejections;
+    private final Counter codeRejections;
+
+    /**
+     * @param endpoint      имя группы (тег в метриках)
+     * @param clientLimiter ограничитель по клиенту (null - выключен)
+     * @param codeLimiter   ограничитель по коду купона (null - выключен)
+     */
+    public RateLimitRule(String endpoint,
+                         KeyedRateLimiter clientLimiter,
+                         KeyedRateLimiter codeLimiter,
+                         MeterRegistry registry) {
+        this.endpoint = endpoint;
+        this.clientLimiter = clientLimiter;
+        this.codeLimiter = codeLimiter;
+        this.clientRejections = rejections(registry, "client");
+        this.codeRejections = rejections(registry, "code");
+        if (clientLimiter != null) {
+            buckets(registry, "client", clientLimiter);
+        }
+        if (codeLimiter != null) {
+            buckets(registry, "code", codeLimiter);
+        }
+    }
+
+    /**
+     * Забрать разрешение для запроса
+     *
+     * @param client идентификатор клиента
+     * @param code   код купона из пути (null, если в пути его нет)
+     * @param now    текущее время, System.nanoTime()
+     * @return 0, если запрос разрешен, иначе время до следующего разрешения в наносекундах
+     */
+    public long tryAcquire(String client, String code, long now) {
+        if (clientLimiter != null && !clientLimiter.tryAcquire(client, now)) {
+            clientRejections.increment();
+            return Math.max(1, clientLimiter.nanosUntilNextPermit(client, now));
+        }
+        if (codeLimiter != null && code != null && !codeLimiter.tryAcquire(code, now)) {
+            codeRejections.increment();
+            return Math.max(1, codeLimiter.nanosUntilNextPermit(code, now));
+        }
+        return 0;
+    }
+
+    /**
+     * Забрать по разрешению ограничителя кода на каждую позицию запроса
+     * с кодами в теле (пакетное применение, подбор купонов); ограничение
+     * по клиенту проверяется interceptor'ом до чтения тела
+     *
+     * @param codes коды купонов позиций (повторяющийся код списывается за каждую позицию)
+     * @param now   текущее время, System.nanoTime()
+     * @return null, если все позиции разрешены, иначе первый отклоненный код
+     *         и время до его следующего разрешения в наносекундах
+     */
+    public Rejection tryAcquireCodes(List<String> codes, long now) {
+        if (codeLimiter == null) {
+            return null;
+        }
+        for (String code : codes) {
+            if (code != null && !codeLimiter.tryAcquire(code, now)) {
+                codeRejections.increment();
+                return new Rejection(code, Math.max(1, codeLimiter.nanosUntilNextPermit(code, now)));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Значение заголовка Retry-After (целые секунды, не меньше 1)
+     */
+    public static long retryAfterSeconds(long retryAfterNanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999L));
+    }
+
+    /**
+     * Тело ответа 429 в формате {@link GlobalExceptionHandler}
+     */
+    public static GlobalExceptionHandler.ErrorResponse tooManyRequests() {
+        return GlobalExceptionHandler.ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                .error(HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase())
+                .message("Слишком много запросов, повторите позже")
+                .build();
+    }
+
+    /**
+     * Отклоненный код позиции и время до его следующего разрешения
+     */
+    public record Rejection(String code, long retryAfterNanos) {
+    }
+
+    private Counter rejections(MeterRegistry registry, String key) {
+        return Counter.builder("coupon.rate_limit.rejected")
+                .description("Запросы, отклоненные ограничителем частоты")
+                .tag("endpoint", endpoint)
+                .tag("key", key)
+                .register(registry);
+    }
+
+    private void buckets(MeterRegistry registry, String key, KeyedRateLimiter limiter) {
+        Gauge.builder("coupon.rate_limit.buckets", limiter, KeyedRateLimiter::size)
+                .description("Ведра токенов в памяти")
+                .tag("endpoint", endpoint)
+                .tag("key", key)
+                .register(registry);
+    }
+}
@@ -0,0 +1,107 @@
+package com.ecommerce.coupon.config;
+
+import com.ecommerce.coupon.exception.RateLimitExceededException;
+import com.ecommerce.coupon.service.KeyedRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Настройки ограничения частоты (coupon.rate-limit.*)
+ *
+ * Группы endpoint'ов задаются свойствами coupon.rate-limit.{группа}.per-client
+ * и coupon.rate-limit.{группа}.per-code (запросов в секунду) с необязательным
+ * *-burst. Ограничения группы создаются один раз и общие для всех ее
+ * проверок (interceptor по пути и проверка кодов из тела запроса).
+ *
+ * Включенное ограничение требует client-header: за балансировщиком или при
+ * вызовах от сервиса оформления заказа все запросы приходят с немногих
+ * IP адресов, и лимит по клиенту ограничивал бы весь трафик сразу.
+ */
+@Component
+public class RateLimitRules {
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    @Getter
+    private final boolean enabled;
+
+    @Getter
+    private final String clientHeader;
+
+    private final long maxKeys;
+    private final Duration idleTimeout;
+    private final Map<String, RateLimitRule> rules = new ConcurrentHashMap<>();
+
+    public RateLimitRules(Environment environment,
+                          MeterRegistry meterRegistry,
+                          @Value("${coupon.rate-limit.enabled:false}") boolean enabled,
+                          @Value("${coupon.rate-limit.client-header:}") String clientHeader,
+                          @Value("${coupon.rate-limit.max-keys:100000}") long maxKeys,
+                          @Value("${coupon.rate-limit.idle-timeout:PT10M}") Duration idleTimeout) {
+        if (enabled && clientHeader.isBlank()) {
+            throw new IllegalStateException("coupon.rate-limit.enabled=true требует coupon.rate-limit.client-header: "
+                    + "без идентификатора клиента лимит по клиенту применяется к IP адресу вызывающего сервиса");
+        }
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.clientHeader = clientHeader;
+        this.maxKeys = maxKeys;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Ограничения группы endpoint'ов (создаются при первом обращении)
+     *
+     * @param endpoint имя группы (apply, lookup, evaluate)
+     * @return ограничения группы
+     */
+    public RateLimitRule rule(String endpoint) {
+        return rules.computeIfAbsent(endpoint, this::create);
+    }
+
+    /**
+     * Списать лимит по коду за каждую позицию запроса с кодами в теле
+     * (пакетное применение, подбор купонов); при выключенном ограничении ничего не делает
+     *
+     * @param endpoint имя группы (apply, evaluate)
+     * @param codes    коды купонов позиций (null - нечего списывать)
+     * @throws RateLimitExceededException если лимит одного из кодов исчерпан
+     */
+    public void checkCodes(String endpoint, List<String> codes) {
+        if (!enabled || codes == null) {
+            return;
+        }
+        RateLimitRule.Rejection rejection = rule(endpoint).tryAcquireCodes(codes, System.nanoTime());
+        if (rejection != null) {
+            throw new RateLimitExceededException(rejection.code(),
+                    RateLimitRule.retryAfterSeconds(rejection.retryAfterNanos()));
+        }
+    }
+
+    private RateLimitRule create(String endpoint) {
+        String prefix = "coupon.rate-limit." + endpoint + ".";
+        return new RateLimitRule(endpoint,
+                limiter(prefix + "per-client", prefix + "per-client-burst"),
+                limiter(prefix + "per-code", prefix + "per-code-burst"),
+                meterRegistry);
+    }
+
+    private KeyedRateLimiter limiter(String rateProperty, String burstProperty) {
+        double rate = environment.getProperty(rateProperty, Double.class, 0.0);
+        if (rate <= 0) {
+            return null;
+        }
+        int burst = environment.getProperty(burstProperty, Integer.class, (int) Math.ceil(rate));
+        return new KeyedRateLimiter(rate, burst, maxKeys, idleTimeout);
+    }
+}
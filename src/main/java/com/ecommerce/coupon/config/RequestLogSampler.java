@@ -0,0 +1,29 @@
+package com.ecommerce.coupon.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Выборочное логирование запросов горячего пути
+ *
+ * Доля логируемых запросов задается свойством coupon.logging.request-sample-rate
+ * (1.0 - все запросы, 0.01 - каждый сотый в среднем).
+ */
+@Component
+public class RequestLogSampler {
+
+    private final double sampleRate;
+
+    public RequestLogSampler(@Value("${coupon.logging.request-sample-rate:1.0}") double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Логировать ли текущий запрос
+     */
+    public boolean sample() {
+        return sampleRate >= 1.0 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+}
@@ -0,0 +1,12 @@
+package com.ecommerce.coupon.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Включение фоновых задач (@Scheduled)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
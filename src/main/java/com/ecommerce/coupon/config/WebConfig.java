@@ -1,15 +1,24 @@
 package com.ecommerce.coupon.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
- * Web конфигурация
+ * Web конфигурация (servlet стек)
  */
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequiredArgsConstructor
 public class WebConfig implements WebMvcConfigurer {
 
+    private final ObjectMapper objectMapper;
+    private final RateLimitRules rateLimitRules;
+
     /**
      * Настройка CORS для работы с frontend
      */
@@ -19,6 +28,34 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedOrigins("*")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders("X-Next-Cursor", "Retry-After")
                 .maxAge(3600);
     }
+
+    /**
+     * Ограничение частоты запросов (coupon.rate-limit.apply.*, coupon.rate-limit.lookup.*
+     * и coupon.rate-limit.evaluate.*)
+     *
+     * Для пакетного применения (/api/coupons/batch/apply подпадает под шаблон
+     * применения одного купона) и подбора купонов interceptor проверяет только
+     * лимит по клиенту: коды приходят в теле запроса, и лимит по коду за каждую
+     * позицию списывает {@link RateLimitBodyAdvice}.
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (!rateLimitRules.isEnabled()) {
+            return;
+        }
+        registry.addInterceptor(rateLimitInterceptor("apply"))
+                .addPathPatterns("/api/coupons/*/apply", "/api/coupons/*/reserve");
+        registry.addInterceptor(rateLimitInterceptor("evaluate"))
+                .addPathPatterns("/api/coupons/evaluate");
+        registry.addInterceptor(new GetOnlyInterceptor(rateLimitInterceptor("lookup")))
+                .addPathPatterns("/api/coupons/*")
+                .excludePathPatterns("/api/coupons/export", "/api/coupons/bulk");
+    }
+
+    private RateLimitInterceptor rateLimitInterceptor(String endpoint) {
+        return new RateLimitInterceptor(rateLimitRules.rule(endpoint), rateLimitRules.getClientHeader(), objectMapper);
+    }
 }
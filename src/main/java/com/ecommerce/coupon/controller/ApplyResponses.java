@@ -0,0 +1,38 @@
+package com.ecommerce.coupon.controller;
+
+import com.ecommerce.coupon.exception.GlobalExceptionHandler;
+import com.ecommerce.coupon.service.ApplyResult;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.LocalDateTime;
+
+/**
+ * Результат применения купона в HTTP ответ (общий для servlet и реактивного контроллеров)
+ */
+final class ApplyResponses {
+
+    private ApplyResponses() {
+    }
+
+    /**
+     * Отказ превращается в тот же JSON, что и у {@link GlobalExceptionHandler}.
+     */
+    static ResponseEntity<?> toResponse(ApplyResult result) {
+        if (result.isApplied()) {
+            return ResponseEntity.ok(result.getResponse());
+        }
+        HttpStatus status = switch (result.getReason()) {
+            case NOT_FOUND -> HttpStatus.NOT_FOUND;
+            case IDEMPOTENCY_KEY_REUSED -> HttpStatus.UNPROCESSABLE_ENTITY;
+            default -> HttpStatus.BAD_REQUEST;
+        };
+        GlobalExceptionHandler.ErrorResponse error = GlobalExceptionHandler.ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(status.value())
+                .error(status.getReasonPhrase())
+                .message(result.message())
+                .build();
+        return ResponseEntity.status(status).body(error);
+    }
+}
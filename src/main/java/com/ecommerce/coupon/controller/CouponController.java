@@ -1,23 +1,49 @@
 package com.ecommerce.coupon.controller;
 
+import com.ecommerce.coupon.config.RequestLogSampler;
+import com.ecommerce.coupon.dto.BatchApplyRequest;
+import com.ecommerce.coupon.dto.BatchApplyResponse;
+import com.ecommerce.coupon.dto.BulkGenerateRequest;
 import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.dto.CouponFilter;
 import com.ecommerce.coupon.dto.CouponResponse;
+import com.ecommerce.coupon.dto.EvaluateRequest;
+import com.ecommerce.coupon.dto.EvaluateResponse;
+import com.ecommerce.coupon.dto.ReservationResponse;
 import com.ecommerce.coupon.dto.ValidationRequest;
 import com.ecommerce.coupon.dto.ValidationResponse;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.service.ApplyResult;
+import com.ecommerce.coupon.service.BulkCouponService;
 import com.ecommerce.coupon.service.CouponService;
+import com.ecommerce.coupon.service.IdempotentApplyService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
- * REST Controller для работы с купонами
+ * REST Controller для работы с купонами (servlet стек)
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/coupons")
 @CrossOrigin(origins = "*")
 @RequiredArgsConstructor
@@ -25,6 +51,18 @@ import java.util.List;
 public class CouponController {
 
     private final CouponService couponService;
+    private final BulkCouponService bulkCouponService;
+    private final IdempotentApplyService idempotentApplyService;
+    private final ObjectMapper objectMapper;
+    private final RequestLogSampler requestLogSampler;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    private static final String CSV_HEADER =
+            "id,code,discountType,discountValue,minOrderAmount,expiryDate,usageLimit,usageCount,active,createdAt,"
+            + "perCustomerLimit,publicOffer,rules\n";
 
     /**
      * Создать новый купон
@@ -41,16 +79,92 @@ public class CouponController {
     }
 
     /**
-     * Получить список всех купонов
-     * GET /api/coupons
+     * Массово сгенерировать купоны по шаблону
+     * POST /api/coupons/bulk
+     *
+     * Прогресс передается потоком NDJSON: одна строка после каждой записанной порции.
+     *
+     * @param request количество купонов и шаблон условий
+     * @return поток с прогрессом генерации
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<StreamingResponseBody> generateCoupons(@Valid @RequestBody BulkGenerateRequest request) {
+        log.info("POST /api/coupons/bulk - Массовая генерация {} купонов", request.getCount());
+        bulkCouponService.validateTemplate(request.getTemplate());
+        StreamingResponseBody body = out -> bulkCouponService.generate(
+                request.getCount(), request.getTemplate(), progress -> {
+                    writeLine(out, progress);
+                    flush(out);
+                });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Получить страницу купонов (keyset-пагинация по id)
+     * GET /api/coupons?afterId=&limit=&active=&discountType=&expiringBefore=
+     *
+     * Если страница заполнена полностью, id последнего купона возвращается
+     * в заголовке X-Next-Cursor и передается в afterId следующего запроса.
      *
-     * @return список купонов
+     * @return страница купонов
      */
     @GetMapping
-    public ResponseEntity<List<CouponResponse>> getAllCoupons() {
-        log.info("GET /api/coupons - Получение всех купонов");
-        List<CouponResponse> coupons = couponService.getAllCoupons();
-        return ResponseEntity.ok(coupons);
+    public ResponseEntity<List<CouponResponse>> getCoupons(
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(required = false) DiscountType discountType,
+            @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime expiringBefore) {
+        log.info("GET /api/coupons - Получение страницы купонов после id {}", afterId);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        CouponFilter filter = new CouponFilter(active, discountType, expiringBefore);
+        List<CouponResponse> coupons = couponService.getCouponsPage(filter, afterId, pageSize);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (coupons.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(coupons.get(coupons.size() - 1).getId()));
+        }
+        return response.body(coupons);
+    }
+
+    /**
+     * Потоковая выгрузка купонов в JSON Lines или CSV
+     * GET /api/coupons/export?format=jsonl|csv&active=&discountType=&expiringBefore=
+     *
+     * @return поток строк, по одной на купон
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportCoupons(
+            @RequestParam(defaultValue = "jsonl") String format,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(required = false) DiscountType discountType,
+            @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime expiringBefore) {
+        log.info("GET /api/coupons/export - Выгрузка купонов в формате {}", format);
+        CouponFilter filter = new CouponFilter(active, discountType, expiringBefore);
+        boolean csv = "csv".equalsIgnoreCase(format);
+
+        StreamingResponseBody body = out -> {
+            OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+            if (csv) {
+                buffered.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+            }
+            couponService.exportCoupons(filter, coupon -> {
+                if (csv) {
+                    writeCsvLine(buffered, coupon);
+                } else {
+                    writeLine(buffered, coupon);
+                }
+            });
+            buffered.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(csv ? TEXT_CSV : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=coupons." + (csv ? "csv" : "jsonl"))
+                .body(body);
     }
 
     /**
@@ -62,7 +176,9 @@ public class CouponController {
      */
     @GetMapping("/{code}")
     public ResponseEntity<CouponResponse> getCouponByCode(@PathVariable String code) {
-        log.info("GET /api/coupons/{} - Получение купона по коду", code);
+        if (requestLogSampler.sample()) {
+            log.info("GET /api/coupons/{} - Получение купона по коду", code);
+        }
         CouponResponse response = couponService.getCouponByCode(code);
         return ResponseEntity.ok(response);
     }
@@ -71,19 +187,112 @@ public class CouponController {
      * Применить купон (валидация и расчет скидки)
      * POST /api/coupons/{code}/apply
      *
-     * @param code    код купона
-     * @param request данные для валидации (сумма заказа)
+     * С заголовком Idempotency-Key повтор запроса возвращает исходный результат,
+     * не засчитывая использование второй раз.
+     *
+     * @param code           код купона
+     * @param request        данные для валидации (сумма заказа)
+     * @param idempotencyKey ключ идемпотентности (необязательный)
      * @return результат валидации с расчетом
      */
     @PostMapping("/{code}/apply")
-    public ResponseEntity<ValidationResponse> applyCoupon(
+    public ResponseEntity<?> applyCoupon(
+            @PathVariable String code,
+            @Valid @RequestBody ValidationRequest request,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/{}/apply - Применение купона для суммы {}", code, request.getOrderAmount());
+        }
+        ApplyResult result = idempotencyKey == null
+                ? couponService.tryApply(code, request.getOrderAmount(), request.getLines(),
+                        request.getCustomerId())
+                : idempotentApplyService.apply(idempotencyKey, code, request.getOrderAmount(), request.getLines(),
+                        request.getCustomerId());
+        return ApplyResponses.toResponse(result);
+    }
+
+    /**
+     * Зарезервировать использование купона
+     * POST /api/coupons/{code}/reserve
+     *
+     * @param code    код купона
+     * @param request данные для валидации (сумма заказа)
+     * @return резервирование с рассчитанной скидкой и сроком действия
+     */
+    @PostMapping("/{code}/reserve")
+    public ResponseEntity<ReservationResponse> reserveCoupon(
             @PathVariable String code,
             @Valid @RequestBody ValidationRequest request) {
-        log.info("POST /api/coupons/{}/apply - Применение купона для суммы {}", code, request.getOrderAmount());
-        ValidationResponse response = couponService.validateAndApply(code, request.getOrderAmount());
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/{}/reserve - Резервирование купона для суммы {}", code, request.getOrderAmount());
+        }
+        ReservationResponse response = couponService.reserve(code, request.getOrderAmount(), request.getLines(),
+                request.getCustomerId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    /**
+     * Подтвердить резервирование
+     * POST /api/coupons/reservations/{reservationId}/commit
+     *
+     * @param reservationId идентификатор резервирования
+     * @return результат применения купона
+     */
+    @PostMapping("/reservations/{reservationId}/commit")
+    public ResponseEntity<ValidationResponse> commitReservation(@PathVariable String reservationId) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/reservations/{}/commit - Подтверждение резервирования", reservationId);
+        }
+        return ResponseEntity.ok(couponService.commitReservation(reservationId));
+    }
+
+    /**
+     * Освободить резервирование
+     * POST /api/coupons/reservations/{reservationId}/release
+     *
+     * @param reservationId идентификатор резервирования
+     * @return 204 No Content
+     */
+    @PostMapping("/reservations/{reservationId}/release")
+    public ResponseEntity<Void> releaseReservation(@PathVariable String reservationId) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/reservations/{}/release - Освобождение резервирования", reservationId);
+        }
+        couponService.releaseReservation(reservationId);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Пакетно применить купоны одной корзины
+     * POST /api/coupons/batch/apply
+     *
+     * @param request позиции пакета (код купона и сумма заказа)
+     * @return результаты по каждой позиции
+     */
+    @PostMapping("/batch/apply")
+    public ResponseEntity<BatchApplyResponse> applyCouponsBatch(@Valid @RequestBody BatchApplyRequest request) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/batch/apply - Пакетное применение {} купонов", request.getItems().size());
+        }
+        BatchApplyResponse response = couponService.validateAndApplyBatch(request.getItems(), request.getCustomerId());
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Подобрать купоны с наибольшей скидкой для суммы заказа (без применения)
+     * POST /api/coupons/evaluate
+     *
+     * @param request сумма заказа, коды-кандидаты и количество результатов
+     * @return применимые купоны по убыванию скидки
+     */
+    @PostMapping("/evaluate")
+    public ResponseEntity<EvaluateResponse> evaluateCoupons(@Valid @RequestBody EvaluateRequest request) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/evaluate - Подбор купонов для суммы {}", request.getOrderAmount());
+        }
+        return ResponseEntity.ok(couponService.evaluate(request));
+    }
+
     /**
      * Удалить купон
      * DELETE /api/coupons/{code}
@@ -97,4 +306,48 @@ public class CouponController {
         couponService.deleteCoupon(code);
         return ResponseEntity.noContent().build();
     }
+
+    private void writeLine(OutputStream out, Object value) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(value));
+            out.write('\n');
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void writeCsvLine(OutputStream out, CouponResponse coupon) {
+        String line = coupon.getId() + "," + coupon.getCode() + "," + coupon.getDiscountType() + ","
+                + coupon.getDiscountValue() + "," + coupon.getMinOrderAmount() + "," + coupon.getExpiryDate() + ","
+                + coupon.getUsageLimit() + "," + coupon.getUsageCount() + "," + coupon.getActive() + ","
+                + coupon.getCreatedAt() + "," + coupon.getPerCustomerLimit() + "," + coupon.getPublicOffer() + ","
+                + csvRules(coupon) + "\n";
+        try {
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Правила купона RULES как поле CSV: JSON в кавычках (пусто для остальных купонов)
+     */
+    private String csvRules(CouponResponse coupon) {
+        if (coupon.getRules() == null) {
+            return "";
+        }
+        try {
+            return '"' + objectMapper.writeValueAsString(coupon.getRules()).replace("\"", "\"\"") + '"';
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void flush(OutputStream out) {
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
 }
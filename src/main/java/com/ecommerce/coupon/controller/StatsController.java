@@ -0,0 +1,111 @@
+package com.ecommerce.coupon.controller;
+
+import com.ecommerce.coupon.config.GatedDataSource;
+import com.ecommerce.coupon.dto.CacheStatsResponse;
+import com.ecommerce.coupon.dto.HotCouponStats;
+import com.ecommerce.coupon.dto.JdbcGateStatsResponse;
+import com.ecommerce.coupon.dto.RedemptionHourlyStats;
+import com.ecommerce.coupon.dto.RedemptionTotals;
+import com.ecommerce.coupon.service.CouponDefinitionCache;
+import com.ecommerce.coupon.service.CouponMetrics;
+import com.ecommerce.coupon.service.RedemptionStatsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * REST Controller для служебной статистики сервиса
+ */
+@RestController
+@RequestMapping("/api/stats")
+@CrossOrigin(origins = "*")
+@RequiredArgsConstructor
+public class StatsController {
+
+    private final CouponDefinitionCache definitionCache;
+    private final DataSource dataSource;
+    private final RedemptionStatsService redemptionStatsService;
+    private final CouponMetrics couponMetrics;
+
+    private static final int MAX_TOP_SIZE = 1000;
+
+    /**
+     * Статистика кэша купонов
+     * GET /api/stats/cache
+     *
+     * @return попадания, промахи и вытеснения
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<CacheStatsResponse> getCacheStats() {
+        return ResponseEntity.ok(CacheStatsResponse.fromStats(definitionCache.stats(), definitionCache.size()));
+    }
+
+    /**
+     * Статистика ограничителя JDBC (очередь и время ожидания соединений)
+     * GET /api/stats/jdbc-gate
+     *
+     * @return статистика или 404, если ограничитель выключен
+     */
+    @GetMapping("/jdbc-gate")
+    public ResponseEntity<JdbcGateStatsResponse> getJdbcGateStats() {
+        if (dataSource instanceof GatedDataSource gate) {
+            return ResponseEntity.ok(JdbcGateStatsResponse.fromGate(gate));
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Самые используемые купоны последнего окна метрик
+     * GET /api/stats/hot-coupons
+     *
+     * @return код купона для каждого места (тег rank gauge coupon.hot.remaining)
+     */
+    @GetMapping("/hot-coupons")
+    public ResponseEntity<List<HotCouponStats>> getHotCoupons() {
+        return ResponseEntity.ok(couponMetrics.hotCoupons());
+    }
+
+    /**
+     * Использования купона по часам (по умолчанию за последние сутки)
+     * GET /api/stats/redemptions/{code}
+     *
+     * @param code код купона
+     * @param from начало периода (включая)
+     * @param to   конец периода (не включая)
+     * @return количество использований и сумма скидок за каждый час
+     */
+    @GetMapping("/redemptions/{code}")
+    public ResponseEntity<List<RedemptionHourlyStats>> getRedemptionsByHour(
+            @PathVariable String code,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        return ResponseEntity.ok(redemptionStatsService.getHourly(code, start, end));
+    }
+
+    /**
+     * Купоны с наибольшей суммой скидок (по умолчанию за последние сутки)
+     * GET /api/stats/redemptions
+     *
+     * @param from  начало периода (включая)
+     * @param to    конец периода (не включая)
+     * @param limit количество купонов
+     * @return количество использований и сумма скидок по купонам
+     */
+    @GetMapping("/redemptions")
+    public ResponseEntity<List<RedemptionTotals>> getTopRedemptions(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "20") int limit) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        int size = Math.max(1, Math.min(limit, MAX_TOP_SIZE));
+        return ResponseEntity.ok(redemptionStatsService.getTopByDiscount(start, end, size));
+    }
+}
@@ -0,0 +1,55 @@
+package com.ecommerce.coupon.dto;
+
+import com.ecommerce.coupon.model.CartLine;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * DTO для пакетного применения купонов (несколько купонов одной корзины)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchApplyRequest {
+
+    @NotEmpty(message = "Список купонов не может быть пустым")
+    @Size(max = 100, message = "Не больше 100 купонов в одном запросе")
+    private List<@Valid Item> items;
+
+    /**
+     * Покупатель корзины (обязателен, если в пакете есть купоны с лимитом на покупателя)
+     */
+    @Positive(message = "Идентификатор покупателя должен быть больше 0")
+    private Long customerId;
+
+    /**
+     * Одна позиция пакета: код купона, сумма заказа и строки корзины
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Item {
+
+        @NotBlank(message = "Код купона обязателен")
+        private String code;
+
+        @NotNull(message = "Сумма заказа обязательна")
+        @DecimalMin(value = "0.01", message = "Сумма заказа должна быть больше 0")
+        private BigDecimal orderAmount;
+
+        /**
+         * Строки корзины для условий купонов RULES (необязательно)
+         */
+        @Size(max = 500, message = "Не больше 500 строк корзины")
+        private List<@Valid @NotNull CartLine> lines;
+    }
+}
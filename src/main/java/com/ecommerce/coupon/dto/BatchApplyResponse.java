@@ -0,0 +1,39 @@
+package com.ecommerce.coupon.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * DTO для результата пакетного применения купонов
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchApplyResponse {
+
+    private Integer appliedCount;
+    private Integer rejectedCount;
+    private List<ItemResult> results;
+
+    /**
+     * Результат по одной позиции (в порядке запроса)
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class ItemResult {
+        private String code;
+        private Boolean success;
+        private String message;
+        private BigDecimal originalPrice;
+        private BigDecimal discount;
+        private BigDecimal finalPrice;
+    }
+}
@@ -0,0 +1,29 @@
+package com.ecommerce.coupon.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO для массовой генерации купонов по шаблону
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkGenerateRequest {
+
+    @NotNull(message = "Количество купонов обязательно")
+    @Min(value = 1, message = "Количество купонов должно быть больше 0")
+    @Max(value = 10_000_000, message = "Не больше 10 000 000 купонов за один запуск")
+    private Integer count;
+
+    @NotNull(message = "Шаблон купона обязателен")
+    @Valid
+    private CouponCreateRequest template;
+}
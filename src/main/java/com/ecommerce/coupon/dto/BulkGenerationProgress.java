@@ -0,0 +1,22 @@
+package com.ecommerce.coupon.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO с прогрессом массовой генерации (одна строка потока NDJSON)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkGenerationProgress {
+
+    private Long generated;
+    private Long total;
+    private Long elapsedMs;
+    private Long codesPerSecond;
+    private Boolean done;
+}
@@ -0,0 +1,42 @@
+package com.ecommerce.coupon.dto;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO со статистикой кэша купонов
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CacheStatsResponse {
+
+    private Long size;
+    private Long hitCount;
+    private Long missCount;
+    private Double hitRate;
+    private Long evictionCount;
+    private Long loadCount;
+
+    /**
+     * Конвертировать статистику Caffeine в DTO
+     *
+     * @param stats статистика кэша
+     * @param size  текущее количество записей
+     * @return DTO ответ
+     */
+    public static CacheStatsResponse fromStats(CacheStats stats, long size) {
+        return CacheStatsResponse.builder()
+                .size(size)
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictionCount(stats.evictionCount())
+                .loadCount(stats.loadCount())
+                .build();
+    }
+}
@@ -1,6 +1,8 @@
 package com.ecommerce.coupon.dto;
 
 import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.model.PromotionRules;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -37,4 +39,24 @@ public class CouponCreateRequest {
     @NotNull(message = "Лимит использований обязателен")
     @Min(value = 1, message = "Лимит использований должен быть больше 0")
     private Integer usageLimit;
+
+    /**
+     * Лимит использований одним покупателем (необязательно; тогда в запросе
+     * применения обязателен customerId)
+     */
+    @Min(value = 1, message = "Лимит на покупателя должен быть больше 0")
+    @Max(value = 100, message = "Лимит на покупателя не может быть больше 100")
+    private Integer perCustomerLimit;
+
+    /**
+     * Публичное предложение (необязательно, по умолчанию false): только такие купоны
+     * подбираются POST /api/coupons/evaluate без списка кодов
+     */
+    private Boolean publicOffer;
+
+    /**
+     * Правила промо-акции (обязательны для RULES, для других типов не задаются)
+     */
+    @Valid
+    private PromotionRules rules;
 }
@@ -0,0 +1,23 @@
+package com.ecommerce.coupon.dto;
+
+import com.ecommerce.coupon.model.DiscountType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Фильтры списка купонов (null - фильтр не применяется)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CouponFilter {
+
+    private Boolean active;
+    private DiscountType discountType;
+    private LocalDateTime expiringBefore;
+}
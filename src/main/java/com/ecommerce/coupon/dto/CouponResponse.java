@@ -1,7 +1,9 @@
 package com.ecommerce.coupon.dto;
 
 import com.ecommerce.coupon.model.Coupon;
+import com.ecommerce.coupon.model.CouponDefinition;
 import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.model.PromotionRules;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -26,9 +28,12 @@ public class CouponResponse {
     private BigDecimal minOrderAmount;
     private LocalDateTime expiryDate;
     private Integer usageLimit;
+    private Integer perCustomerLimit;
     private Integer usageCount;
     private Boolean active;
+    private Boolean publicOffer;
     private LocalDateTime createdAt;
+    private PromotionRules rules;
 
     /**
      * Конвертировать Entity в DTO
@@ -45,9 +50,37 @@ public class CouponResponse {
                 .minOrderAmount(coupon.getMinOrderAmount())
                 .expiryDate(coupon.getExpiryDate())
                 .usageLimit(coupon.getUsageLimit())
+                .perCustomerLimit(coupon.getPerCustomerLimit())
                 .usageCount(coupon.getUsageCount())
                 .active(coupon.getActive())
+                .publicOffer(coupon.getPublicOffer())
                 .createdAt(coupon.getCreatedAt())
+                .rules(coupon.getRules())
+                .build();
+    }
+
+    /**
+     * Собрать DTO из кэшированных условий купона и текущего счетчика
+     *
+     * @param definition условия купона
+     * @param usageCount текущее количество использований
+     * @return DTO ответ
+     */
+    public static CouponResponse fromDefinition(CouponDefinition definition, Integer usageCount) {
+        return CouponResponse.builder()
+                .id(definition.getId())
+                .code(definition.getCode())
+                .discountType(definition.getDiscountType())
+                .discountValue(definition.getDiscountValue())
+                .minOrderAmount(definition.getMinOrderAmount())
+                .expiryDate(definition.getExpiryDate())
+                .usageLimit(definition.getUsageLimit())
+                .perCustomerLimit(definition.getPerCustomerLimit())
+                .usageCount(usageCount)
+                .active(definition.getActive())
+                .publicOffer(definition.getPublicOffer())
+                .createdAt(definition.getCreatedAt())
+                .rules(definition.getRules())
                 .build();
     }
 }
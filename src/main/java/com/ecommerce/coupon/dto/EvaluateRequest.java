@@ -0,0 +1,43 @@
+package com.ecommerce.coupon.dto;
+
+import com.ecommerce.coupon.model.CartLine;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * DTO для подбора лучших купонов к сумме заказа (без применения)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EvaluateRequest {
+
+    @NotNull(message = "Сумма заказа обязательна")
+    @DecimalMin(value = "0.01", message = "Сумма заказа должна быть больше 0")
+    private BigDecimal orderAmount;
+
+    /**
+     * Коды-кандидаты (например, купоны покупателя); пусто - активные публичные
+     * купоны (publicOffer), персональные подбираются только по переданному коду
+     */
+    @Size(max = 100, message = "Не больше 100 купонов в одном запросе")
+    private List<@NotBlank(message = "Код купона обязателен") String> codes;
+
+    /**
+     * Строки корзины для условий купонов RULES (необязательно)
+     */
+    @Size(max = 500, message = "Не больше 500 строк корзины")
+    private List<@Valid @NotNull CartLine> lines;
+
+    @Min(value = 1, message = "Количество результатов должно быть больше 0")
+    @Max(value = 50, message = "Не больше 50 результатов")
+    private Integer limit;
+}
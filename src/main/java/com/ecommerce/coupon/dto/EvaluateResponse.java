@@ -0,0 +1,41 @@
+package com.ecommerce.coupon.dto;
+
+import com.ecommerce.coupon.model.DiscountType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * DTO с купонами, подходящими к сумме заказа, по убыванию скидки
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EvaluateResponse {
+
+    private BigDecimal orderAmount;
+    private List<Candidate> coupons;
+
+    /**
+     * Купон и скидка, которую он дал бы заказу
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Candidate {
+        private String code;
+        private DiscountType discountType;
+        private BigDecimal discountValue;
+        private BigDecimal minOrderAmount;
+        private LocalDateTime expiryDate;
+        private BigDecimal discount;
+        private BigDecimal finalPrice;
+    }
+}
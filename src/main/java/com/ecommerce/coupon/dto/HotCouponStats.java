@@ -0,0 +1,21 @@
+package com.ecommerce.coupon.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO строки gauge coupon.hot.remaining: какой купон занимает место rank
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HotCouponStats {
+
+    private Integer rank;
+    private String code;
+    private Long applications;
+    private Integer remaining;
+}
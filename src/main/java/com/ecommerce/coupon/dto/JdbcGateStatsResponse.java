@@ -0,0 +1,44 @@
+package com.ecommerce.coupon.dto;
+
+import com.ecommerce.coupon.config.GatedDataSource;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO со статистикой ограничителя JDBC
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class JdbcGateStatsResponse {
+
+    private Integer maxConcurrent;
+    private Integer active;
+    private Integer queueDepth;
+    private Long acquiredCount;
+    private Long timeoutCount;
+    private Double averageWaitMs;
+    private Double maxWaitMs;
+
+    /**
+     * Снять статистику с ограничителя
+     *
+     * @param gate ограничитель
+     * @return DTO ответ
+     */
+    public static JdbcGateStatsResponse fromGate(GatedDataSource gate) {
+        long acquired = gate.getAcquiredCount();
+        return JdbcGateStatsResponse.builder()
+                .maxConcurrent(gate.getMaxConcurrent())
+                .active(gate.getActive())
+                .queueDepth(gate.getQueueDepth())
+                .acquiredCount(acquired)
+                .timeoutCount(gate.getTimeoutCount())
+                .averageWaitMs(acquired == 0 ? 0.0 : gate.getTotalWaitNanos() / 1_000_000.0 / acquired)
+                .maxWaitMs(gate.getMaxWaitNanos() / 1_000_000.0)
+                .build();
+    }
+}
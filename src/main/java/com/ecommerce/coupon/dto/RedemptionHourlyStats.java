@@ -0,0 +1,23 @@
+package com.ecommerce.coupon.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * DTO для использований купона за час
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RedemptionHourlyStats {
+
+    private LocalDateTime hourStart;
+    private Long uses;
+    private BigDecimal totalDiscount;
+}
@@ -0,0 +1,22 @@
+package com.ecommerce.coupon.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO для итогов использований купона за период
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RedemptionTotals {
+
+    private String code;
+    private Long uses;
+    private BigDecimal totalDiscount;
+}
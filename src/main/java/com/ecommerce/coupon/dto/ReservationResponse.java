@@ -0,0 +1,26 @@
+package com.ecommerce.coupon.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * DTO для ответа на резервирование купона
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReservationResponse {
+
+    private String reservationId;
+    private String code;
+    private LocalDateTime expiresAt;
+    private BigDecimal originalPrice;
+    private BigDecimal discount;
+    private BigDecimal finalPrice;
+}
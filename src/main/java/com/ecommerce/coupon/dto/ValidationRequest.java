@@ -1,13 +1,18 @@
 package com.ecommerce.coupon.dto;
 
+import com.ecommerce.coupon.model.CartLine;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 /**
  * DTO для валидации купона
@@ -21,4 +26,16 @@ public class ValidationRequest {
     @NotNull(message = "Сумма заказа обязательна")
     @DecimalMin(value = "0.01", message = "Сумма заказа должна быть больше 0")
     private BigDecimal orderAmount;
+
+    /**
+     * Строки корзины для условий купонов RULES (необязательно)
+     */
+    @Size(max = 500, message = "Не больше 500 строк корзины")
+    private List<@Valid @NotNull CartLine> lines;
+
+    /**
+     * Идентификатор покупателя (обязателен для купонов с лимитом на покупателя)
+     */
+    @Positive(message = "Идентификатор покупателя должен быть больше 0")
+    private Long customerId;
 }
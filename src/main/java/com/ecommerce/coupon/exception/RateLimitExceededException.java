@@ -0,0 +1,21 @@
+package com.ecommerce.coupon.exception;
+
+import lombok.Getter;
+
+/**
+ * Исключение, выбрасываемое когда запрос превысил ограничение частоты
+ * по коду купона из тела запроса (пакетное применение, подбор купонов)
+ */
+@Getter
+public class RateLimitExceededException extends RuntimeException {
+
+    /**
+     * Значение заголовка Retry-After, секунды
+     */
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(String code, long retryAfterSeconds) {
+        super(String.format("Превышена частота запросов купона '%s'", code));
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
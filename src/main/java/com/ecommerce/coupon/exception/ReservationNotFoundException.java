@@ -0,0 +1,12 @@
+package com.ecommerce.coupon.exception;
+
+/**
+ * Исключение, выбрасываемое когда резервирование не найдено
+ * (неизвестный id, уже подтверждено, освобождено или истекло)
+ */
+public class ReservationNotFoundException extends RuntimeException {
+
+    public ReservationNotFoundException(String reservationId) {
+        super(String.format("Резервирование '%s' не найдено или истекло", reservationId));
+    }
+}
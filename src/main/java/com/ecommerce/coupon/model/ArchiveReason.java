@@ -0,0 +1,16 @@
+package com.ecommerce.coupon.model;
+
+/**
+ * Причина переноса купона в архив
+ */
+public enum ArchiveReason {
+    /**
+     * Истек срок действия
+     */
+    EXPIRED,
+
+    /**
+     * Исчерпан лимит использований
+     */
+    EXHAUSTED
+}
@@ -0,0 +1,84 @@
+package com.ecommerce.coupon.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Купон, перенесенный в архив фоновой очисткой ({@code CouponSweeper})
+ *
+ * Хранит строку coupons в момент переноса. Идентификатор совпадает с исходным,
+ * код уникальным не является: после архивации он может быть выдан повторно.
+ */
+@Entity
+@Table(name = "coupons_archive", indexes = {
+    @Index(name = "idx_coupons_archive_code", columnList = "code")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArchivedCoupon {
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false, length = 20)
+    private String code;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(nullable = false, length = 32)
+    private DiscountType discountType;
+
+    @Column(nullable = false, precision = 10, scale = 2)
+    private BigDecimal discountValue;
+
+    @Column(nullable = false, precision = 10, scale = 2)
+    private BigDecimal minOrderAmount;
+
+    @Column(nullable = false)
+    private LocalDateTime expiryDate;
+
+    @Column(nullable = false)
+    private Integer usageLimit;
+
+    private Integer perCustomerLimit;
+
+    @Column(nullable = false)
+    private Integer usageCount;
+
+    @Column(nullable = false)
+    private Boolean active;
+
+    @Column(nullable = false)
+    private Boolean publicOffer;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Convert(converter = PromotionRulesConverter.class)
+    @Column(length = Coupon.RULES_MAX_LENGTH)
+    private PromotionRules rules;
+
+    /**
+     * Время переноса в архив
+     */
+    @Column(nullable = false)
+    private LocalDateTime archivedAt;
+
+    /**
+     * Причина переноса
+     */
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(nullable = false, length = 16)
+    private ArchiveReason archiveReason;
+}
@@ -0,0 +1,40 @@
+package com.ecommerce.coupon.model;
+
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Строка корзины для условий {@link PromotionRules}
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CartLine {
+
+    @Size(max = 64, message = "Артикул - не больше 64 символов")
+    private String sku;
+
+    @Size(max = 64, message = "Категория - не больше 64 символов")
+    private String category;
+
+    @NotNull(message = "Количество обязательно")
+    @Min(value = 1, message = "Количество должно быть больше 0")
+    @Max(value = 100000, message = "Количество не может быть больше 100000")
+    private Integer quantity;
+
+    @NotNull(message = "Цена обязательна")
+    @DecimalMin(value = "0.00", message = "Цена не может быть отрицательной")
+    @Digits(integer = 8, fraction = 2, message = "Цена - не больше двух знаков после запятой")
+    private BigDecimal unitPrice;
+}
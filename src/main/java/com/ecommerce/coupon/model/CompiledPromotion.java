@@ -0,0 +1,305 @@
+package com.ecommerce.coupon.model;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Скомпилированные правила промо-акции: неизменяемый расчет скидки в копейках
+ *
+ * Правила {@link PromotionRules} один раз переводятся в параллельные массивы
+ * (вид скидки, условие, база, значения в копейках и базисных пунктах), а отборы
+ * строк корзины - в слоты: каждый различный sku и category получает номер.
+ * Расчет проходит строки корзины один раз, накапливая количество и сумму по
+ * слотам (поиск слота не зависит от числа правил), затем проверяет правила
+ * по массивам - без обхода дерева, разбора JSON и BigDecimal.
+ *
+ * Одинаковые правила компилируются один раз: результат кэшируется по значению
+ * правил, поэтому купоны массовой генерации разделяют один экземпляр.
+ */
+public final class CompiledPromotion {
+
+    private static final long BASIS_POINTS_DIVISOR = 10_000L;
+    private static final long NO_CAP = Long.MAX_VALUE;
+    /** Правило без отбора строк: количество - вся корзина, сумма - сумма заказа */
+    private static final int WHOLE_CART = -1;
+    private static final long NOT_APPLICABLE = -1L;
+
+    private static final Cache<PromotionRules, CompiledPromotion> COMPILED = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .build();
+
+    private final PromotionRules.Stacking stacking;
+    private final Map<String, Integer> skuSlots;
+    private final Map<String, Integer> categorySlots;
+    private final int slotCount;
+    private final boolean needsLines;
+
+    private final PromotionRules.Effect[] effect;
+    private final int[] slot;
+    private final long[] minQuantity;
+    private final long[] minAmount;
+    private final boolean[] matchedScope;
+    /** Базисные пункты (PERCENTAGE) или копейки (FIXED_AMOUNT) */
+    private final long[] value;
+    private final long[] cap;
+    private final long[][] tierFrom;
+    private final long[][] tierValue;
+    private final boolean[][] tierPercent;
+
+    /**
+     * Скомпилировать правила (или взять уже скомпилированные)
+     *
+     * @param rules правила промо-акции
+     * @return вычислитель скидки
+     * @throws IllegalArgumentException если правила противоречивы
+     */
+    public static CompiledPromotion of(PromotionRules rules) {
+        return COMPILED.get(rules, CompiledPromotion::new);
+    }
+
+    private CompiledPromotion(PromotionRules rules) {
+        if (rules.stacking() == null || rules.rules() == null || rules.rules().isEmpty()) {
+            throw new IllegalArgumentException("Нужны способ сочетания и хотя бы одно правило");
+        }
+        this.stacking = rules.stacking();
+        int count = rules.rules().size();
+        this.effect = new PromotionRules.Effect[count];
+        this.slot = new int[count];
+        this.minQuantity = new long[count];
+        this.minAmount = new long[count];
+        this.matchedScope = new boolean[count];
+        this.value = new long[count];
+        this.cap = new long[count];
+        this.tierFrom = new long[count][];
+        this.tierValue = new long[count][];
+        this.tierPercent = new boolean[count][];
+
+        Map<String, Integer> skus = new HashMap<>();
+        Map<String, Integer> categories = new HashMap<>();
+        boolean countsCart = false;
+        for (int i = 0; i < count; i++) {
+            PromotionRules.Rule rule = rules.rules().get(i);
+            String name = "Правило " + (i + 1) + ": ";
+            if (rule == null || rule.effect() == null) {
+                throw new IllegalArgumentException(name + "не указан вид скидки");
+            }
+            effect[i] = rule.effect();
+            matchedScope[i] = rule.scope() == PromotionRules.Scope.MATCHED;
+            cap[i] = rule.cap() == null ? NO_CAP : minor(rule.cap(), name + "cap");
+
+            PromotionRules.Condition when = rule.when();
+            slot[i] = WHOLE_CART;
+            if (when != null) {
+                if (when.sku() != null && when.category() != null) {
+                    throw new IllegalArgumentException(name + "отбор строк - по sku или по category, не по обоим");
+                }
+                if (when.sku() != null) {
+                    slot[i] = skus.computeIfAbsent(when.sku(), sku -> skus.size() + categories.size());
+                } else if (when.category() != null) {
+                    slot[i] = categories.computeIfAbsent(when.category(), category -> skus.size() + categories.size());
+                }
+                // Отбор без минимального количества требует хотя бы одну отобранную строку
+                minQuantity[i] = Math.max(slot[i] == WHOLE_CART ? 0 : 1,
+                        when.minQuantity() == null ? 0 : when.minQuantity());
+                minAmount[i] = when.minAmount() == null ? 0 : minor(when.minAmount(), name + "minAmount");
+                countsCart |= slot[i] == WHOLE_CART && minQuantity[i] > 0;
+            }
+
+            switch (rule.effect()) {
+                case PERCENTAGE:
+                    value[i] = basisPoints(rule.percent(), name + "percent");
+                    break;
+                case FIXED_AMOUNT:
+                    value[i] = positiveMinor(rule.amount(), name + "amount");
+                    break;
+                case TIERED:
+                    compileTiers(i, rule.tiers(), name);
+                    break;
+                default:
+                    throw new IllegalArgumentException(name + "неизвестный вид скидки " + rule.effect());
+            }
+        }
+
+        this.skuSlots = Map.copyOf(skus);
+        this.categorySlots = Map.copyOf(categories);
+        this.slotCount = skus.size() + categories.size();
+        this.needsLines = slotCount > 0 || countsCart;
+    }
+
+    /**
+     * Скидка по правилам за один проход по строкам корзины
+     *
+     * @param orderMinor сумма заказа в копейках
+     * @param lines      строки корзины (null или пусто - условия на строки не выполняются)
+     * @return скидка в копейках, не больше суммы заказа
+     */
+    public long discount(long orderMinor, List<CartLine> lines) {
+        long[] totals = slotCount == 0 ? null : new long[slotCount * 2];
+        long cartQuantity = 0;
+        if (needsLines && lines != null) {
+            for (CartLine line : lines) {
+                long quantity = line.getQuantity();
+                cartQuantity += quantity;
+                if (totals == null) {
+                    continue;
+                }
+                Integer skuSlot = skuSlots.isEmpty() || line.getSku() == null ? null : skuSlots.get(line.getSku());
+                Integer categorySlot = categorySlots.isEmpty() || line.getCategory() == null
+                        ? null : categorySlots.get(line.getCategory());
+                if (skuSlot == null && categorySlot == null) {
+                    continue;
+                }
+                long amount = lineMinor(line.getUnitPrice()) * quantity;
+                if (skuSlot != null) {
+                    totals[2 * skuSlot] += quantity;
+                    totals[2 * skuSlot + 1] += amount;
+                }
+                if (categorySlot != null) {
+                    totals[2 * categorySlot] += quantity;
+                    totals[2 * categorySlot + 1] += amount;
+                }
+            }
+        }
+
+        long total = 0;
+        for (int i = 0; i < effect.length; i++) {
+            int s = slot[i];
+            long quantity = s == WHOLE_CART ? cartQuantity : totals[2 * s];
+            long amount = s == WHOLE_CART ? orderMinor : totals[2 * s + 1];
+            if (quantity < minQuantity[i] || amount < minAmount[i]) {
+                continue;
+            }
+            long ruleDiscount = ruleDiscount(i, matchedScope[i] ? amount : orderMinor);
+            if (ruleDiscount == NOT_APPLICABLE) {
+                continue;
+            }
+            switch (stacking) {
+                case FIRST:
+                    return Math.min(ruleDiscount, orderMinor);
+                case BEST:
+                    total = Math.max(total, ruleDiscount);
+                    break;
+                default:
+                    // Каждая скидка не больше суммы заказа: переполнение невозможно при <= 64 правилах
+                    total += ruleDiscount;
+            }
+        }
+        return Math.min(total, orderMinor);
+    }
+
+    /**
+     * Количество правил
+     */
+    public int size() {
+        return effect.length;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledPromotion[" + stacking + ", правил: " + effect.length + ", отборов: " + slotCount + "]";
+    }
+
+    private long ruleDiscount(int i, long base) {
+        long discount;
+        switch (effect[i]) {
+            case PERCENTAGE:
+                discount = percentOf(base, value[i]);
+                break;
+            case FIXED_AMOUNT:
+                discount = Math.min(value[i], base);
+                break;
+            default:
+                int tier = Arrays.binarySearch(tierFrom[i], base);
+                if (tier < 0) {
+                    // Ближайшая ступень ниже точки вставки
+                    tier = -tier - 2;
+                }
+                if (tier < 0) {
+                    return NOT_APPLICABLE;
+                }
+                discount = tierPercent[i][tier]
+                        ? percentOf(base, tierValue[i][tier])
+                        : Math.min(tierValue[i][tier], base);
+        }
+        return Math.min(discount, cap[i]);
+    }
+
+    private void compileTiers(int i, List<PromotionRules.Tier> tiers, String name) {
+        if (tiers == null || tiers.isEmpty()) {
+            throw new IllegalArgumentException(name + "для TIERED нужны ступени tiers");
+        }
+        tierFrom[i] = new long[tiers.size()];
+        tierValue[i] = new long[tiers.size()];
+        tierPercent[i] = new boolean[tiers.size()];
+        for (int t = 0; t < tiers.size(); t++) {
+            PromotionRules.Tier tier = tiers.get(t);
+            String tierName = name + "ступень " + (t + 1) + ": ";
+            if (tier == null || tier.from() == null) {
+                throw new IllegalArgumentException(tierName + "не указана граница from");
+            }
+            tierFrom[i][t] = minor(tier.from(), tierName + "from");
+            if (t > 0 && tierFrom[i][t] <= tierFrom[i][t - 1]) {
+                throw new IllegalArgumentException(tierName + "границы from должны возрастать");
+            }
+            if ((tier.percent() == null) == (tier.amount() == null)) {
+                throw new IllegalArgumentException(tierName + "нужен ровно один из percent и amount");
+            }
+            tierPercent[i][t] = tier.percent() != null;
+            tierValue[i][t] = tier.percent() != null
+                    ? basisPoints(tier.percent(), tierName + "percent")
+                    : positiveMinor(tier.amount(), tierName + "amount");
+        }
+    }
+
+    /**
+     * Процент от суммы с округлением HALF_UP без переполнения:
+     * base = q * 10000 + r, целая часть q * bp точна, округляется только r * bp
+     */
+    private static long percentOf(long base, long basisPoints) {
+        long whole = base / BASIS_POINTS_DIVISOR;
+        long rest = base % BASIS_POINTS_DIVISOR;
+        return whole * basisPoints + (rest * basisPoints + BASIS_POINTS_DIVISOR / 2) / BASIS_POINTS_DIVISOR;
+    }
+
+    private static long basisPoints(BigDecimal percent, String name) {
+        long basisPoints = positiveMinor(percent, name);
+        if (basisPoints > BASIS_POINTS_DIVISOR) {
+            throw new IllegalArgumentException(name + " не может быть больше 100");
+        }
+        return basisPoints;
+    }
+
+    private static long positiveMinor(BigDecimal amount, String name) {
+        if (amount == null) {
+            throw new IllegalArgumentException(name + " обязателен");
+        }
+        long minor = minor(amount, name);
+        if (minor <= 0) {
+            throw new IllegalArgumentException(name + " должен быть больше 0");
+        }
+        return minor;
+    }
+
+    private static long minor(BigDecimal amount, String name) {
+        long minor = FixedPointPricing.toMinor(amount);
+        if (minor == FixedPointPricing.NOT_REPRESENTABLE || minor < 0) {
+            throw new IllegalArgumentException(name + ": неотрицательная сумма с не более чем двумя знаками после запятой");
+        }
+        return minor;
+    }
+
+    private static long lineMinor(BigDecimal unitPrice) {
+        long minor = FixedPointPricing.toMinor(unitPrice);
+        if (minor == FixedPointPricing.NOT_REPRESENTABLE) {
+            minor = FixedPointPricing.toMinor(unitPrice.setScale(2, RoundingMode.HALF_UP));
+        }
+        return Math.max(minor, 0);
+    }
+}
@@ -5,16 +5,24 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 /**
  * Entity класс для купона
+ *
+ * Индексы повторяют миграцию V1 (db/migration) и соответствуют запросам:
+ * поиск по коду, список по active/expiryDate и выборка просроченных купонов.
  */
 @Entity
 @Table(name = "coupons", indexes = {
-    @Index(name = "idx_code", columnList = "code", unique = true)
+    @Index(name = "idx_code", columnList = "code", unique = true),
+    @Index(name = "idx_coupons_active_expiry", columnList = "active, expiry_date"),
+    @Index(name = "idx_coupons_expiry", columnList = "expiry_date"),
+    @Index(name = "idx_coupons_public_offer", columnList = "public_offer, expiry_date")
 })
 @Data
 @NoArgsConstructor
@@ -22,8 +30,18 @@ import java.time.LocalDateTime;
 @Builder
 public class Coupon {
 
+    /**
+     * Максимальная длина правил промо-акции в JSON (размер колонки rules)
+     */
+    public static final int RULES_MAX_LENGTH = 16000;
+
+    /**
+     * Идентификатор из последовательности с пулом значений:
+     * в отличие от IDENTITY позволяет Hibernate объединять INSERT в JDBC-пакеты
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupon_seq")
+    @SequenceGenerator(name = "coupon_seq", sequenceName = "coupon_seq", allocationSize = 100)
     private Long id;
 
     /**
@@ -36,7 +54,8 @@ public class Coupon {
      * Тип скидки
      */
     @Enumerated(EnumType.STRING)
-    @Column(nullable = false)
+    @JdbcTypeCode(SqlTypes.VARCHAR)
+    @Column(nullable = false, length = 32)
     private DiscountType discountType;
 
     /**
@@ -63,6 +82,11 @@ public class Coupon {
     @Column(nullable = false)
     private Integer usageLimit;
 
+    /**
+     * Максимальное количество использований одним покупателем (null - без ограничения)
+     */
+    private Integer perCustomerLimit;
+
     /**
      * Текущее количество использований
      */
@@ -77,6 +101,21 @@ public class Coupon {
     @Builder.Default
     private Boolean active = true;
 
+    /**
+     * Публичное предложение: купон подбирается POST /api/coupons/evaluate без списка кодов
+     * (персональные купоны - только по переданному коду)
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Boolean publicOffer = false;
+
+    /**
+     * Правила промо-акции (только для {@link DiscountType#RULES})
+     */
+    @Convert(converter = PromotionRulesConverter.class)
+    @Column(length = RULES_MAX_LENGTH)
+    private PromotionRules rules;
+
     /**
      * Дата создания купона
      */
@@ -0,0 +1,89 @@
+package com.ecommerce.coupon.model;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Неизменяемый снимок условий купона (без счетчика использований)
+ *
+ * Используется для кэширования: условия купона практически не меняются,
+ * а usageCount учитывается отдельно через {@link com.ecommerce.coupon.service.RedemptionEngine}.
+ */
+@Value
+public class CouponDefinition {
+
+    Long id;
+    String code;
+    DiscountType discountType;
+    BigDecimal discountValue;
+    BigDecimal minOrderAmount;
+    LocalDateTime expiryDate;
+    Integer usageLimit;
+    Integer perCustomerLimit;
+    Boolean active;
+    Boolean publicOffer;
+    LocalDateTime createdAt;
+    PromotionRules rules;
+
+    /**
+     * Значение скидки x100 (копейки или базисные пункты) для расчета в целых числах,
+     * {@link FixedPointPricing#NOT_REPRESENTABLE} если точное представление невозможно
+     */
+    long discountValueHundredths;
+
+    /**
+     * Скомпилированные правила (null, если правил нет); живет вместе со снимком условий
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    CompiledPromotion promotion;
+
+    @Builder
+    public CouponDefinition(Long id, String code, DiscountType discountType, BigDecimal discountValue,
+                            BigDecimal minOrderAmount, LocalDateTime expiryDate, Integer usageLimit,
+                            Integer perCustomerLimit, Boolean active, Boolean publicOffer, LocalDateTime createdAt,
+                            PromotionRules rules) {
+        this.id = id;
+        this.code = code;
+        this.discountType = discountType;
+        this.discountValue = discountValue;
+        this.minOrderAmount = minOrderAmount;
+        this.expiryDate = expiryDate;
+        this.usageLimit = usageLimit;
+        this.perCustomerLimit = perCustomerLimit;
+        this.active = active;
+        this.publicOffer = publicOffer;
+        this.createdAt = createdAt;
+        this.rules = rules;
+        this.discountValueHundredths = FixedPointPricing.toMinor(discountValue);
+        this.promotion = rules == null ? null : CompiledPromotion.of(rules);
+    }
+
+    /**
+     * Снять снимок условий с entity
+     *
+     * @param coupon купон entity
+     * @return неизменяемые условия купона
+     */
+    public static CouponDefinition fromEntity(Coupon coupon) {
+        return CouponDefinition.builder()
+                .id(coupon.getId())
+                .code(coupon.getCode())
+                .discountType(coupon.getDiscountType())
+                .discountValue(coupon.getDiscountValue())
+                .minOrderAmount(coupon.getMinOrderAmount())
+                .expiryDate(coupon.getExpiryDate())
+                .usageLimit(coupon.getUsageLimit())
+                .perCustomerLimit(coupon.getPerCustomerLimit())
+                .active(coupon.getActive())
+                .publicOffer(coupon.getPublicOffer())
+                .createdAt(coupon.getCreatedAt())
+                .rules(coupon.getRules())
+                .build();
+    }
+}
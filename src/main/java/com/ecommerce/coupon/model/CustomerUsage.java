@@ -0,0 +1,43 @@
+package com.ecommerce.coupon.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Использования купона покупателем (лимит coupon.perCustomerLimit)
+ *
+ * Счетчик меняется в транзакции применения условным UPDATE, поэтому после
+ * перезапуска и на любом узле он совпадает с засчитанными использованиями.
+ */
+@Entity
+@Table(name = "customer_usage")
+@IdClass(CustomerUsage.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerUsage {
+
+    @Id
+    private Long couponId;
+
+    @Id
+    private Long customerId;
+
+    @Column(nullable = false)
+    private Integer uses;
+
+    /**
+     * Составной ключ: купон и покупатель
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long couponId;
+        private Long customerId;
+    }
+}
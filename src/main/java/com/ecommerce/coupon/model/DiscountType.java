@@ -17,5 +17,11 @@ public enum DiscountType {
     /**
      * Бесплатная доставка
      */
-    FREE_SHIPPING
+    FREE_SHIPPING,
+
+    /**
+     * Скидка по правилам промо-акции ({@link PromotionRules}),
+     * discountValue - максимальная скидка купона (₽)
+     */
+    RULES
 }
@@ -0,0 +1,78 @@
+package com.ecommerce.coupon.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Расчет скидки в целых копейках без аллокаций
+ *
+ * Суммы хранятся как long в копейках (1/100 рубля), процент - в базисных
+ * пунктах (1/100 процента). Округление совпадает с HALF_UP до копеек,
+ * как в расчете на BigDecimal. Преобразование в BigDecimal выполняется
+ * только на границе DTO.
+ */
+public final class FixedPointPricing {
+
+    /**
+     * Признак того, что значение нельзя точно представить в копейках
+     */
+    public static final long NOT_REPRESENTABLE = Long.MIN_VALUE;
+
+    private static final int SCALE = 2;
+    private static final long BASIS_POINTS_DIVISOR = 10_000L;
+
+    private FixedPointPricing() {
+    }
+
+    /**
+     * Сумма в копейках
+     *
+     * @param amount сумма с не более чем двумя знаками после запятой
+     * @return копейки или {@link #NOT_REPRESENTABLE}
+     */
+    public static long toMinor(BigDecimal amount) {
+        if (amount == null || amount.scale() > SCALE) {
+            return NOT_REPRESENTABLE;
+        }
+        try {
+            return amount.movePointRight(SCALE).longValueExact();
+        } catch (ArithmeticException ex) {
+            return NOT_REPRESENTABLE;
+        }
+    }
+
+    /**
+     * Копейки в BigDecimal со scale 2
+     */
+    public static BigDecimal toDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    /**
+     * Размер скидки в копейках
+     *
+     * @param discountType       тип скидки
+     * @param discountHundredths значение скидки x100 (базисные пункты или копейки)
+     * @param amountMinor        сумма заказа в копейках
+     * @return скидка в копейках или {@link #NOT_REPRESENTABLE} при переполнении
+     */
+    public static long discount(DiscountType discountType, long discountHundredths, long amountMinor) {
+        switch (discountType) {
+            case PERCENTAGE:
+                // amount * percent / 100 с округлением HALF_UP до копейки
+                long product;
+                try {
+                    product = Math.multiplyExact(amountMinor, discountHundredths);
+                } catch (ArithmeticException ex) {
+                    return NOT_REPRESENTABLE;
+                }
+                return (product + BASIS_POINTS_DIVISOR / 2) / BASIS_POINTS_DIVISOR;
+
+            case FIXED_AMOUNT:
+                return Math.min(discountHundredths, amountMinor);
+
+            case FREE_SHIPPING:
+            default:
+                return 0L;
+        }
+    }
+}
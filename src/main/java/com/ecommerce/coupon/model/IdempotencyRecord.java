@@ -0,0 +1,56 @@
+package com.ecommerce.coupon.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Запись об успешном применении купона с ключом идемпотентности
+ *
+ * Создается в той же транзакции, что и списание использования, поэтому
+ * повтор запроса с тем же ключом (в том числе после перезапуска) получает
+ * исходный результат и не засчитывает использование второй раз.
+ */
+@Entity
+@Table(name = "idempotency_records", indexes = {
+    @Index(name = "idx_idempotency_created_at", columnList = "created_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IdempotencyRecord {
+
+    /**
+     * Значение заголовка Idempotency-Key
+     */
+    @Id
+    @Column(length = 64)
+    private String idempotencyKey;
+
+    @Column(nullable = false, length = 20)
+    private String couponCode;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal orderAmount;
+
+    /**
+     * SHA-256 покупателя и строк корзины запроса (null - запись до появления колонки)
+     */
+    @Column(length = 64)
+    private String requestFingerprint;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal discount;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal finalPrice;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
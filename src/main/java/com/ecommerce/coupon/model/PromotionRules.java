@@ -0,0 +1,168 @@
+package com.ecommerce.coupon.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Правила промо-акции купона типа {@link DiscountType#RULES}
+ *
+ * Хранятся вместе с купоном (колонка rules, JSON) и при загрузке условий
+ * компилируются в {@link CompiledPromotion}. Пример:
+ * <pre>
+ * {"stacking": "SUM", "rules": [
+ *   {"effect": "PERCENTAGE", "percent": 10, "cap": 500},
+ *   {"effect": "FIXED_AMOUNT", "amount": 300, "scope": "MATCHED",
+ *    "when": {"category": "shoes", "minQuantity": 2}},
+ *   {"effect": "TIERED", "tiers": [{"from": 3000, "amount": 200}, {"from": 10000, "percent": 5}]}
+ * ]}
+ * </pre>
+ *
+ * @param stacking как сочетаются сработавшие правила
+ * @param rules    правила в порядке приоритета
+ */
+public record PromotionRules(
+        @NotNull(message = "Способ сочетания правил обязателен")
+        Stacking stacking,
+
+        @NotEmpty(message = "Нужно хотя бы одно правило")
+        @Size(max = 64, message = "Не больше 64 правил")
+        List<@Valid @NotNull Rule> rules) {
+
+    public PromotionRules {
+        rules = rules == null ? null : List.copyOf(rules);
+    }
+
+    /**
+     * Сочетание сработавших правил
+     */
+    public enum Stacking {
+        /** Скидки всех сработавших правил складываются */
+        SUM,
+        /** Наибольшая из скидок сработавших правил */
+        BEST,
+        /** Скидка первого сработавшего правила */
+        FIRST
+    }
+
+    /**
+     * Вид скидки правила
+     */
+    public enum Effect {
+        /** percent от базы, не больше cap */
+        PERCENTAGE,
+        /** amount, не больше базы */
+        FIXED_AMOUNT,
+        /** ступень с наибольшим from, не превышающим базу */
+        TIERED
+    }
+
+    /**
+     * База, от которой считается скидка правила
+     */
+    public enum Scope {
+        /** Сумма заказа */
+        ORDER,
+        /** Сумма строк корзины, подходящих под условие when */
+        MATCHED
+    }
+
+    /**
+     * Правило: условие на корзину и скидка
+     *
+     * @param effect  вид скидки
+     * @param percent процент для PERCENTAGE
+     * @param amount  сумма для FIXED_AMOUNT
+     * @param cap     максимальная скидка правила (необязательно)
+     * @param tiers   ступени для TIERED по возрастанию from
+     * @param when    условие (необязательно - правило действует всегда)
+     * @param scope   база скидки (по умолчанию ORDER)
+     */
+    public record Rule(
+            @NotNull(message = "Вид скидки правила обязателен")
+            Effect effect,
+
+            @DecimalMin(value = "0.01", message = "Процент должен быть больше 0")
+            @DecimalMax(value = "100", message = "Процент не может быть больше 100")
+            @Digits(integer = 3, fraction = 2, message = "Процент - не больше двух знаков после запятой")
+            BigDecimal percent,
+
+            @DecimalMin(value = "0.01", message = "Сумма скидки должна быть больше 0")
+            @Digits(integer = 8, fraction = 2, message = "Сумма - не больше двух знаков после запятой")
+            BigDecimal amount,
+
+            @DecimalMin(value = "0.01", message = "Ограничение скидки должно быть больше 0")
+            @Digits(integer = 8, fraction = 2, message = "Сумма - не больше двух знаков после запятой")
+            BigDecimal cap,
+
+            @Size(max = 32, message = "Не больше 32 ступеней")
+            List<@Valid @NotNull Tier> tiers,
+
+            @Valid
+            Condition when,
+
+            Scope scope) {
+
+        public Rule {
+            tiers = tiers == null ? null : List.copyOf(tiers);
+        }
+    }
+
+    /**
+     * Ступень TIERED: скидка при базе от from (percent или amount)
+     *
+     * @param from    нижняя граница базы
+     * @param percent процент
+     * @param amount  сумма
+     */
+    public record Tier(
+            @NotNull(message = "Граница ступени обязательна")
+            @DecimalMin(value = "0.00", message = "Граница ступени не может быть отрицательной")
+            @Digits(integer = 8, fraction = 2, message = "Сумма - не больше двух знаков после запятой")
+            BigDecimal from,
+
+            @DecimalMin(value = "0.01", message = "Процент должен быть больше 0")
+            @DecimalMax(value = "100", message = "Процент не может быть больше 100")
+            @Digits(integer = 3, fraction = 2, message = "Процент - не больше двух знаков после запятой")
+            BigDecimal percent,
+
+            @DecimalMin(value = "0.01", message = "Сумма скидки должна быть больше 0")
+            @Digits(integer = 8, fraction = 2, message = "Сумма - не больше двух знаков после запятой")
+            BigDecimal amount) {
+    }
+
+    /**
+     * Условие на строки корзины
+     *
+     * Строки отбираются по sku или по category (не больше одного из них),
+     * без отбора учитывается вся корзина. Правило с отбором выполняется,
+     * только если отобрана хотя бы одна строка.
+     *
+     * @param sku         артикул
+     * @param category    категория товара
+     * @param minQuantity минимальное количество единиц в отобранных строках (с отбором - не меньше 1)
+     * @param minAmount   минимальная сумма отобранных строк (без отбора - сумма заказа)
+     */
+    public record Condition(
+            @Size(max = 64, message = "Артикул - не больше 64 символов")
+            String sku,
+
+            @Size(max = 64, message = "Категория - не больше 64 символов")
+            String category,
+
+            @Min(value = 1, message = "Минимальное количество должно быть больше 0")
+            Integer minQuantity,
+
+            @DecimalMin(value = "0.00", message = "Минимальная сумма не может быть отрицательной")
+            @Digits(integer = 8, fraction = 2, message = "Сумма - не больше двух знаков после запятой")
+            BigDecimal minAmount) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.ecommerce.coupon.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Хранение {@link PromotionRules} в колонке rules как JSON
+ */
+@Converter
+public class PromotionRulesConverter implements AttributeConverter<PromotionRules, String> {
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .build();
+
+    @Override
+    public String convertToDatabaseColumn(PromotionRules rules) {
+        return toJson(rules);
+    }
+
+    @Override
+    public PromotionRules convertToEntityAttribute(String json) {
+        return fromJson(json);
+    }
+
+    /**
+     * Правила в JSON для колонки rules
+     *
+     * @param rules правила (может быть null)
+     * @return JSON или null
+     */
+    public static String toJson(PromotionRules rules) {
+        if (rules == null) {
+            return null;
+        }
+        try {
+            return MAPPER.writeValueAsString(rules);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Не удалось сохранить правила промо-акции", ex);
+        }
+    }
+
+    /**
+     * Правила из JSON колонки rules
+     *
+     * @param json JSON (может быть null)
+     * @return правила или null
+     */
+    public static PromotionRules fromJson(String json) {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(json, PromotionRules.class);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Некорректные правила промо-акции в БД", ex);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.ecommerce.coupon.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Запись журнала использований купона (только добавление)
+ *
+ * Одна строка на каждое засчитанное использование. Пишется пакетами
+ * из очереди {@code RedemptionLedger} и не изменяется после записи.
+ */
+@Entity
+@Table(name = "redemptions", indexes = {
+    @Index(name = "idx_redemptions_coupon_id", columnList = "coupon_id"),
+    @Index(name = "idx_redemptions_redeemed_at", columnList = "redeemed_at"),
+    @Index(name = "idx_redemptions_coupon_customer", columnList = "coupon_id, customer_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Redemption {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "redemption_seq")
+    @SequenceGenerator(name = "redemption_seq", sequenceName = "redemption_seq", allocationSize = 500)
+    private Long id;
+
+    /**
+     * Идентификатор купона (код может быть выдан повторно после архивации)
+     */
+    @Column(nullable = false)
+    private Long couponId;
+
+    @Column(nullable = false, length = 20)
+    private String couponCode;
+
+    /**
+     * Идентификатор покупателя (только для купонов с лимитом на покупателя)
+     */
+    private Long customerId;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal orderAmount;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal discount;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal finalPrice;
+
+    @Column(nullable = false)
+    private LocalDateTime redeemedAt;
+}
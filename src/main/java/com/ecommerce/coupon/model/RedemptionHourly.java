@@ -0,0 +1,52 @@
+package com.ecommerce.coupon.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Почасовой итог журнала использований по купону
+ *
+ * Обновляется вместе с записью каждого пакета журнала, поэтому статистика
+ * читается из этой таблицы, а не агрегируется по всему журналу.
+ */
+@Entity
+@Table(name = "redemption_hourly")
+@IdClass(RedemptionHourly.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RedemptionHourly {
+
+    @Id
+    @Column(length = 20)
+    private String couponCode;
+
+    /**
+     * Начало часа
+     */
+    @Id
+    private LocalDateTime hourStart;
+
+    @Column(nullable = false)
+    private Long uses;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalDiscount;
+
+    /**
+     * Составной ключ: код купона и час
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String couponCode;
+        private LocalDateTime hourStart;
+    }
+}
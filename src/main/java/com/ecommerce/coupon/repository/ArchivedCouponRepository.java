@@ -0,0 +1,38 @@
+package com.ecommerce.coupon.repository;
+
+import com.ecommerce.coupon.model.ArchivedCoupon;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Repository для архива купонов
+ */
+@Repository
+public interface ArchivedCouponRepository extends JpaRepository<ArchivedCoupon, Long> {
+
+    /**
+     * Скопировать купоны в архив одним INSERT ... SELECT (без загрузки entity)
+     *
+     * @param codes      коды купонов
+     * @param archivedAt время переноса
+     * @param reason     причина переноса (имя {@link com.ecommerce.coupon.model.ArchiveReason})
+     * @return количество скопированных строк
+     */
+    @Modifying
+    @Query(value = "INSERT INTO coupons_archive (id, code, discount_type, discount_value, min_order_amount, " +
+            "expiry_date, usage_limit, per_customer_limit, usage_count, active, public_offer, created_at, rules, " +
+            "archived_at, archive_reason) " +
+            "SELECT id, code, discount_type, discount_value, min_order_amount, " +
+            "expiry_date, usage_limit, per_customer_limit, usage_count, active, public_offer, created_at, rules, " +
+            ":archivedAt, :reason " +
+            "FROM coupons WHERE code IN (:codes)", nativeQuery = true)
+    int copyFromCoupons(@Param("codes") Collection<String> codes,
+                        @Param("archivedAt") LocalDateTime archivedAt,
+                        @Param("reason") String reason);
+}
@@ -1,10 +1,25 @@
 package com.ecommerce.coupon.repository;
 
+import com.ecommerce.coupon.dto.CouponResponse;
 import com.ecommerce.coupon.model.Coupon;
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.DiscountType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository для работы с купонами
@@ -12,6 +27,14 @@ import java.util.Optional;
 @Repository
 public interface CouponRepository extends JpaRepository<Coupon, Long> {
 
+    String PROJECTION = "SELECT new com.ecommerce.coupon.dto.CouponResponse(" +
+            "c.id, c.code, c.discountType, c.discountValue, c.minOrderAmount, c.expiryDate, " +
+            "c.usageLimit, c.perCustomerLimit, c.usageCount, c.active, c.publicOffer, c.createdAt, c.rules) FROM Coupon c";
+
+    String FILTER = " WHERE (:active IS NULL OR c.active = :active)" +
+            " AND (:discountType IS NULL OR c.discountType = :discountType)" +
+            " AND (:expiringBefore IS NULL OR c.expiryDate < :expiringBefore)";
+
     /**
      * Найти купон по коду
      *
@@ -20,6 +43,60 @@ public interface CouponRepository extends JpaRepository<Coupon, Long> {
      */
     Optional<Coupon> findByCode(String code);
 
+    /**
+     * Найти купоны по набору кодов одним запросом
+     *
+     * @param codes коды купонов
+     * @return найденные купоны
+     */
+    List<Coupon> findByCodeIn(Collection<String> codes);
+
+    /**
+     * Потоково прочитать условия публичных купонов, которые сейчас можно применить
+     * (publicOffer, активные, не истекшие, с неисчерпанным лимитом; требует открытой
+     * транзакции). Персональные купоны, включая массовую генерацию, не читаются:
+     * выборка идет по индексу idx_coupons_public_offer
+     *
+     * @param now        текущее время
+     * @param exactUsage учитывать usageCount (false, если он включает арендованную квоту)
+     * @return поток условий купонов (закрывается вызывающим)
+     */
+    @Query("SELECT new com.ecommerce.coupon.model.CouponDefinition(" +
+           "c.id, c.code, c.discountType, c.discountValue, c.minOrderAmount, c.expiryDate, " +
+           "c.usageLimit, c.perCustomerLimit, c.active, c.publicOffer, c.createdAt, c.rules) FROM Coupon c " +
+           "WHERE c.publicOffer = true AND c.active = true AND c.expiryDate > :now " +
+           "AND (:exactUsage = false OR c.usageCount < c.usageLimit)")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<CouponDefinition> streamPublicOfferDefinitions(@Param("now") LocalDateTime now,
+                                                          @Param("exactUsage") boolean exactUsage);
+
+    /**
+     * Получить только счетчик использований купона
+     *
+     * @param code код купона
+     * @return Optional со значением usageCount
+     */
+    @Query("SELECT c.usageCount FROM Coupon c WHERE c.code = :code")
+    Optional<Integer> findUsageCountByCode(@Param("code") String code);
+
+    /**
+     * Получить остаток квоты купона (usageLimit - usageCount)
+     *
+     * @param code код купона
+     * @return Optional с остатком
+     */
+    @Query("SELECT c.usageLimit - c.usageCount FROM Coupon c WHERE c.code = :code")
+    Optional<Integer> findRemainingUsageByCode(@Param("code") String code);
+
+    /**
+     * Выделить блок значений счетчика кодов (шаг последовательности - размер блока)
+     *
+     * @return начало блока
+     */
+    @Transactional
+    @Query(value = "SELECT NEXT VALUE FOR coupon_code_seq", nativeQuery = true)
+    long nextCodeBlock();
+
     /**
      * Проверить существование купона по коду
      *
@@ -27,4 +104,138 @@ public interface CouponRepository extends JpaRepository<Coupon, Long> {
      * @return true если существует
      */
     boolean existsByCode(String code);
+
+    /**
+     * Страница купонов после заданного id (keyset-пагинация) с фильтрами
+     *
+     * Возвращает DTO-проекцию, поэтому entity не попадают в контекст персистентности.
+     *
+     * @param afterId        id последнего купона предыдущей страницы (0 для первой)
+     * @param active         фильтр по активности (null - без фильтра)
+     * @param discountType   фильтр по типу скидки (null - без фильтра)
+     * @param expiringBefore истекающие до указанной даты (null - без фильтра)
+     * @param pageable       размер страницы
+     * @return купоны в порядке возрастания id
+     */
+    @Query(PROJECTION + FILTER + " AND c.id > :afterId ORDER BY c.id")
+    List<CouponResponse> findPage(@Param("afterId") long afterId,
+                                  @Param("active") Boolean active,
+                                  @Param("discountType") DiscountType discountType,
+                                  @Param("expiringBefore") LocalDateTime expiringBefore,
+                                  Pageable pageable);
+
+    /**
+     * Потоково прочитать купоны для выгрузки (требует открытой транзакции)
+     *
+     * @param active         фильтр по активности (null - без фильтра)
+     * @param discountType   фильтр по типу скидки (null - без фильтра)
+     * @param expiringBefore истекающие до указанной даты (null - без фильтра)
+     * @return поток купонов в порядке возрастания id
+     */
+    @Query(PROJECTION + FILTER + " ORDER BY c.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<CouponResponse> streamForExport(@Param("active") Boolean active,
+                                           @Param("discountType") DiscountType discountType,
+                                           @Param("expiringBefore") LocalDateTime expiringBefore);
+
+    /**
+     * Потоково прочитать все существующие коды (требует открытой транзакции)
+     *
+     * @return поток кодов купонов
+     */
+    @Query("SELECT c.code FROM Coupon c")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<String> streamAllCodes();
+
+    /**
+     * Коды купонов, истекших до указанного момента (по индексу expiry_date)
+     *
+     * @param expiredBefore граница срока действия
+     * @param pageable      размер порции
+     * @return коды самых давно истекших купонов
+     */
+    @Query("SELECT c.code FROM Coupon c WHERE c.expiryDate < :expiredBefore ORDER BY c.expiryDate")
+    List<String> findExpiredCodes(@Param("expiredBefore") LocalDateTime expiredBefore, Pageable pageable);
+
+    /**
+     * Коды купонов с исчерпанным лимитом в диапазоне id (fromId, toId]
+     *
+     * Диапазон первичного ключа ограничивает объем чтения одного запроса.
+     *
+     * @param fromId нижняя граница (не включая)
+     * @param toId   верхняя граница (включая)
+     * @return коды исчерпанных купонов
+     */
+    @Query("SELECT c.code FROM Coupon c WHERE c.id > :fromId AND c.id <= :toId " +
+           "AND c.usageCount >= c.usageLimit")
+    List<String> findExhaustedCodes(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    /**
+     * Максимальный id купона
+     *
+     * @return Optional с максимальным id (пусто, если купонов нет)
+     */
+    @Query("SELECT MAX(c.id) FROM Coupon c")
+    Optional<Long> findMaxId();
+
+    /**
+     * Удалить купоны по кодам одним DELETE
+     *
+     * @param codes коды купонов
+     * @return количество удаленных строк
+     */
+    @Modifying
+    @Query("DELETE FROM Coupon c WHERE c.code IN :codes")
+    int deleteByCodes(@Param("codes") Collection<String> codes);
+
+    /**
+     * Атомарно увеличить счетчик использований, если лимит еще не исчерпан
+     *
+     * Проверка лимита и инкремент выполняются одним UPDATE, поэтому
+     * конкурентные запросы не могут превысить usageLimit.
+     *
+     * @param code код купона
+     * @return 1 если использование засчитано, 0 если лимит исчерпан или купон не найден
+     */
+    @Modifying
+    @Query("UPDATE Coupon c SET c.usageCount = c.usageCount + 1 " +
+           "WHERE c.code = :code AND c.usageCount < c.usageLimit")
+    int incrementUsageIfAvailable(@Param("code") String code);
+
+    /**
+     * Атомарно засчитать сразу несколько использований, если они помещаются в лимит
+     *
+     * @param code    код купона
+     * @param permits количество использований
+     * @return 1 если все использования засчитаны, иначе 0
+     */
+    @Modifying
+    @Query("UPDATE Coupon c SET c.usageCount = c.usageCount + :permits " +
+           "WHERE c.code = :code AND c.usageCount + :permits <= c.usageLimit")
+    int incrementUsageIfAvailable(@Param("code") String code, @Param("permits") int permits);
+
+    /**
+     * Добавить пакет использований, накопленных в памяти
+     *
+     * @param code  код купона
+     * @param delta количество использований
+     * @return количество обновленных строк
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Coupon c SET c.usageCount = c.usageCount + :delta WHERE c.code = :code")
+    int addUsage(@Param("code") String code, @Param("delta") int delta);
+
+    /**
+     * Вернуть в квоту зарезервированные, но не подтвержденные использования
+     *
+     * @param code    код купона
+     * @param permits количество использований
+     * @return количество обновленных строк
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Coupon c SET c.usageCount = c.usageCount - :permits " +
+           "WHERE c.code = :code AND c.usageCount >= :permits")
+    int releaseUsage(@Param("code") String code, @Param("permits") int permits);
 }
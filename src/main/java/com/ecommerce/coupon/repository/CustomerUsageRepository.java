@@ -0,0 +1,81 @@
+package com.ecommerce.coupon.repository;
+
+import com.ecommerce.coupon.model.CustomerUsage;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.stream.Stream;
+
+/**
+ * Repository для использований купонов по покупателям
+ */
+@Repository
+public interface CustomerUsageRepository extends JpaRepository<CustomerUsage, CustomerUsage.Key> {
+
+    /**
+     * Засчитать покупателю использования, если сумма не превысит лимит
+     *
+     * Выполняется в транзакции применения: при откате использования
+     * возвращаются вместе с ним. Строки покупателя может еще не быть, тогда
+     * ее создает {@link #insertIfAbsent}.
+     *
+     * @return 1 если использования засчитаны, 0 если лимит был бы превышен или строки нет
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE customer_usage SET uses = uses + :uses " +
+            "WHERE coupon_id = :couponId AND customer_id = :customerId AND uses + :uses <= :limit", nativeQuery = true)
+    int tryAdd(@Param("couponId") Long couponId,
+               @Param("customerId") long customerId,
+               @Param("uses") int uses,
+               @Param("limit") int limit);
+
+    /**
+     * Создать строку покупателя с нулем использований, если ее нет
+     *
+     * Конкурентная вставка той же строки завершается нарушением первичного
+     * ключа, поэтому вызывается в отдельной транзакции.
+     *
+     * @return 1 если строка создана, 0 если она уже была
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "MERGE INTO customer_usage t " +
+            "USING (SELECT CAST(:couponId AS BIGINT) AS coupon_id, CAST(:customerId AS BIGINT) AS customer_id) s " +
+            "ON t.coupon_id = s.coupon_id AND t.customer_id = s.customer_id " +
+            "WHEN NOT MATCHED THEN INSERT (coupon_id, customer_id, uses) " +
+            "VALUES (s.coupon_id, s.customer_id, 0)", nativeQuery = true)
+    int insertIfAbsent(@Param("couponId") Long couponId,
+                       @Param("customerId") long customerId);
+
+    /**
+     * Вернуть использования покупателя (применение не состоялось)
+     *
+     * @return количество затронутых строк
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE customer_usage SET uses = uses - :uses " +
+            "WHERE coupon_id = :couponId AND customer_id = :customerId AND uses >= :uses", nativeQuery = true)
+    int subtract(@Param("couponId") Long couponId,
+                 @Param("customerId") long customerId,
+                 @Param("uses") int uses);
+
+    /**
+     * Потоково прочитать использования купона по покупателям
+     * (требует открытой транзакции)
+     *
+     * @param couponId идентификатор купона
+     * @return поток пар [customerId, количество использований] (закрывается вызывающим)
+     */
+    @Query("SELECT u.customerId, u.uses FROM CustomerUsage u WHERE u.couponId = :couponId AND u.uses > 0")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    Stream<Object[]> streamUsage(@Param("couponId") Long couponId);
+}
@@ -0,0 +1,49 @@
+package com.ecommerce.coupon.repository;
+
+import com.ecommerce.coupon.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Repository для записей идемпотентного применения
+ */
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Вставить запись без предварительного SELECT (save с заданным id выполнил бы merge)
+     *
+     * Повторный ключ нарушает первичный ключ и откатывает всю транзакцию применения.
+     *
+     * @return количество вставленных строк
+     */
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_records " +
+            "(idempotency_key, coupon_code, order_amount, request_fingerprint, discount, final_price, created_at) " +
+            "VALUES (:key, :code, :orderAmount, :fingerprint, :discount, :finalPrice, :createdAt)", nativeQuery = true)
+    int insert(@Param("key") String key,
+               @Param("code") String code,
+               @Param("orderAmount") BigDecimal orderAmount,
+               @Param("fingerprint") String fingerprint,
+               @Param("discount") BigDecimal discount,
+               @Param("finalPrice") BigDecimal finalPrice,
+               @Param("createdAt") LocalDateTime createdAt);
+
+    /**
+     * Удалить записи старше срока хранения
+     *
+     * @param createdBefore граница времени создания
+     * @return количество удаленных записей
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :createdBefore")
+    int deleteCreatedBefore(@Param("createdBefore") LocalDateTime createdBefore);
+}
@@ -0,0 +1,70 @@
+package com.ecommerce.coupon.repository;
+
+import com.ecommerce.coupon.dto.RedemptionHourlyStats;
+import com.ecommerce.coupon.dto.RedemptionTotals;
+import com.ecommerce.coupon.model.RedemptionHourly;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository для почасовых итогов журнала использований
+ */
+@Repository
+public interface RedemptionHourlyRepository extends JpaRepository<RedemptionHourly, RedemptionHourly.Key> {
+
+    /**
+     * Прибавить пакет использований к итогу за час (создать строку, если ее нет)
+     *
+     * @return количество затронутых строк
+     */
+    @Modifying
+    @Query(value = "MERGE INTO redemption_hourly t " +
+            "USING (SELECT CAST(:code AS VARCHAR(20)) AS coupon_code, CAST(:hourStart AS TIMESTAMP(6)) AS hour_start, " +
+            "CAST(:uses AS BIGINT) AS uses, CAST(:discount AS NUMERIC(19, 2)) AS total_discount) s " +
+            "ON t.coupon_code = s.coupon_code AND t.hour_start = s.hour_start " +
+            "WHEN MATCHED THEN UPDATE SET uses = t.uses + s.uses, total_discount = t.total_discount + s.total_discount " +
+            "WHEN NOT MATCHED THEN INSERT (coupon_code, hour_start, uses, total_discount) " +
+            "VALUES (s.coupon_code, s.hour_start, s.uses, s.total_discount)", nativeQuery = true)
+    int add(@Param("code") String code,
+            @Param("hourStart") LocalDateTime hourStart,
+            @Param("uses") long uses,
+            @Param("discount") BigDecimal discount);
+
+    /**
+     * Использования купона по часам за период
+     *
+     * @param code купон
+     * @param from начало периода (включая)
+     * @param to   конец периода (не включая)
+     * @return итоги по часам в порядке времени
+     */
+    @Query("SELECT new com.ecommerce.coupon.dto.RedemptionHourlyStats(h.hourStart, h.uses, h.totalDiscount) " +
+           "FROM RedemptionHourly h WHERE h.couponCode = :code AND h.hourStart >= :from AND h.hourStart < :to " +
+           "ORDER BY h.hourStart")
+    List<RedemptionHourlyStats> findHourly(@Param("code") String code,
+                                           @Param("from") LocalDateTime from,
+                                           @Param("to") LocalDateTime to);
+
+    /**
+     * Купоны с наибольшей суммой скидок за период
+     *
+     * @param from     начало периода (включая)
+     * @param to       конец периода (не включая)
+     * @param pageable количество купонов
+     * @return итоги по купонам
+     */
+    @Query("SELECT new com.ecommerce.coupon.dto.RedemptionTotals(h.couponCode, SUM(h.uses), SUM(h.totalDiscount)) " +
+           "FROM RedemptionHourly h WHERE h.hourStart >= :from AND h.hourStart < :to " +
+           "GROUP BY h.couponCode ORDER BY SUM(h.totalDiscount) DESC")
+    List<RedemptionTotals> findTopByDiscount(@Param("from") LocalDateTime from,
+                                             @Param("to") LocalDateTime to,
+                                             Pageable pageable);
+}
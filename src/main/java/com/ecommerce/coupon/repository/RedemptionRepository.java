@@ -0,0 +1,32 @@
+package com.ecommerce.coupon.repository;
+
+import com.ecommerce.coupon.model.Redemption;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Repository для журнала использований купонов
+ */
+@Repository
+public interface RedemptionRepository extends JpaRepository<Redemption, Long> {
+
+    /**
+     * Восстановить usageCount по журналу после сбоя
+     *
+     * Счетчик только увеличивается до количества записей журнала: в режиме
+     * database он может быть больше журнала (записи теряются вместе с очередью
+     * при сбое, резервирования учитываются без записи), но не меньше его.
+     *
+     * @return количество исправленных купонов
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE coupons c SET usage_count = " +
+            "(SELECT COUNT(*) FROM redemptions r WHERE r.coupon_id = c.id) " +
+            "WHERE c.usage_count < (SELECT COUNT(*) FROM redemptions r WHERE r.coupon_id = c.id)",
+            nativeQuery = true)
+    int rebuildUsageCounts();
+}
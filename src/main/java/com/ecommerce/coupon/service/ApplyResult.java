@@ -0,0 +1,96 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.ValidationResponse;
+import com.ecommerce.coupon.exception.CouponExpiredException;
+import com.ecommerce.coupon.exception.CouponNotFoundException;
+import com.ecommerce.coupon.exception.InvalidCouponException;
+
+import java.math.BigDecimal;
+
+/**
+ * Результат применения купона без исключений
+ *
+ * Отказ - обычный результат (причина + параметры), а не исключение:
+ * при массовых отказах не тратится время на захват стека, а текст
+ * сообщения форматируется только когда он действительно нужен.
+ */
+public final class ApplyResult {
+
+    private final ValidationResponse response;
+    private final RejectionReason reason;
+    private final String code;
+    private final BigDecimal minOrderAmount;
+
+    private ApplyResult(ValidationResponse response, RejectionReason reason, String code, BigDecimal minOrderAmount) {
+        this.response = response;
+        this.reason = reason;
+        this.code = code;
+        this.minOrderAmount = minOrderAmount;
+    }
+
+    /**
+     * Купон успешно применен
+     */
+    public static ApplyResult applied(ValidationResponse response) {
+        return new ApplyResult(response, null, null, null);
+    }
+
+    /**
+     * Отказ в применении купона
+     *
+     * @param reason         причина
+     * @param code           код купона
+     * @param minOrderAmount минимальная сумма заказа (только для BELOW_MIN_ORDER_AMOUNT)
+     */
+    public static ApplyResult rejected(RejectionReason reason, String code, BigDecimal minOrderAmount) {
+        return new ApplyResult(null, reason, code, minOrderAmount);
+    }
+
+    public boolean isApplied() {
+        return reason == null;
+    }
+
+    public ValidationResponse getResponse() {
+        return response;
+    }
+
+    public RejectionReason getReason() {
+        return reason;
+    }
+
+    /**
+     * Текст отказа (тот же, что и в исключениях сервиса)
+     */
+    public String message() {
+        if (reason == null) {
+            return response.getMessage();
+        }
+        return switch (reason) {
+            case NOT_FOUND -> "Купон с кодом '" + code + "' не найден";
+            case INACTIVE -> "Купон неактивен";
+            case EXPIRED -> "Срок действия купона истек";
+            case USAGE_LIMIT_EXCEEDED -> "Купон превысил лимит использований";
+            case CUSTOMER_LIMIT_EXCEEDED -> "Покупатель уже использовал этот купон максимальное число раз";
+            case CUSTOMER_ID_REQUIRED -> "Для этого купона нужен идентификатор покупателя customerId";
+            case BELOW_MIN_ORDER_AMOUNT ->
+                    String.format("Минимальная сумма заказа для этого купона: %.2f₽", minOrderAmount);
+            case CONDITIONS_NOT_MET -> "Корзина не выполняет условия купона";
+            case IDEMPOTENCY_KEY_REUSED -> "Idempotency-Key уже использован для другого запроса";
+        };
+    }
+
+    /**
+     * Результат успешного применения или исключение для вызывающих,
+     * которым нужна прежняя семантика
+     */
+    public ValidationResponse orElseThrow() {
+        if (reason == null) {
+            return response;
+        }
+        throw switch (reason) {
+            case NOT_FOUND -> new CouponNotFoundException(message());
+            case EXPIRED -> new CouponExpiredException(message());
+            default -> new InvalidCouponException(message());
+        };
+    }
+}
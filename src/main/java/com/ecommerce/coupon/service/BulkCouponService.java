@@ -0,0 +1,181 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.BulkGenerationProgress;
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.model.Coupon;
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.repository.CouponRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Сервис массовой генерации купонов (миллионы кодов за один запуск)
+ *
+ * Коды генерируются параллельно порциями. Для случайной стратегии дубликаты
+ * отсекаются в памяти фильтром Блума (без запроса existsByCode на каждый код),
+ * стратегия без коллизий фильтра не требует. Порции записываются пакетными
+ * INSERT в отдельных транзакциях.
+ */
+@Service
+@Slf4j
+public class BulkCouponService {
+
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+
+    private final CouponRepository couponRepository;
+    private final CouponCodeGenerator codeGenerator;
+    private final CouponThresholdIndex thresholdIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final int chunkSize;
+    private final double falsePositiveRate;
+
+    public BulkCouponService(CouponRepository couponRepository,
+                             CouponCodeGenerator codeGenerator,
+                             CouponThresholdIndex thresholdIndex,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${coupon.bulk.chunk-size:5000}") int chunkSize,
+                             @Value("${coupon.bulk.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.couponRepository = couponRepository;
+        this.codeGenerator = codeGenerator;
+        this.thresholdIndex = thresholdIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.chunkSize = chunkSize;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Проверить шаблон до начала генерации (ответ еще не начат, ошибка - 400)
+     *
+     * @param template условия для всех купонов
+     */
+    public void validateTemplate(CouponCreateRequest template) {
+        CouponService.validateRules(template);
+    }
+
+    /**
+     * Сгенерировать купоны по шаблону
+     *
+     * @param count    количество купонов
+     * @param template условия для всех купонов
+     * @param progress получатель прогресса (вызывается после каждой порции)
+     */
+    public void generate(int count, CouponCreateRequest template, Consumer<BulkGenerationProgress> progress) {
+        log.info("Массовая генерация {} купонов с типом скидки: {}", count, template.getDiscountType());
+        long startedAt = System.nanoTime();
+
+        CodeBloomFilter filter = null;
+        if (!codeGenerator.isCollisionFree()) {
+            long existing = couponRepository.count();
+            filter = new CodeBloomFilter(existing + count, falsePositiveRate);
+            preloadExistingCodes(filter);
+            log.info("Фильтр Блума: {} существующих кодов, {} КБ", existing, filter.sizeInBytes() / 1024);
+        }
+
+        long generated = 0;
+        while (generated < count) {
+            int size = (int) Math.min(chunkSize, count - generated);
+            saveChunk(size, template, filter);
+            generated += size;
+            progress.accept(progress(generated, count, startedAt, generated == count));
+        }
+
+        log.info("Массовая генерация завершена: {} купонов за {} мс",
+                count, (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    private void preloadExistingCodes(CodeBloomFilter filter) {
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (Stream<String> codes = couponRepository.streamAllCodes()) {
+                codes.mapToLong(CouponCodeFormat::decode)
+                        .filter(value -> value >= 0)
+                        .forEach(filter::putIfAbsent);
+            }
+        });
+    }
+
+    private void saveChunk(int size, CouponCreateRequest template, CodeBloomFilter filter) {
+        for (int attempt = 1; ; attempt++) {
+            List<Coupon> coupons = generateCodes(size, filter).stream()
+                    .map(code -> toCoupon(code, template))
+                    .collect(Collectors.toList());
+            try {
+                transactionTemplate.executeWithoutResult(status -> couponRepository.saveAll(coupons));
+                // Индекс подбора хранит только публичные купоны
+                if (Boolean.TRUE.equals(template.getPublicOffer())) {
+                    coupons.forEach(coupon -> thresholdIndex.add(CouponDefinition.fromEntity(coupon)));
+                }
+                return;
+            } catch (DataIntegrityViolationException ex) {
+                // Код успел занять конкурентный createCoupon - перегенерировать порцию
+                if (attempt == MAX_CHUNK_ATTEMPTS) {
+                    throw ex;
+                }
+                log.warn("Конфликт кодов при записи порции, попытка {}", attempt);
+            }
+        }
+    }
+
+    private Set<String> generateCodes(int size, CodeBloomFilter filter) {
+        Set<String> codes = new LinkedHashSet<>(size * 2);
+        while (codes.size() < size) {
+            // Генерация параллельно; множество порции страхует от гонки двух потоков на одном коде
+            codes.addAll(Stream.generate(() -> nextUniqueCode(filter))
+                    .parallel()
+                    .limit(size - codes.size())
+                    .collect(Collectors.toList()));
+        }
+        return codes;
+    }
+
+    private String nextUniqueCode(CodeBloomFilter filter) {
+        if (filter == null) {
+            return codeGenerator.nextCode();
+        }
+        long value;
+        do {
+            value = codeGenerator.nextValue();
+        } while (!filter.putIfAbsent(value));
+        return CouponCodeFormat.encode(value);
+    }
+
+    private Coupon toCoupon(String code, CouponCreateRequest template) {
+        return Coupon.builder()
+                .code(code)
+                .discountType(template.getDiscountType())
+                .discountValue(template.getDiscountValue())
+                .minOrderAmount(template.getMinOrderAmount())
+                .expiryDate(template.getExpiryDate())
+                .usageLimit(template.getUsageLimit())
+                .perCustomerLimit(template.getPerCustomerLimit())
+                .usageCount(0)
+                .active(true)
+                .publicOffer(Boolean.TRUE.equals(template.getPublicOffer()))
+                .rules(template.getRules())
+                .build();
+    }
+
+    private BulkGenerationProgress progress(long generated, long total, long startedAt, boolean done) {
+        long elapsedMs = Math.max(1, (System.nanoTime() - startedAt) / 1_000_000);
+        return BulkGenerationProgress.builder()
+                .generated(generated)
+                .total(total)
+                .elapsedMs(elapsedMs)
+                .codesPerSecond(generated * 1000 / elapsedMs)
+                .done(done)
+                .build();
+    }
+}
@@ -0,0 +1,66 @@
+package com.ecommerce.coupon.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Потокобезопасный фильтр Блума для кодов купонов, упакованных в long
+ *
+ * Используется при массовой генерации: отвечает "точно нет" или
+ * "возможно есть". Ложное "возможно есть" лишь заставляет сгенерировать
+ * другой код, поэтому дубликаты по фильтру невозможны.
+ */
+public class CodeBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions ожидаемое количество кодов
+     * @param falsePositiveRate  допустимая доля ложных срабатываний
+     */
+    public CodeBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.max(64, m);
+        this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    /**
+     * Добавить значение
+     *
+     * @param value упакованный код
+     * @return true если значения точно не было в фильтре
+     */
+    public boolean putIfAbsent(long value) {
+        long hash1 = mix(value);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long previous = bits.getAndAccumulate(word, mask, (current, m) -> current | m);
+            changed |= (previous & mask) == 0;
+        }
+        return changed;
+    }
+
+    /**
+     * Размер битового массива в байтах
+     */
+    public long sizeInBytes() {
+        return (long) bits.length() * Long.BYTES;
+    }
+
+    private static long mix(long value) {
+        // Финализатор MurmurHash3 (fmix64)
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,40 @@
+package com.ecommerce.coupon.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Контроль заполнения пространства кодов 36^6
+ *
+ * Для случайной стратегии вероятность коллизии растет вместе с
+ * заполнением, для перестановки - приближается конец счетчика.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CodeCapacityMonitor {
+
+    private final CouponCodeGenerator codeGenerator;
+
+    @Value("${coupon.code.capacity-warning-threshold:0.5}")
+    private double warningThreshold;
+
+    /**
+     * Доля использованного пространства кодов
+     */
+    public double usedFraction() {
+        return (double) codeGenerator.issuedCount() / CouponCodeFormat.SPACE;
+    }
+
+    @Scheduled(fixedDelayString = "${coupon.code.capacity-check-interval-ms:60000}")
+    public void checkCapacity() {
+        double used = usedFraction();
+        if (used >= warningThreshold) {
+            log.warn("Пространство кодов купонов заполнено на {}% (порог {}%)",
+                    String.format("%.1f", used * 100), String.format("%.1f", warningThreshold * 100));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.ecommerce.coupon.service;
+
+/**
+ * Формат кода купона: SALE + 6 символов (A-Z, 0-9)
+ *
+ * Шесть символов из алфавита в 36 знаков рассматриваются как число
+ * в диапазоне [0, 36^6), что позволяет хранить коды в примитивах.
+ */
+public final class CouponCodeFormat {
+
+    public static final String PREFIX = "SALE";
+    public static final int LENGTH = 6;
+    public static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    /**
+     * Количество различных кодов: 36^6
+     */
+    public static final long SPACE = 2_176_782_336L;
+
+    private static final int RADIX = ALPHABET.length();
+
+    private CouponCodeFormat() {
+    }
+
+    /**
+     * Число из [0, 36^6) в код купона
+     *
+     * @param value упакованный код
+     * @return строковый код
+     */
+    public static String encode(long value) {
+        char[] chars = new char[PREFIX.length() + LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        for (int i = chars.length - 1; i >= PREFIX.length(); i--) {
+            chars[i] = ALPHABET.charAt((int) (value % RADIX));
+            value /= RADIX;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Код купона в число
+     *
+     * @param code строковый код
+     * @return упакованный код или -1, если код не соответствует формату
+     */
+    public static long decode(String code) {
+        if (code == null || code.length() != PREFIX.length() + LENGTH || !code.startsWith(PREFIX)) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = PREFIX.length(); i < code.length(); i++) {
+            int digit = ALPHABET.indexOf(code.charAt(i));
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * RADIX + digit;
+        }
+        return value;
+    }
+}
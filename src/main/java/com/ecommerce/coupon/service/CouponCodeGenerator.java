@@ -0,0 +1,33 @@
+package com.ecommerce.coupon.service;
+
+/**
+ * Стратегия генерации кодов купонов формата {@link CouponCodeFormat}
+ *
+ * Реализация выбирается свойством coupon.code.strategy.
+ */
+public interface CouponCodeGenerator {
+
+    /**
+     * Следующий код в упакованном виде, число из [0, 36^6)
+     */
+    long nextValue();
+
+    /**
+     * Следующий код купона
+     */
+    default String nextCode() {
+        return CouponCodeFormat.encode(nextValue());
+    }
+
+    /**
+     * Гарантирует ли стратегия отсутствие повторов
+     *
+     * @return true если проверка existsByCode не нужна
+     */
+    boolean isCollisionFree();
+
+    /**
+     * Оценка количества уже выданных кодов (для контроля заполнения пространства 36^6)
+     */
+    long issuedCount();
+}
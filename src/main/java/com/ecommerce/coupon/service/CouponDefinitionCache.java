@@ -0,0 +1,195 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.repository.CouponRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through кэш условий купонов перед {@link CouponRepository}
+ *
+ * Ограничен по размеру и по времени жизни записи. Отсутствующие коды
+ * тоже кэшируются (с более коротким TTL), чтобы перебор кодов ботами
+ * не доходил до БД.
+ *
+ * Промахи одного кода объединяются через {@link SingleFlight} вокруг запроса
+ * к {@link CouponRepository}: при публикации промокода тысячи одновременных
+ * запросов ждут одну загрузку (или не больше max-loaders-per-key), не блокируя
+ * при этом загрузки других кодов. Результат загрузки кладется в кэш напрямую;
+ * инвалидация, пришедшая во время загрузки, убирает его повторно.
+ */
+@Component
+public class CouponDefinitionCache implements MeterBinder {
+
+    private final CouponRepository couponRepository;
+    private final Cache<String, Optional<CouponDefinition>> cache;
+    private final SingleFlight<String, Optional<CouponDefinition>> lookups;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public CouponDefinitionCache(CouponRepository couponRepository,
+                                 MeterRegistry registry,
+                                 @Value("${coupon.lookup.max-loaders-per-key:1}") int maxLoadersPerKey,
+                                 @Value("${coupon.cache.maximum-size:100000}") long maximumSize,
+                                 @Value("${coupon.cache.ttl:PT5M}") Duration ttl,
+                                 @Value("${coupon.cache.negative-ttl:PT30S}") Duration negativeTtl) {
+        this.couponRepository = couponRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new DefinitionExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+                .recordStats()
+                .build();
+        this.lookups = new SingleFlight<>("definition", maxLoadersPerKey, registry);
+    }
+
+    /**
+     * Найти условия купона по коду
+     *
+     * @param code код купона
+     * @return Optional с условиями купона
+     */
+    public Optional<CouponDefinition> find(String code) {
+        Optional<CouponDefinition> cached = cache.getIfPresent(code);
+        if (cached != null) {
+            return cached;
+        }
+        return lookups.execute(code, () -> {
+            long observed = invalidations.get();
+            Optional<CouponDefinition> loaded = load(code);
+            cache.put(code, loaded);
+            // Инвалидация во время загрузки: загруженное состояние могло устареть
+            if (invalidations.get() != observed) {
+                cache.invalidate(code);
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Условия купона, если они уже есть в кэше (без загрузки)
+     *
+     * @param code код купона
+     * @return условия (Optional.empty для отсутствующего купона) или null при промахе
+     */
+    public Optional<CouponDefinition> getIfPresent(String code) {
+        return cache.getIfPresent(code);
+    }
+
+    /**
+     * Положить условия, загруженные в обход кэша (реактивный путь применения)
+     *
+     * Существующая запись не перезаписывается. Между загрузкой и вызовом купон
+     * может быть удален, тогда устаревшая запись живет не дольше TTL - как и
+     * у записи, закэшированной до удаления на другом экземпляре.
+     *
+     * @param code       код купона
+     * @param definition загруженные условия (Optional.empty для отсутствующего купона)
+     */
+    public void putIfAbsent(String code, Optional<CouponDefinition> definition) {
+        cache.asMap().putIfAbsent(code, definition);
+    }
+
+    /**
+     * Найти условия нескольких купонов; промахи загружаются одним запросом
+     *
+     * @param codes коды купонов
+     * @return условия по каждому коду (Optional.empty для отсутствующих)
+     */
+    public Map<String, Optional<CouponDefinition>> findAll(Collection<String> codes) {
+        return cache.getAll(codes, this::loadAll);
+    }
+
+    /**
+     * Удалить запись из кэша (после создания или удаления купона)
+     *
+     * @param code код купона
+     */
+    public void invalidate(String code) {
+        evict(code);
+        // Повторно после коммита: конкурентный запрос мог закэшировать старое состояние
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(code);
+                }
+            });
+        }
+    }
+
+    /**
+     * Статистика попаданий, промахов и вытеснений
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Текущее количество записей в кэше
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "coupon_definitions");
+    }
+
+    private void evict(String code) {
+        invalidations.incrementAndGet();
+        cache.invalidate(code);
+    }
+
+    private Optional<CouponDefinition> load(String code) {
+        return couponRepository.findByCode(code).map(CouponDefinition::fromEntity);
+    }
+
+    private Map<String, Optional<CouponDefinition>> loadAll(Set<? extends String> codes) {
+        Map<String, Optional<CouponDefinition>> loaded = new HashMap<>();
+        codes.forEach(code -> loaded.put(code, Optional.empty()));
+        couponRepository.findByCodeIn(loaded.keySet())
+                .forEach(coupon -> loaded.put(coupon.getCode(), Optional.of(CouponDefinition.fromEntity(coupon))));
+        return loaded;
+    }
+
+    /**
+     * Разный TTL для найденных и отсутствующих купонов
+     */
+    private record DefinitionExpiry(long ttlNanos, long negativeTtlNanos)
+            implements Expiry<String, Optional<CouponDefinition>> {
+
+        @Override
+        public long expireAfterCreate(String code, Optional<CouponDefinition> value, long currentTime) {
+            return value.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String code, Optional<CouponDefinition> value,
+                                      long currentTime, long currentDuration) {
+            return expireAfterCreate(code, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String code, Optional<CouponDefinition> value,
+                                    long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
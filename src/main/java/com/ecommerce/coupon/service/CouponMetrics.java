@@ -0,0 +1,160 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.HotCouponStats;
+import com.ecommerce.coupon.model.DiscountType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики горячего пути применения купонов
+ *
+ * Все теги имеют ограниченное множество значений: этап, причина отказа,
+ * тип скидки, место в рейтинге. Код купона в теги не попадает: gauge
+ * самых горячих купонов помечены только местом (rank), а какой купон
+ * занимает место, показывает {@link #hotCoupons()} (GET /api/stats/hot-coupons).
+ */
+@Component
+public class CouponMetrics {
+
+    /**
+     * Этапы validateAndApply
+     */
+    public enum Stage {
+        LOOKUP, CHECKS, DISCOUNT, REDEEM
+    }
+
+    private final RedemptionEngine redemptionEngine;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<RejectionReason, Counter> rejections = new EnumMap<>(RejectionReason.class);
+    private final Map<DiscountType, Counter> applications = new EnumMap<>(DiscountType.class);
+    private final MultiGauge hotCoupons;
+    private final int hotCouponCount;
+    private final int maxTrackedCodes;
+    private volatile Map<String, LongAdder> window = new ConcurrentHashMap<>();
+    private volatile List<HotCouponStats> hotCouponStats = List.of();
+
+    public CouponMetrics(MeterRegistry registry,
+                         RedemptionEngine redemptionEngine,
+                         @Value("${coupon.metrics.hot-coupons:10}") int hotCouponCount,
+                         @Value("${coupon.metrics.max-tracked-codes:10000}") int maxTrackedCodes) {
+        this.redemptionEngine = redemptionEngine;
+        this.hotCouponCount = hotCouponCount;
+        this.maxTrackedCodes = maxTrackedCodes;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("coupon.apply.stage")
+                    .description("Время этапа применения купона")
+                    .tag("stage", stage.name().toLowerCase())
+                    .register(registry));
+        }
+        for (RejectionReason reason : RejectionReason.values()) {
+            rejections.put(reason, Counter.builder("coupon.apply.rejected")
+                    .description("Отказы в применении купона")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(registry));
+        }
+        for (DiscountType type : DiscountType.values()) {
+            applications.put(type, Counter.builder("coupon.apply.applied")
+                    .description("Успешные применения купонов")
+                    .tag("discount_type", type.name().toLowerCase())
+                    .register(registry));
+        }
+        this.hotCoupons = MultiGauge.builder("coupon.hot.remaining")
+                .description("Остаток квоты самых используемых купонов")
+                .register(registry);
+    }
+
+    /**
+     * Записать длительность этапа
+     *
+     * @param stage этап
+     * @param nanos длительность, нс
+     */
+    public void recordStage(Stage stage, long nanos) {
+        stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Учесть отказ
+     */
+    public void rejected(RejectionReason reason) {
+        rejections.get(reason).increment();
+    }
+
+    /**
+     * Учесть успешное применение
+     *
+     * @param code         код купона (только для выбора горячих купонов, в теги не попадает)
+     * @param discountType тип скидки
+     */
+    public void applied(String code, DiscountType discountType) {
+        applications.get(discountType).increment();
+        Map<String, LongAdder> current = window;
+        LongAdder counter = current.get(code);
+        if (counter == null) {
+            if (current.size() >= maxTrackedCodes) {
+                return;
+            }
+            counter = current.computeIfAbsent(code, key -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Самые используемые купоны последнего окна: строки gauge coupon.hot.remaining
+     *
+     * @return купоны по местам, начиная с 1
+     */
+    public List<HotCouponStats> hotCoupons() {
+        return hotCouponStats;
+    }
+
+    /**
+     * Обновить gauge остатка квоты для top-N купонов за последнее окно
+     *
+     * Остаток берется у {@link RedemptionEngine}: в режиме memory он
+     * учитывает еще не сброшенные в БД использования.
+     */
+    @Scheduled(fixedDelayString = "${coupon.metrics.hot-coupons-refresh-ms:15000}")
+    public void refreshHotCoupons() {
+        Map<String, LongAdder> finished = window;
+        window = new ConcurrentHashMap<>();
+
+        List<Map.Entry<String, Long>> top = finished.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().sum()))
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(hotCouponCount)
+                .toList();
+
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        List<HotCouponStats> stats = new ArrayList<>();
+        for (int rank = 0; rank < top.size(); rank++) {
+            String code = top.get(rank).getKey();
+            int remaining = redemptionEngine.remaining(code);
+            rows.add(MultiGauge.Row.of(Tags.of("rank", String.valueOf(rank + 1)), remaining));
+            stats.add(HotCouponStats.builder()
+                    .rank(rank + 1)
+                    .code(code)
+                    .applications(top.get(rank).getValue())
+                    .remaining(remaining)
+                    .build());
+        }
+        // overwrite=true удаляет места, не занятые в этом окне
+        hotCoupons.register(rows, true);
+        hotCouponStats = List.copyOf(stats);
+    }
+}
@@ -1,25 +1,48 @@
 package com.ecommerce.coupon.service;
 
+import com.ecommerce.coupon.dto.BatchApplyRequest;
+import com.ecommerce.coupon.dto.BatchApplyResponse;
 import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.dto.CouponFilter;
 import com.ecommerce.coupon.dto.CouponResponse;
+import com.ecommerce.coupon.dto.EvaluateRequest;
+import com.ecommerce.coupon.dto.EvaluateResponse;
+import com.ecommerce.coupon.dto.ReservationResponse;
 import com.ecommerce.coupon.dto.ValidationResponse;
-import com.ecommerce.coupon.exception.CouponExpiredException;
 import com.ecommerce.coupon.exception.CouponNotFoundException;
 import com.ecommerce.coupon.exception.InvalidCouponException;
+import com.ecommerce.coupon.exception.ReservationNotFoundException;
+import com.ecommerce.coupon.model.CartLine;
+import com.ecommerce.coupon.model.CompiledPromotion;
 import com.ecommerce.coupon.model.Coupon;
+import com.ecommerce.coupon.model.CouponDefinition;
 import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.model.PromotionRules;
+import com.ecommerce.coupon.model.PromotionRulesConverter;
 import com.ecommerce.coupon.repository.CouponRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Сервис для работы с купонами
@@ -30,9 +53,19 @@ import java.util.stream.Collectors;
 public class CouponService {
 
     private final CouponRepository couponRepository;
-    private static final String CODE_PREFIX = "SALE";
-    private static final int CODE_LENGTH = 6;
-    private static final Random random = new Random();
+    private final RedemptionEngine redemptionEngine;
+    private final CouponDefinitionCache definitionCache;
+    private final CouponCodeGenerator codeGenerator;
+    private final DiscountCalculator discountCalculator;
+    private final CouponMetrics couponMetrics;
+    private final ReservationRegistry reservationRegistry;
+    private final RedemptionLedger redemptionLedger;
+    private final UsageCountReader usageCountReader;
+    private final CouponThresholdIndex thresholdIndex;
+    private final CustomerUsageTracker customerUsage;
+
+    @Value("${coupon.evaluate.default-limit:10}")
+    private int defaultEvaluateLimit;
 
     /**
      * Генерация уникального кода купона
@@ -40,15 +73,13 @@ public class CouponService {
      * @return уникальный код
      */
     private String generateCode() {
+        // Стратегия без коллизий не требует проверки в БД
+        if (codeGenerator.isCollisionFree()) {
+            return codeGenerator.nextCode();
+        }
         String code;
         do {
-            // Генерируем код формата: SALE + 6 случайных символов (A-Z, 0-9)
-            StringBuilder codeBuilder = new StringBuilder(CODE_PREFIX);
-            String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-            for (int i = 0; i < CODE_LENGTH; i++) {
-                codeBuilder.append(chars.charAt(random.nextInt(chars.length())));
-            }
-            code = codeBuilder.toString();
+            code = codeGenerator.nextCode();
         } while (couponRepository.existsByCode(code));
 
         return code;
@@ -63,6 +94,7 @@ public class CouponService {
     @Transactional
     public CouponResponse createCoupon(CouponCreateRequest request) {
         log.info("Создание нового купона с типом скидки: {}", request.getDiscountType());
+        validateRules(request);
 
         Coupon coupon = Coupon.builder()
                 .code(generateCode())
@@ -71,27 +103,88 @@ public class CouponService {
                 .minOrderAmount(request.getMinOrderAmount())
                 .expiryDate(request.getExpiryDate())
                 .usageLimit(request.getUsageLimit())
+                .perCustomerLimit(request.getPerCustomerLimit())
                 .usageCount(0)
                 .active(true)
+                .publicOffer(Boolean.TRUE.equals(request.getPublicOffer()))
+                .rules(request.getRules())
                 .build();
 
         Coupon savedCoupon = couponRepository.save(coupon);
+        definitionCache.invalidate(savedCoupon.getCode());
+        thresholdIndex.add(CouponDefinition.fromEntity(savedCoupon));
         log.info("Купон успешно создан с кодом: {}", savedCoupon.getCode());
 
         return CouponResponse.fromEntity(savedCoupon);
     }
 
     /**
-     * Получить все купоны
+     * Проверить правила промо-акции: заданы только для RULES, компилируются
+     * и помещаются в колонку rules
+     *
+     * @param request данные для создания купона
+     */
+    static void validateRules(CouponCreateRequest request) {
+        PromotionRules rules = request.getRules();
+        if (request.getDiscountType() != DiscountType.RULES) {
+            if (rules != null) {
+                throw new InvalidCouponException("Правила rules задаются только для купонов типа RULES");
+            }
+            return;
+        }
+        if (rules == null) {
+            throw new InvalidCouponException("Для купона типа RULES нужны правила rules");
+        }
+        try {
+            CompiledPromotion.of(rules);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidCouponException(ex.getMessage());
+        }
+        if (PromotionRulesConverter.toJson(rules).length() > Coupon.RULES_MAX_LENGTH) {
+            throw new InvalidCouponException("Правила rules длиннее " + Coupon.RULES_MAX_LENGTH + " символов");
+        }
+    }
+
+    /**
+     * Получить страницу купонов (keyset-пагинация по id)
      *
-     * @return список всех купонов
+     * @param filter  фильтры списка
+     * @param afterId id последнего купона предыдущей страницы (null для первой)
+     * @param limit   размер страницы
+     * @return купоны в порядке возрастания id
      */
     @Transactional(readOnly = true)
-    public List<CouponResponse> getAllCoupons() {
-        log.info("Получение списка всех купонов");
-        return couponRepository.findAll().stream()
-                .map(CouponResponse::fromEntity)
-                .collect(Collectors.toList());
+    public List<CouponResponse> getCouponsPage(CouponFilter filter, Long afterId, int limit) {
+        log.info("Получение страницы купонов после id {} (не больше {})", afterId, limit);
+        return couponRepository.findPage(afterId == null ? 0 : afterId,
+                filter.getActive(), filter.getDiscountType(), filter.getExpiringBefore(),
+                PageRequest.of(0, limit));
+    }
+
+    /**
+     * Потоковая выгрузка купонов
+     *
+     * Строки читаются курсором и сразу передаются получателю, поэтому
+     * расход памяти не зависит от размера таблицы.
+     *
+     * @param filter   фильтры списка
+     * @param consumer получатель очередного купона
+     * @return количество выгруженных купонов
+     */
+    @Transactional(readOnly = true)
+    public long exportCoupons(CouponFilter filter, Consumer<CouponResponse> consumer) {
+        log.info("Потоковая выгрузка купонов");
+        long exported = 0;
+        try (Stream<CouponResponse> coupons = couponRepository.streamForExport(
+                filter.getActive(), filter.getDiscountType(), filter.getExpiringBefore())) {
+            Iterator<CouponResponse> iterator = coupons.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                exported++;
+            }
+        }
+        log.info("Выгружено купонов: {}", exported);
+        return exported;
     }
 
     /**
@@ -102,109 +195,518 @@ public class CouponService {
      */
     @Transactional(readOnly = true)
     public CouponResponse getCouponByCode(String code) {
-        log.info("Поиск купона по коду: {}", code);
-        Coupon coupon = couponRepository.findByCode(code)
+        log.debug("Поиск купона по коду: {}", code);
+        CouponDefinition definition = definitionCache.find(code)
                 .orElseThrow(() -> new CouponNotFoundException("Купон с кодом '" + code + "' не найден"));
-        return CouponResponse.fromEntity(coupon);
+        // Счетчик использований меняется постоянно, поэтому читается из БД, а не из кэша
+        Integer usageCount = usageCountReader.read(code)
+                .orElseThrow(() -> {
+                    definitionCache.invalidate(code);
+                    return new CouponNotFoundException("Купон с кодом '" + code + "' не найден");
+                });
+        return CouponResponse.fromDefinition(definition, usageCount);
+    }
+
+    /**
+     * Подобрать купоны с наибольшей скидкой для суммы заказа
+     *
+     * Только чтение: использование не засчитывается. Публичные купоны берутся
+     * из {@link CouponThresholdIndex} без обращения к БД, переданные коды - из
+     * кэша условий с проверкой остатка квоты.
+     *
+     * @param request сумма заказа, коды-кандидаты и количество результатов
+     * @return применимые купоны по убыванию скидки
+     */
+    public EvaluateResponse evaluate(EvaluateRequest request) {
+        int limit = request.getLimit() == null ? defaultEvaluateLimit : request.getLimit();
+        List<EvaluateResponse.Candidate> candidates = thresholdIndex
+                .evaluate(request.getOrderAmount(), request.getLines(), request.getCodes(), limit).stream()
+                .map(evaluation -> EvaluateResponse.Candidate.builder()
+                        .code(evaluation.coupon().getCode())
+                        .discountType(evaluation.coupon().getDiscountType())
+                        .discountValue(evaluation.coupon().getDiscountValue())
+                        .minOrderAmount(evaluation.coupon().getMinOrderAmount())
+                        .expiryDate(evaluation.coupon().getExpiryDate())
+                        .discount(evaluation.price().discount())
+                        .finalPrice(evaluation.price().finalPrice())
+                        .build())
+                .collect(Collectors.toList());
+        return EvaluateResponse.builder()
+                .orderAmount(request.getOrderAmount())
+                .coupons(candidates)
+                .build();
     }
 
     /**
      * Валидация и применение купона
      *
+     * При отказе выбрасывает исключение сервиса, как и раньше.
+     *
      * @param code        код купона
      * @param orderAmount сумма заказа
      * @return результат валидации с расчетом скидки
      */
     @Transactional
     public ValidationResponse validateAndApply(String code, BigDecimal orderAmount) {
-        log.info("Валидация купона: {} для заказа на сумму: {}", code, orderAmount);
-
-        // Найти купон
-        Coupon coupon = couponRepository.findByCode(code)
-                .orElseThrow(() -> new CouponNotFoundException("Купон с кодом '" + code + "' не найден"));
+        return tryApply(code, orderAmount).orElseThrow();
+    }
 
-        // Проверка: купон активен
-        if (!coupon.getActive()) {
-            log.warn("Купон {} неактивен", code);
-            throw new InvalidCouponException("Купон неактивен");
-        }
+    /**
+     * Валидация и применение купона без исключений
+     *
+     * Отказ возвращается как {@link ApplyResult} с причиной, который
+     * контроллер напрямую превращает в HTTP ответ. Логирование на этом пути
+     * только на уровне DEBUG: отказы учитываются метриками.
+     *
+     * @param code        код купона
+     * @param orderAmount сумма заказа
+     * @return результат применения или причина отказа
+     */
+    @Transactional
+    public ApplyResult tryApply(String code, BigDecimal orderAmount) {
+        return tryApply(code, orderAmount, List.of(), null);
+    }
 
-        // Проверка: срок действия
-        if (LocalDateTime.now().isAfter(coupon.getExpiryDate())) {
-            log.warn("Купон {} истек", code);
-            throw new CouponExpiredException("Срок действия купона истек");
-        }
+    /**
+     * Валидация и применение купона без исключений с учетом строк корзины
+     * и покупателя
+     *
+     * Для купона с лимитом на покупателя использование засчитывается вместе
+     * с общим лимитом, см. {@link #redeem(CouponDefinition, Long)}.
+     *
+     * @param code        код купона
+     * @param orderAmount сумма заказа
+     * @param lines       строки корзины для условий купонов RULES
+     * @param customerId  идентификатор покупателя (обязателен для купонов с лимитом на покупателя)
+     * @return результат применения или причина отказа
+     */
+    @Transactional
+    public ApplyResult tryApply(String code, BigDecimal orderAmount, List<CartLine> lines, Long customerId) {
+        log.debug("Валидация купона: {} для заказа на сумму: {}", code, orderAmount);
 
-        // Проверка: лимит использований
-        if (coupon.getUsageCount() >= coupon.getUsageLimit()) {
-            log.warn("Купон {} превысил лимит использований", code);
-            throw new InvalidCouponException("Купон превысил лимит использований");
-        }
+        // Найти купон (условия берутся из кэша)
+        long startedAt = System.nanoTime();
+        Optional<CouponDefinition> definition = definitionCache.find(code);
+        long lookedUpAt = System.nanoTime();
+        couponMetrics.recordStage(CouponMetrics.Stage.LOOKUP, lookedUpAt - startedAt);
 
-        // Проверка: минимальная сумма заказа
-        if (orderAmount.compareTo(coupon.getMinOrderAmount()) < 0) {
-            log.warn("Сумма заказа {} меньше минимальной {}", orderAmount, coupon.getMinOrderAmount());
-            throw new InvalidCouponException(
-                    String.format("Минимальная сумма заказа для этого купона: %.2f₽", coupon.getMinOrderAmount())
-            );
+        // Проверить условия применения
+        ApplyResult rejection = checkApplicable(code, definition, orderAmount);
+        long checkedAt = System.nanoTime();
+        couponMetrics.recordStage(CouponMetrics.Stage.CHECKS, checkedAt - lookedUpAt);
+        if (rejection != null) {
+            couponMetrics.rejected(rejection.getReason());
+            return rejection;
         }
+        CouponDefinition coupon = definition.get();
 
         // Расчет скидки
-        BigDecimal discount = calculateDiscount(coupon, orderAmount);
-        BigDecimal finalPrice = orderAmount.subtract(discount).max(BigDecimal.ZERO);
+        DiscountCalculator.Price price = discountCalculator.price(coupon, orderAmount, lines);
+        BigDecimal discount = price.discount();
+        BigDecimal finalPrice = price.finalPrice();
+        long pricedAt = System.nanoTime();
+        couponMetrics.recordStage(CouponMetrics.Stage.DISCOUNT, pricedAt - checkedAt);
+        ApplyResult conditionsRejection = checkConditions(code, coupon, price);
+        if (conditionsRejection != null) {
+            couponMetrics.rejected(conditionsRejection.getReason());
+            return conditionsRejection;
+        }
 
-        // Увеличить счетчик использований
-        coupon.setUsageCount(coupon.getUsageCount() + 1);
-        couponRepository.save(coupon);
+        // Атомарно засчитать использование (в БД или в памяти, см. coupon.redemption.mode)
+        RejectionReason redeemRejection = redeem(coupon, customerId);
+        couponMetrics.recordStage(CouponMetrics.Stage.REDEEM, System.nanoTime() - pricedAt);
+        if (redeemRejection != null) {
+            couponMetrics.rejected(redeemRejection);
+            return ApplyResult.rejected(redeemRejection, code, null);
+        }
+        couponMetrics.applied(code, coupon.getDiscountType());
+        redemptionLedger.record(coupon.getId(), code, coupon.getPerCustomerLimit() == null ? null : customerId,
+                orderAmount, discount, finalPrice);
 
-        log.info("Купон {} успешно применен. Скидка: {}, Итоговая цена: {}", code, discount, finalPrice);
+        log.debug("Купон {} успешно применен. Скидка: {}, Итоговая цена: {}", code, discount, finalPrice);
 
-        return ValidationResponse.builder()
+        return ApplyResult.applied(ValidationResponse.builder()
                 .success(true)
                 .message("Купон успешно применен")
                 .originalPrice(orderAmount)
                 .discount(discount)
                 .finalPrice(finalPrice)
+                .build());
+    }
+
+    /**
+     * Зарезервировать использование купона (первая фаза оформления заказа)
+     *
+     * Проверки и расчет скидки те же, что и при применении. Слот квоты
+     * занят до подтверждения, освобождения или истечения резервирования.
+     *
+     * @param code        код купона
+     * @param orderAmount сумма заказа
+     * @return резервирование с рассчитанной скидкой
+     */
+    @Transactional
+    public ReservationResponse reserve(String code, BigDecimal orderAmount) {
+        return reserve(code, orderAmount, List.of(), null);
+    }
+
+    /**
+     * Зарезервировать использование купона с учетом строк корзины и покупателя
+     *
+     * Использование покупателя засчитывается сразу и возвращается при
+     * освобождении или истечении резервирования.
+     *
+     * @param code        код купона
+     * @param orderAmount сумма заказа
+     * @param lines       строки корзины для условий купонов RULES
+     * @param customerId  идентификатор покупателя (обязателен для купонов с лимитом на покупателя)
+     * @return резервирование с рассчитанной скидкой
+     */
+    @Transactional
+    public ReservationResponse reserve(String code, BigDecimal orderAmount, List<CartLine> lines, Long customerId) {
+        log.debug("Резервирование купона: {} для заказа на сумму: {}", code, orderAmount);
+        Optional<CouponDefinition> definition = definitionCache.find(code);
+        ApplyResult rejection = checkApplicable(code, definition, orderAmount);
+        if (rejection != null) {
+            couponMetrics.rejected(rejection.getReason());
+            rejection.orElseThrow();
+        }
+        CouponDefinition coupon = definition.get();
+
+        DiscountCalculator.Price price = discountCalculator.price(coupon, orderAmount, lines);
+        ApplyResult conditionsRejection = checkConditions(code, coupon, price);
+        if (conditionsRejection != null) {
+            couponMetrics.rejected(conditionsRejection.getReason());
+            conditionsRejection.orElseThrow();
+        }
+        ValidationResponse response = ValidationResponse.builder()
+                .success(true)
+                .message("Купон успешно применен")
+                .originalPrice(orderAmount)
+                .discount(price.discount())
+                .finalPrice(price.finalPrice())
                 .build();
+
+        RejectionReason customerRejection = acquireCustomer(coupon, customerId);
+        if (customerRejection != null) {
+            couponMetrics.rejected(customerRejection);
+            ApplyResult.rejected(customerRejection, code, null).orElseThrow();
+        }
+        Long customer = coupon.getPerCustomerLimit() == null ? null : customerId;
+        Optional<ReservationRegistry.Reservation> reserved = Optional.empty();
+        try {
+            reserved = reservationRegistry.reserve(coupon, response, customer);
+        } finally {
+            // Открытое резервирование само вернет использование покупателя при освобождении или истечении
+            if (reserved.isEmpty() && customer != null) {
+                customerUsage.release(coupon.getId(), customer, 1);
+            }
+        }
+        ReservationRegistry.Reservation reservation = reserved
+                .orElseThrow(() -> {
+                    thresholdIndex.exhausted(code);
+                    couponMetrics.rejected(RejectionReason.USAGE_LIMIT_EXCEEDED);
+                    return new InvalidCouponException("Купон превысил лимит использований");
+                });
+
+        return ReservationResponse.builder()
+                .reservationId(reservation.id())
+                .code(code)
+                .expiresAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(reservation.expiresAtMillis()),
+                        ZoneId.systemDefault()))
+                .originalPrice(response.getOriginalPrice())
+                .discount(response.getDiscount())
+                .finalPrice(response.getFinalPrice())
+                .build();
+    }
+
+    /**
+     * Подтвердить резервирование: использование становится окончательным
+     *
+     * @param reservationId идентификатор резервирования
+     * @return результат применения, рассчитанный при резервировании
+     */
+    public ValidationResponse commitReservation(String reservationId) {
+        ReservationRegistry.Reservation reservation = reservationRegistry.commit(reservationId)
+                .orElseThrow(() -> new ReservationNotFoundException(reservationId));
+        couponMetrics.applied(reservation.code(), reservation.discountType());
+        ValidationResponse response = reservation.response();
+        redemptionLedger.record(reservation.couponId(), reservation.code(), reservation.customerId(),
+                response.getOriginalPrice(), response.getDiscount(), response.getFinalPrice());
+        log.debug("Резервирование {} купона {} подтверждено", reservationId, reservation.code());
+        return response;
     }
 
     /**
-     * Расчет скидки в зависимости от типа купона
+     * Освободить резервирование (заказ не оформлен): слот возвращается в квоту
      *
-     * @param coupon      купон
+     * @param reservationId идентификатор резервирования
+     */
+    public void releaseReservation(String reservationId) {
+        if (!reservationRegistry.release(reservationId)) {
+            throw new ReservationNotFoundException(reservationId);
+        }
+        log.debug("Резервирование {} освобождено", reservationId);
+    }
+
+    /**
+     * Проверить, что купон существует и может быть применен к заказу
+     *
+     * Лимит использований здесь не проверяется: он учитывается атомарно
+     * в {@link RedemptionEngine}.
+     *
+     * @param code        код купона
+     * @param definition  условия купона (пусто, если купон не найден)
      * @param orderAmount сумма заказа
-     * @return размер скидки
+     * @return отказ с причиной или null, если купон можно применить
      */
-    private BigDecimal calculateDiscount(Coupon coupon, BigDecimal orderAmount) {
-        BigDecimal discount;
+    ApplyResult checkApplicable(String code, Optional<CouponDefinition> definition,
+                                BigDecimal orderAmount) {
+        if (definition.isEmpty()) {
+            log.debug("Купон {} не найден", code);
+            return ApplyResult.rejected(RejectionReason.NOT_FOUND, code, null);
+        }
+        CouponDefinition coupon = definition.get();
+
+        // Проверка: купон активен
+        if (!coupon.getActive()) {
+            log.debug("Купон {} неактивен", code);
+            return ApplyResult.rejected(RejectionReason.INACTIVE, code, null);
+        }
 
-        switch (coupon.getDiscountType()) {
-            case PERCENTAGE:
-                // Процентная скидка: (orderAmount * discountValue / 100)
-                discount = orderAmount
-                        .multiply(coupon.getDiscountValue())
-                        .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                log.debug("Процентная скидка {}%: {}", coupon.getDiscountValue(), discount);
-                break;
+        // Проверка: срок действия
+        if (LocalDateTime.now().isAfter(coupon.getExpiryDate())) {
+            log.debug("Купон {} истек", code);
+            return ApplyResult.rejected(RejectionReason.EXPIRED, code, null);
+        }
 
-            case FIXED_AMOUNT:
-                // Фиксированная скидка (не больше суммы заказа)
-                discount = coupon.getDiscountValue().min(orderAmount);
-                log.debug("Фиксированная скидка: {}", discount);
-                break;
+        // Проверка: минимальная сумма заказа
+        if (orderAmount.compareTo(coupon.getMinOrderAmount()) < 0) {
+            log.debug("Сумма заказа {} меньше минимальной {}", orderAmount, coupon.getMinOrderAmount());
+            return ApplyResult.rejected(RejectionReason.BELOW_MIN_ORDER_AMOUNT, code, coupon.getMinOrderAmount());
+        }
 
-            case FREE_SHIPPING:
-                // Бесплатная доставка (можно добавить логику расчета стоимости доставки)
-                discount = BigDecimal.ZERO;
-                log.debug("Бесплатная доставка применена");
-                break;
+        return null;
+    }
 
-            default:
-                discount = BigDecimal.ZERO;
-                log.warn("Неизвестный тип скидки: {}", coupon.getDiscountType());
+    /**
+     * Проверить, что корзина выполняет условия купона RULES
+     *
+     * Проверяется после расчета скидки и до того, как засчитано использование:
+     * купон, ни одно правило которого не выполнено, не расходует квоту.
+     *
+     * @param code   код купона
+     * @param coupon условия купона
+     * @param price  рассчитанная скидка
+     * @return отказ с причиной или null, если купон можно применить
+     */
+    ApplyResult checkConditions(String code, CouponDefinition coupon, DiscountCalculator.Price price) {
+        if (coupon.getDiscountType() == DiscountType.RULES && price.discount().signum() == 0) {
+            log.debug("Корзина не выполняет условия купона {}", code);
+            return ApplyResult.rejected(RejectionReason.CONDITIONS_NOT_MET, code, null);
         }
+        return null;
+    }
 
-        return discount.setScale(2, RoundingMode.HALF_UP);
+    /**
+     * Засчитать одно использование купона и, если у купона есть лимит на
+     * покупателя, - использование покупателя
+     *
+     * Сначала проверяется и засчитывается использование покупателя
+     * ({@link CustomerUsageTracker}), затем общий лимит в {@link RedemptionEngine}. Если
+     * общий лимит исчерпан, использование покупателя сразу возвращается, а если
+     * транзакция применения откатится - после отката. Поэтому ни покупатель,
+     * ни купон в целом не превышают свой лимит.
+     *
+     * @param coupon     условия купона
+     * @param customerId идентификатор покупателя (может быть null)
+     * @return причина отказа или null, если использование засчитано
+     */
+    private RejectionReason redeem(CouponDefinition coupon, Long customerId) {
+        RejectionReason rejection = acquireCustomer(coupon, customerId);
+        if (rejection != null) {
+            return rejection;
+        }
+        boolean limited = coupon.getPerCustomerLimit() != null;
+        boolean redeemed = false;
+        try {
+            redeemed = redemptionEngine.tryRedeem(coupon.getCode());
+        } finally {
+            if (limited && !redeemed) {
+                customerUsage.release(coupon.getId(), customerId, 1);
+            }
+        }
+        if (!redeemed) {
+            log.debug("Купон {} превысил лимит использований", coupon.getCode());
+            thresholdIndex.exhausted(coupon.getCode());
+            return RejectionReason.USAGE_LIMIT_EXCEEDED;
+        }
+        refundOnRollback(coupon.getCode(), 1);
+        if (limited) {
+            customerUsage.releaseOnRollback(coupon.getId(), customerId, 1);
+        }
+        return null;
+    }
+
+    /**
+     * Вернуть засчитанные использования в {@link RedemptionEngine}, если
+     * транзакция применения откатится (например, повтор Idempotency-Key
+     * нарушил первичный ключ idempotency_records). В режимах memory и lease
+     * квота хранится вне транзакции и сама не откатывается.
+     *
+     * @param code    код купона
+     * @param permits количество засчитанных использований
+     */
+    private void refundOnRollback(String code, int permits) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    redemptionEngine.refund(code, permits);
+                }
+            }
+        });
+    }
+
+    /**
+     * Засчитать использование покупателю, если у купона есть лимит на покупателя
+     *
+     * @param coupon     условия купона
+     * @param customerId идентификатор покупателя (может быть null)
+     * @return отказ с причиной или null, если использование засчитано или лимита нет
+     */
+    private RejectionReason acquireCustomer(CouponDefinition coupon, Long customerId) {
+        if (coupon.getPerCustomerLimit() == null) {
+            return null;
+        }
+        if (customerId == null) {
+            return RejectionReason.CUSTOMER_ID_REQUIRED;
+        }
+        if (!customerUsage.tryAcquire(coupon, customerId)) {
+            log.debug("Покупатель {} исчерпал лимит купона {}", customerId, coupon.getCode());
+            return RejectionReason.CUSTOMER_LIMIT_EXCEEDED;
+        }
+        return null;
+    }
+
+    /**
+     * Пакетное применение купонов одной корзины
+     *
+     * Все коды загружаются одним запросом, проверки выполняются в памяти,
+     * а использования засчитываются одной операцией на купон в общей транзакции.
+     * Ошибка по одной позиции не прерывает обработку остальных. Для купонов
+     * с лимитом на покупателя позиции засчитываются покупателю корзины
+     * (не больше его остатка).
+     *
+     * @param items      позиции пакета (код купона, сумма заказа и строки корзины)
+     * @param customerId покупатель корзины (может быть null, если купонов с лимитом на покупателя нет)
+     * @return результаты по каждой позиции в порядке запроса
+     */
+    @Transactional
+    public BatchApplyResponse validateAndApplyBatch(List<BatchApplyRequest.Item> items, Long customerId) {
+        log.debug("Пакетное применение {} купонов", items.size());
+
+        Map<String, Optional<CouponDefinition>> definitions = definitionCache.findAll(
+                items.stream().map(BatchApplyRequest.Item::getCode).collect(Collectors.toSet()));
+
+        BatchApplyResponse.ItemResult[] results = new BatchApplyResponse.ItemResult[items.size()];
+        DiscountCalculator.Price[] prices = new DiscountCalculator.Price[items.size()];
+        Map<String, List<Integer>> accepted = new LinkedHashMap<>();
+
+        for (int i = 0; i < items.size(); i++) {
+            BatchApplyRequest.Item item = items.get(i);
+            Optional<CouponDefinition> definition = definitions.get(item.getCode());
+            ApplyResult rejection = checkApplicable(item.getCode(), definition, item.getOrderAmount());
+            if (rejection == null) {
+                prices[i] = discountCalculator.price(definition.get(), item.getOrderAmount(), item.getLines());
+                rejection = checkConditions(item.getCode(), definition.get(), prices[i]);
+            }
+            if (rejection != null) {
+                couponMetrics.rejected(rejection.getReason());
+                results[i] = rejected(item, rejection.message());
+            } else {
+                accepted.computeIfAbsent(item.getCode(), code -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // Одна атомарная операция на купон, даже если он встречается в пакете несколько раз
+        int applied = 0;
+        for (Map.Entry<String, List<Integer>> entry : accepted.entrySet()) {
+            CouponDefinition coupon = definitions.get(entry.getKey()).orElseThrow();
+            List<Integer> positions = entry.getValue();
+            boolean limited = coupon.getPerCustomerLimit() != null;
+            // Сколько позиций покупатель еще может применить (без лимита на покупателя - все)
+            int allowed = positions.size();
+            RejectionReason customerRejection = null;
+            if (limited) {
+                allowed = customerId == null ? 0 : customerUsage.tryAcquire(coupon, customerId, positions.size());
+                customerRejection = customerId == null
+                        ? RejectionReason.CUSTOMER_ID_REQUIRED
+                        : RejectionReason.CUSTOMER_LIMIT_EXCEEDED;
+            }
+            int granted = 0;
+            try {
+                granted = allowed == 0 ? 0 : redemptionEngine.tryRedeem(entry.getKey(), allowed);
+            } finally {
+                if (limited && granted < allowed) {
+                    customerUsage.release(coupon.getId(), customerId, allowed - granted);
+                }
+            }
+            if (granted > 0) {
+                refundOnRollback(entry.getKey(), granted);
+            }
+            if (limited && granted > 0) {
+                customerUsage.releaseOnRollback(coupon.getId(), customerId, granted);
+            }
+            if (granted < allowed) {
+                thresholdIndex.exhausted(entry.getKey());
+            }
+            for (int j = 0; j < positions.size(); j++) {
+                int position = positions.get(j);
+                BatchApplyRequest.Item item = items.get(position);
+                if (j < granted) {
+                    DiscountCalculator.Price price = prices[position];
+                    results[position] = BatchApplyResponse.ItemResult.builder()
+                            .code(item.getCode())
+                            .success(true)
+                            .message("Купон успешно применен")
+                            .originalPrice(item.getOrderAmount())
+                            .discount(price.discount())
+                            .finalPrice(price.finalPrice())
+                            .build();
+                    couponMetrics.applied(item.getCode(), coupon.getDiscountType());
+                    redemptionLedger.record(coupon.getId(), item.getCode(), limited ? customerId : null,
+                            item.getOrderAmount(), price.discount(), price.finalPrice());
+                    applied++;
+                } else if (j >= allowed) {
+                    ApplyResult customerResult = ApplyResult.rejected(customerRejection, item.getCode(), null);
+                    couponMetrics.rejected(customerRejection);
+                    results[position] = rejected(item, customerResult.message());
+                } else {
+                    couponMetrics.rejected(RejectionReason.USAGE_LIMIT_EXCEEDED);
+                    results[position] = rejected(item, "Купон превысил лимит использований");
+                }
+            }
+        }
+
+        log.debug("Пакетное применение завершено: применено {} из {}", applied, items.size());
+
+        return BatchApplyResponse.builder()
+                .appliedCount(applied)
+                .rejectedCount(items.size() - applied)
+                .results(Arrays.asList(results))
+                .build();
+    }
+
+    private BatchApplyResponse.ItemResult rejected(BatchApplyRequest.Item item, String message) {
+        return BatchApplyResponse.ItemResult.builder()
+                .code(item.getCode())
+                .success(false)
+                .message(message)
+                .originalPrice(item.getOrderAmount())
+                .build();
     }
 
     /**
@@ -218,6 +720,10 @@ public class CouponService {
         Coupon coupon = couponRepository.findByCode(code)
                 .orElseThrow(() -> new CouponNotFoundException("Купон с кодом '" + code + "' не найден"));
         couponRepository.delete(coupon);
+        redemptionEngine.evict(code);
+        definitionCache.invalidate(code);
+        thresholdIndex.remove(code);
+        customerUsage.evict(coupon.getId());
         log.info("Купон {} успешно удален", code);
     }
 }
@@ -0,0 +1,191 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.ArchiveReason;
+import com.ecommerce.coupon.repository.ArchivedCouponRepository;
+import com.ecommerce.coupon.repository.CouponRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая очистка: перенос истекших и исчерпанных купонов в архив
+ *
+ * Работает порциями не больше coupon.sweeper.batch-size купонов, каждая
+ * порция - отдельная короткая транзакция (INSERT ... SELECT в coupons_archive
+ * и DELETE по кодам), поэтому блокировки строк держатся миллисекунды и не
+ * задерживают конкурентные применения. За один запуск обрабатывается не
+ * больше coupon.sweeper.max-batches порций каждого вида.
+ *
+ * Истекшие купоны выбираются по индексу expiry_date. Для исчерпанных
+ * отдельный индекс не заводится (usage_count меняется при каждом применении,
+ * и индекс пришлось бы перестраивать на горячем пути) - таблица
+ * просматривается диапазонами первичного ключа. В режиме lease исчерпанные
+ * купоны не переносятся: usageCount там включает еще не использованные блоки.
+ * Купоны с открытыми резервированиями тоже пропускаются: в режиме database
+ * резервирование занимает usageCount, и купон исчерпан лишь до освобождения.
+ */
+@Component
+@ConditionalOnProperty(name = "coupon.sweeper.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class CouponSweeper {
+
+    private final CouponRepository couponRepository;
+    private final ArchivedCouponRepository archivedCouponRepository;
+    private final RedemptionEngine redemptionEngine;
+    private final ReservationRegistry reservationRegistry;
+    private final CouponDefinitionCache definitionCache;
+    private final CouponThresholdIndex thresholdIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxBatches;
+    private final Duration expiredGrace;
+    private final Map<ArchiveReason, Timer> batchTimers = new EnumMap<>(ArchiveReason.class);
+    private final Map<ArchiveReason, DistributionSummary> batchSizes = new EnumMap<>(ArchiveReason.class);
+    private final Map<ArchiveReason, Counter> archived = new EnumMap<>(ArchiveReason.class);
+
+    /**
+     * Позиция просмотра исчерпанных купонов между запусками
+     */
+    private long exhaustedCursor;
+
+    public CouponSweeper(CouponRepository couponRepository,
+                         ArchivedCouponRepository archivedCouponRepository,
+                         RedemptionEngine redemptionEngine,
+                         ReservationRegistry reservationRegistry,
+                         CouponDefinitionCache definitionCache,
+                         CouponThresholdIndex thresholdIndex,
+                         PlatformTransactionManager transactionManager,
+                         MeterRegistry registry,
+                         @Value("${coupon.sweeper.batch-size:500}") int batchSize,
+                         @Value("${coupon.sweeper.max-batches:20}") int maxBatches,
+                         @Value("${coupon.sweeper.expired-grace:PT1H}") Duration expiredGrace) {
+        this.couponRepository = couponRepository;
+        this.archivedCouponRepository = archivedCouponRepository;
+        this.redemptionEngine = redemptionEngine;
+        this.reservationRegistry = reservationRegistry;
+        this.definitionCache = definitionCache;
+        this.thresholdIndex = thresholdIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+        this.expiredGrace = expiredGrace;
+        for (ArchiveReason reason : ArchiveReason.values()) {
+            String tag = reason.name().toLowerCase();
+            batchTimers.put(reason, Timer.builder("coupon.sweeper.batch.duration")
+                    .description("Длительность транзакции переноса порции в архив")
+                    .tag("reason", tag)
+                    .register(registry));
+            batchSizes.put(reason, DistributionSummary.builder("coupon.sweeper.batch.size")
+                    .description("Размер порции переноса в архив")
+                    .tag("reason", tag)
+                    .register(registry));
+            archived.put(reason, Counter.builder("coupon.sweeper.archived")
+                    .description("Купоны, перенесенные в архив")
+                    .tag("reason", tag)
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Один запуск очистки
+     */
+    @Scheduled(initialDelayString = "${coupon.sweeper.interval-ms:60000}",
+               fixedDelayString = "${coupon.sweeper.interval-ms:60000}")
+    public void sweep() {
+        long startedAt = System.nanoTime();
+        int expired = sweepExpired();
+        int exhausted = sweepExhausted();
+        if (expired + exhausted > 0) {
+            log.info("Очистка купонов: в архив перенесено {} истекших и {} исчерпанных за {} мс",
+                    expired, exhausted, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        }
+    }
+
+    private int sweepExpired() {
+        LocalDateTime expiredBefore = LocalDateTime.now().minus(expiredGrace);
+        int total = 0;
+        for (int batch = 0; batch < maxBatches; batch++) {
+            List<String> codes = couponRepository.findExpiredCodes(expiredBefore, PageRequest.of(0, batchSize));
+            if (codes.isEmpty()) {
+                break;
+            }
+            total += archive(codes, ArchiveReason.EXPIRED);
+            if (codes.size() < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private int sweepExhausted() {
+        if (!redemptionEngine.reportsExactUsage()) {
+            // usageCount включает арендованную квоту - купон может казаться исчерпанным раньше времени
+            return 0;
+        }
+        long maxId = couponRepository.findMaxId().orElse(0L);
+        if (exhaustedCursor >= maxId) {
+            // Таблица просмотрена целиком - следующий проход с начала
+            exhaustedCursor = 0;
+        }
+        int total = 0;
+        for (int batch = 0; batch < maxBatches && exhaustedCursor < maxId; batch++) {
+            long toId = Math.min(exhaustedCursor + batchSize, maxId);
+            List<String> codes = couponRepository.findExhaustedCodes(exhaustedCursor, toId).stream()
+                    .filter(code -> reservationRegistry.openCount(code) == 0)
+                    .toList();
+            if (!codes.isEmpty()) {
+                total += archive(codes, ArchiveReason.EXHAUSTED);
+            }
+            exhaustedCursor = toId;
+        }
+        return total;
+    }
+
+    /**
+     * Перенести порцию купонов в архив в отдельной транзакции
+     *
+     * @param codes  коды купонов
+     * @param reason причина переноса
+     * @return количество удаленных из coupons купонов
+     */
+    private int archive(List<String> codes, ArchiveReason reason) {
+        // В архив копируется usageCount из БД: несброшенные использования
+        // режима memory записываются до копирования, иначе evict их потеряет
+        for (String code : codes) {
+            redemptionEngine.flush(code);
+        }
+        long startedAt = System.nanoTime();
+        Integer removed = transactionTemplate.execute(status -> {
+            archivedCouponRepository.copyFromCoupons(codes, LocalDateTime.now(), reason.name());
+            return couponRepository.deleteByCodes(codes);
+        });
+        batchTimers.get(reason).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        batchSizes.get(reason).record(removed);
+        archived.get(reason).increment(removed);
+
+        // После коммита: состояние купонов больше не должно обслуживаться из памяти
+        for (String code : codes) {
+            redemptionEngine.evict(code);
+            definitionCache.invalidate(code);
+            thresholdIndex.remove(code);
+        }
+        log.debug("Порция из {} купонов ({}) перенесена в архив", removed, reason);
+        return removed;
+    }
+}
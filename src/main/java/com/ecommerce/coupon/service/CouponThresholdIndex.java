@@ -0,0 +1,357 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.CartLine;
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.repository.CouponRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Индекс применимых купонов в памяти для подбора лучшей скидки к заказу
+ *
+ * Купоны сгруппированы по порогу minOrderAmount (ConcurrentSkipListMap), внутри
+ * порога - по типу скидки и по убыванию discountValue, затем по сроку действия.
+ * Для суммы заказа просматриваются только пороги не выше нее, а внутри порога -
+ * только начало списка: скидка по убыванию discountValue не растет, поэтому
+ * просмотр списка прекращается, как только купон не попадает в лучшие.
+ * Для RULES discountValue - верхняя граница скидки: список прекращается, когда
+ * граница не больше худшей из отобранных скидок.
+ *
+ * Индекс содержит только публичные купоны (publicOffer): подбор без списка кодов
+ * доступен анонимно и не должен раскрывать персональные коды, а миллионы
+ * одноразовых кодов массовой генерации не занимают память и не перечитываются
+ * при перестроении. Переданные коды-кандидаты берутся из {@link CouponDefinitionCache}
+ * с проверкой остатка квоты в {@link RedemptionEngine}.
+ *
+ * Индекс обновляется при создании, удалении, переносе в архив и исчерпании
+ * лимита, а раз в coupon.evaluate.rebuild-interval-ms перестраивается из БД
+ * (купоны других экземпляров, возврат резервирований). Изменения, пришедшие
+ * во время перестроения, повторяются на новом индексе перед подменой.
+ */
+@Component
+@Slf4j
+public class CouponThresholdIndex implements MeterBinder {
+
+    /** Лучшие первыми: больше скидка, раньше истекает */
+    private static final Comparator<Evaluation> BEST_FIRST = Comparator
+            .comparing((Evaluation evaluation) -> evaluation.price().discount(), Comparator.reverseOrder())
+            .thenComparing(evaluation -> evaluation.coupon().getExpiryDate())
+            .thenComparing(evaluation -> evaluation.coupon().getCode());
+
+    /** Порядок внутри порога и типа скидки: больше discountValue, раньше истекает */
+    private static final Comparator<CouponDefinition> RANKING = Comparator
+            .comparing(CouponDefinition::getDiscountValue, Comparator.reverseOrder())
+            .thenComparing(CouponDefinition::getExpiryDate)
+            .thenComparing(CouponDefinition::getCode);
+
+    private final CouponRepository couponRepository;
+    private final CouponDefinitionCache definitionCache;
+    private final DiscountCalculator discountCalculator;
+    private final RedemptionEngine redemptionEngine;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile Index index = new Index();
+    /** Изменения во время перестроения (null вне перестроения), защищено swapLock */
+    private volatile Queue<Consumer<Index>> pending;
+
+    public CouponThresholdIndex(CouponRepository couponRepository,
+                                CouponDefinitionCache definitionCache,
+                                DiscountCalculator discountCalculator,
+                                RedemptionEngine redemptionEngine,
+                                PlatformTransactionManager transactionManager) {
+        this.couponRepository = couponRepository;
+        this.definitionCache = definitionCache;
+        this.discountCalculator = discountCalculator;
+        this.redemptionEngine = redemptionEngine;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Купон и скидка, которую он дал бы заказу
+     *
+     * @param coupon условия купона
+     * @param price  скидка и итоговая цена
+     */
+    public record Evaluation(CouponDefinition coupon, DiscountCalculator.Price price) {
+    }
+
+    /**
+     * Подобрать купоны с наибольшей скидкой для суммы заказа (без применения)
+     *
+     * @param orderAmount сумма заказа
+     * @param lines       строки корзины для условий купонов RULES (может быть null)
+     * @param codes       коды-кандидаты (null или пусто - публичные купоны индекса)
+     * @param limit       максимальное количество результатов
+     * @return применимые купоны по убыванию скидки
+     */
+    public List<Evaluation> evaluate(BigDecimal orderAmount, List<CartLine> lines, Collection<String> codes, int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        Index current = index;
+        // Куча худших первыми: в вершине - купон, который вытесняется следующим
+        PriorityQueue<Evaluation> best = new PriorityQueue<>(limit + 1, BEST_FIRST.reversed());
+
+        if (codes != null && !codes.isEmpty()) {
+            for (Optional<CouponDefinition> definition : definitionCache.findAll(new LinkedHashSet<>(codes)).values()) {
+                if (definition.isEmpty()) {
+                    continue;
+                }
+                CouponDefinition coupon = definition.get();
+                if (coupon.getActive() && coupon.getMinOrderAmount().compareTo(orderAmount) <= 0
+                        && now.isBefore(coupon.getExpiryDate())
+                        && redemptionEngine.remaining(coupon.getCode()) > 0) {
+                    offer(best, evaluation(coupon, orderAmount, lines), limit);
+                }
+            }
+        } else {
+            for (Threshold threshold : current.thresholds.headMap(orderAmount, true).values()) {
+                for (Map.Entry<DiscountType, ConcurrentSkipListSet<CouponDefinition>> ranked : threshold.byType.entrySet()) {
+                    boolean bounded = ranked.getKey() == DiscountType.RULES;
+                    for (CouponDefinition coupon : ranked.getValue()) {
+                        if (!now.isBefore(coupon.getExpiryDate())) {
+                            remove(coupon.getCode());
+                            continue;
+                        }
+                        if (bounded && best.size() == limit
+                                && coupon.getDiscountValue().compareTo(best.peek().price().discount()) <= 0) {
+                            // Дальше в списке граница скидки не больше
+                            break;
+                        }
+                        Evaluation evaluation = evaluation(coupon, orderAmount, lines);
+                        if (!bounded && best.size() == limit
+                                && evaluation.price().discount().compareTo(best.peek().price().discount()) <= 0) {
+                            // Дальше в списке скидка не больше
+                            break;
+                        }
+                        offer(best, evaluation, limit);
+                    }
+                }
+            }
+        }
+
+        List<Evaluation> result = new ArrayList<>(best);
+        result.sort(BEST_FIRST);
+        return result;
+    }
+
+    /**
+     * Добавить публичный купон (после коммита текущей транзакции, если она есть)
+     *
+     * @param coupon условия купона (персональные и неактивные пропускаются)
+     */
+    public void add(CouponDefinition coupon) {
+        if (!coupon.getActive() || !Boolean.TRUE.equals(coupon.getPublicOffer())) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(target -> target.add(coupon));
+                }
+            });
+        } else {
+            apply(target -> target.add(coupon));
+        }
+    }
+
+    /**
+     * Удалить купон (удален, перенесен в архив или исчерпан)
+     *
+     * @param code код купона
+     */
+    public void remove(String code) {
+        apply(target -> target.remove(code));
+    }
+
+    /**
+     * Удалить купон после исчерпания лимита
+     *
+     * Если счетчик включает арендованную квоту (режим lease), отказ на этом
+     * узле не означает исчерпания - купон остается до перестроения.
+     *
+     * @param code код купона
+     */
+    public void exhausted(String code) {
+        if (redemptionEngine.reportsExactUsage()) {
+            remove(code);
+        }
+    }
+
+    /**
+     * Текущее количество купонов в индексе (публичных)
+     */
+    public long size() {
+        return index.byCode.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * Перестроить индекс из БД (читаются только публичные купоны)
+     */
+    @Scheduled(initialDelayString = "${coupon.evaluate.rebuild-interval-ms:300000}",
+               fixedDelayString = "${coupon.evaluate.rebuild-interval-ms:300000}")
+    public synchronized void rebuild() {
+        long startedAt = System.nanoTime();
+        Queue<Consumer<Index>> missed = new ConcurrentLinkedQueue<>();
+        swapLock.writeLock().lock();
+        try {
+            pending = missed;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        Index rebuilt = new Index();
+        try {
+            readOnlyTransactionTemplate.executeWithoutResult(status -> {
+                try (Stream<CouponDefinition> coupons = couponRepository.streamPublicOfferDefinitions(
+                        LocalDateTime.now(), redemptionEngine.reportsExactUsage())) {
+                    coupons.forEach(rebuilt::add);
+                }
+            });
+        } catch (RuntimeException ex) {
+            log.warn("Не удалось перестроить индекс купонов, используется прежний: {}", ex.getMessage());
+            swapLock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+            return;
+        }
+
+        swapLock.writeLock().lock();
+        try {
+            missed.forEach(change -> change.accept(rebuilt));
+            index = rebuilt;
+            pending = null;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        log.debug("Индекс купонов перестроен: {} купонов, {} порогов за {} мс", rebuilt.byCode.size(),
+                rebuilt.thresholds.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("coupon.evaluate.index.size", this, CouponThresholdIndex::size)
+                .description("Купоны в индексе подбора лучшей скидки")
+                .register(registry);
+    }
+
+    private void apply(Consumer<Index> change) {
+        swapLock.readLock().lock();
+        try {
+            change.accept(index);
+            Queue<Consumer<Index>> changes = pending;
+            if (changes != null) {
+                changes.add(change);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private Evaluation evaluation(CouponDefinition coupon, BigDecimal orderAmount, List<CartLine> lines) {
+        return new Evaluation(coupon, discountCalculator.price(coupon, orderAmount, lines));
+    }
+
+    private static void offer(PriorityQueue<Evaluation> best, Evaluation evaluation, int limit) {
+        if (best.size() < limit) {
+            best.add(evaluation);
+        } else if (BEST_FIRST.compare(evaluation, best.peek()) < 0) {
+            best.poll();
+            best.add(evaluation);
+        }
+    }
+
+    /**
+     * Снимок индекса: пороги minOrderAmount и те же купоны по коду (для удаления)
+     */
+    private static final class Index {
+
+        final ConcurrentSkipListMap<BigDecimal, Threshold> thresholds = new ConcurrentSkipListMap<>();
+        final ConcurrentHashMap<String, CouponDefinition> byCode = new ConcurrentHashMap<>();
+
+        void add(CouponDefinition coupon) {
+            CouponDefinition previous = byCode.put(coupon.getCode(), coupon);
+            if (previous != null) {
+                unlink(previous);
+            }
+            thresholds.computeIfAbsent(coupon.getMinOrderAmount(), amount -> new Threshold()).add(coupon);
+        }
+
+        void remove(String code) {
+            CouponDefinition coupon = byCode.remove(code);
+            if (coupon != null) {
+                unlink(coupon);
+            }
+        }
+
+        private void unlink(CouponDefinition coupon) {
+            Threshold threshold = thresholds.get(coupon.getMinOrderAmount());
+            if (threshold != null) {
+                threshold.remove(coupon);
+            }
+        }
+    }
+
+    /**
+     * Купоны одного порога minOrderAmount по типам скидки
+     */
+    private static final class Threshold {
+
+        final Map<DiscountType, ConcurrentSkipListSet<CouponDefinition>> byType = new EnumMap<>(DiscountType.class);
+
+        Threshold() {
+            for (DiscountType type : DiscountType.values()) {
+                byType.put(type, new ConcurrentSkipListSet<>(RANKING));
+            }
+        }
+
+        void add(CouponDefinition coupon) {
+            byType.get(coupon.getDiscountType()).add(coupon);
+        }
+
+        void remove(CouponDefinition coupon) {
+            byType.get(coupon.getDiscountType()).remove(coupon);
+        }
+    }
+}
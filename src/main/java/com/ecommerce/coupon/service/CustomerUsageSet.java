@@ -0,0 +1,233 @@
+package com.ecommerce.coupon.service;
+
+/**
+ * Компактный учет использований одного купона по покупателям
+ *
+ * Хэш-таблица с открытой адресацией на примитивных массивах: идентификатор
+ * покупателя в long[] и число его использований в byte[] - 9 байт на слот
+ * без объектов-оберток и узлов. При заполнении не больше 3/4 и емкости,
+ * равной степени двойки, миллион покупателей занимает 12-24 МБ против
+ * ~80 МБ у HashMap&lt;Long, Integer&gt;. Коллизии разрешаются линейным
+ * пробированием, удаление - сдвигом назад, поэтому таблица не копит
+ * "надгробий" от освобожденных резервирований.
+ *
+ * Идентификаторы покупателей положительные: 0 помечает пустой слот.
+ * Все операции синхронизированы на экземпляре - проверка лимита и учет
+ * использования выполняются атомарно для одного купона.
+ */
+public final class CustomerUsageSet {
+
+    private static final long EMPTY = 0L;
+    private static final int MIN_CAPACITY = 16;
+    /** Наибольший лимит на покупателя, который помещается в byte */
+    public static final int MAX_USES = Byte.MAX_VALUE;
+
+    private long[] keys;
+    private byte[] counts;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    /**
+     * @param expectedCustomers ожидаемое количество покупателей
+     */
+    public CustomerUsageSet(int expectedCustomers) {
+        allocate(capacityFor(expectedCustomers));
+    }
+
+    /**
+     * Засчитать использования покупателю, если он не превысит лимит
+     *
+     * @param customerId идентификатор покупателя (больше 0)
+     * @param limit      лимит использований на покупателя
+     * @param uses       сколько использований нужно
+     * @return сколько использований засчитано (от 0 до uses)
+     */
+    public synchronized int tryAcquire(long customerId, int limit, int uses) {
+        checkId(customerId);
+        int slot = find(customerId);
+        int current = slot < 0 ? 0 : counts[slot];
+        int granted = Math.min(uses, Math.min(limit, MAX_USES) - current);
+        if (granted <= 0) {
+            return 0;
+        }
+        if (slot < 0) {
+            insert(customerId, granted);
+        } else {
+            counts[slot] = (byte) (current + granted);
+        }
+        return granted;
+    }
+
+    /**
+     * Засчитать одно использование, если покупатель не превысит лимит
+     *
+     * @param customerId идентификатор покупателя (больше 0)
+     * @param limit      лимит использований на покупателя
+     * @return true если использование засчитано
+     */
+    public boolean tryAcquire(long customerId, int limit) {
+        return tryAcquire(customerId, limit, 1) == 1;
+    }
+
+    /**
+     * Вернуть использования (применение не состоялось); покупатель без
+     * использований удаляется из таблицы
+     *
+     * @param customerId идентификатор покупателя
+     * @param uses       сколько использований вернуть
+     */
+    public synchronized void release(long customerId, int uses) {
+        int slot = find(customerId);
+        if (slot < 0) {
+            return;
+        }
+        int left = counts[slot] - uses;
+        if (left > 0) {
+            counts[slot] = (byte) left;
+        } else {
+            delete(slot);
+        }
+    }
+
+    /**
+     * Добавить использования из журнала (загрузка), без проверки лимита
+     *
+     * @param customerId идентификатор покупателя
+     * @param uses       количество использований
+     */
+    public synchronized void add(long customerId, long uses) {
+        checkId(customerId);
+        int slot = find(customerId);
+        if (slot < 0) {
+            insert(customerId, (int) Math.min(uses, MAX_USES));
+        } else {
+            counts[slot] = (byte) Math.min(counts[slot] + uses, MAX_USES);
+        }
+    }
+
+    /**
+     * Количество использований покупателя
+     *
+     * @param customerId идентификатор покупателя
+     * @return использования (0, если покупатель купон не применял)
+     */
+    public synchronized int uses(long customerId) {
+        int slot = find(customerId);
+        return slot < 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * Количество покупателей с использованиями
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Память, занятая массивами таблицы, в байтах
+     */
+    public synchronized long sizeInBytes() {
+        return (long) keys.length * Long.BYTES + counts.length;
+    }
+
+    private int find(long customerId) {
+        for (int slot = home(customerId); ; slot = (slot + 1) & mask) {
+            long key = keys[slot];
+            if (key == customerId) {
+                return slot;
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private void insert(long customerId, int uses) {
+        if (size >= resizeAt) {
+            resize();
+        }
+        int slot = home(customerId);
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = customerId;
+        counts[slot] = (byte) uses;
+        size++;
+    }
+
+    /**
+     * Удаление сдвигом назад: записи цепочки за удаленной переносятся
+     * в освободившийся слот, если их домашний слот не лежит между ними
+     */
+    private void delete(int slot) {
+        int gap = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            long key = keys[next];
+            if (key == EMPTY) {
+                break;
+            }
+            int home = home(key);
+            boolean stays = gap <= next ? gap < home && home <= next : gap < home || home <= next;
+            if (!stays) {
+                keys[gap] = key;
+                counts[gap] = counts[next];
+                gap = next;
+            }
+        }
+        keys[gap] = EMPTY;
+        counts[gap] = 0;
+        size--;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        byte[] oldCounts = counts;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = home(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new byte[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+    }
+
+    private int home(long customerId) {
+        return (int) mix(customerId) & mask;
+    }
+
+    private static int capacityFor(int expected) {
+        long needed = Math.max(MIN_CAPACITY, (long) Math.ceil(Math.max(expected, 0) / 0.75));
+        return (int) Math.min(1L << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+
+    private static void checkId(long customerId) {
+        if (customerId <= 0) {
+            throw new IllegalArgumentException("Идентификатор покупателя должен быть больше 0: " + customerId);
+        }
+    }
+
+    /**
+     * Перемешивание битов (splitmix64): последовательные идентификаторы
+     * не должны попадать в соседние слоты одной цепочкой
+     */
+    private static long mix(long value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
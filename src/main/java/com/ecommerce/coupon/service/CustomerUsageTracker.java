@@ -0,0 +1,227 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.CustomerUsage;
+import com.ecommerce.coupon.repository.CustomerUsageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.stream.Stream;
+
+/**
+ * Лимиты использований на покупателя (coupon.perCustomerLimit)
+ *
+ * Использования хранятся в customer_usage и засчитываются условным UPDATE
+ * в транзакции применения: счетчик не теряется при сбое и откатывается
+ * вместе с применением. Строка нового покупателя создается с нулем
+ * использований в отдельной транзакции, чтобы конкурентная вставка той же
+ * строки не откатывала применение.
+ *
+ * Для каждого купона с лимитом в памяти хранится {@link CustomerUsageSet}.
+ * Таблица загружается из customer_usage при первом применении купона, и
+ * покупатель, исчерпавший лимит, получает отказ без обращения к БД. Таблицы
+ * купонов, которые не применялись coupon.customer-limit.idle-timeout,
+ * выгружаются и при следующем применении загружаются заново.
+ *
+ * В режиме lease (несколько узлов) таблицы в памяти не ведутся: другой узел
+ * мог засчитать или вернуть использования, поэтому лимит проверяется только
+ * в общей БД.
+ */
+@Component
+@Slf4j
+public class CustomerUsageTracker {
+
+    private final CustomerUsageRepository usageRepository;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final TransactionTemplate newTransactionTemplate;
+    private final Cache<Long, CustomerUsageSet> sets;
+    private final int expectedCustomers;
+    private final boolean shared;
+
+    public CustomerUsageTracker(CustomerUsageRepository usageRepository,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry registry,
+                                @Value("${coupon.redemption.mode:database}") String redemptionMode,
+                                @Value("${coupon.customer-limit.idle-timeout:PT1H}") Duration idleTimeout,
+                                @Value("${coupon.customer-limit.expected-customers:1024}") int expectedCustomers) {
+        this.usageRepository = usageRepository;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.sets = Caffeine.newBuilder()
+                .expireAfterAccess(idleTimeout)
+                .build();
+        this.expectedCustomers = expectedCustomers;
+        this.shared = "lease".equals(redemptionMode);
+        Gauge.builder("coupon.customer_usage.coupons", sets, cache -> cache.estimatedSize())
+                .description("Купоны с загруженным учетом использований по покупателям")
+                .register(registry);
+        Gauge.builder("coupon.customer_usage.customers", this,
+                        tracker -> tracker.sets.asMap().values().stream().mapToLong(CustomerUsageSet::size).sum())
+                .description("Покупатели в загруженных таблицах использований")
+                .register(registry);
+        Gauge.builder("coupon.customer_usage.bytes", this,
+                        tracker -> tracker.sets.asMap().values().stream().mapToLong(CustomerUsageSet::sizeInBytes).sum())
+                .description("Память таблиц использований по покупателям")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Засчитать покупателю использования купона в пределах его лимита
+     *
+     * @param coupon     условия купона с perCustomerLimit
+     * @param customerId идентификатор покупателя
+     * @param uses       сколько использований нужно
+     * @return сколько использований засчитано (от 0 до uses)
+     */
+    public int tryAcquire(CouponDefinition coupon, long customerId, int uses) {
+        int limit = coupon.getPerCustomerLimit();
+        if (shared) {
+            return persist(coupon.getId(), customerId, uses, limit);
+        }
+        CustomerUsageSet set = sets.get(coupon.getId(), this::load);
+        int granted = set.tryAcquire(customerId, limit, uses);
+        if (granted == 0) {
+            return 0;
+        }
+        int persisted = 0;
+        try {
+            persisted = persist(coupon.getId(), customerId, granted, limit);
+        } finally {
+            if (persisted < granted) {
+                set.release(customerId, granted - persisted);
+            }
+        }
+        return persisted;
+    }
+
+    /**
+     * Засчитать покупателю одно использование купона в пределах его лимита
+     *
+     * @param coupon     условия купона с perCustomerLimit
+     * @param customerId идентификатор покупателя
+     * @return true если использование засчитано
+     */
+    public boolean tryAcquire(CouponDefinition coupon, long customerId) {
+        return tryAcquire(coupon, customerId, 1) == 1;
+    }
+
+    /**
+     * Вернуть использования покупателя (применение не состоялось)
+     *
+     * Внутри транзакции применения возврат в БД выполняется в ней же.
+     *
+     * @param couponId   идентификатор купона
+     * @param customerId идентификатор покупателя
+     * @param uses       сколько использований вернуть
+     */
+    public void release(Long couponId, long customerId, int uses) {
+        releaseLocal(couponId, customerId, uses);
+        usageRepository.subtract(couponId, customerId, uses);
+    }
+
+    /**
+     * Вернуть использования покупателя в памяти, если текущая транзакция
+     * применения будет откачена (строка customer_usage откатывается вместе с ней)
+     *
+     * @param couponId   идентификатор купона
+     * @param customerId идентификатор покупателя
+     * @param uses       количество засчитанных использований
+     */
+    public void releaseOnRollback(Long couponId, long customerId, int uses) {
+        if (shared || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    releaseLocal(couponId, customerId, uses);
+                }
+            }
+        });
+    }
+
+    /**
+     * Выгрузить таблицу купона (купон удален или перенесен в архив)
+     *
+     * @param couponId идентификатор купона
+     */
+    public void evict(Long couponId) {
+        sets.invalidate(couponId);
+    }
+
+    /**
+     * Засчитать использования в customer_usage: сначала все, при отказе
+     * (часть лимита израсходована на другом узле) - сколько осталось
+     *
+     * @return сколько использований засчитано
+     */
+    private int persist(Long couponId, long customerId, int uses, int limit) {
+        int persisted = add(couponId, customerId, uses, limit);
+        if (persisted == 0) {
+            // Строки могло не быть, или ее только что создал конкурентный запрос
+            if (!usageRepository.existsById(new CustomerUsage.Key(couponId, customerId))) {
+                createRow(couponId, customerId);
+            }
+            persisted = add(couponId, customerId, uses, limit);
+        }
+        return persisted;
+    }
+
+    private int add(Long couponId, long customerId, int uses, int limit) {
+        for (int n = uses; n > 0; n--) {
+            if (usageRepository.tryAdd(couponId, customerId, n, limit) == 1) {
+                return n;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Создать строку покупателя, если ее нет
+     */
+    private void createRow(Long couponId, long customerId) {
+        try {
+            newTransactionTemplate.executeWithoutResult(
+                    status -> usageRepository.insertIfAbsent(couponId, customerId));
+        } catch (DataIntegrityViolationException ex) {
+            // Строку вставил конкурентный запрос: она уже закоммичена
+            log.debug("Строка учета покупателя {} купона {} создана конкурентно", customerId, couponId);
+        }
+    }
+
+    private void releaseLocal(Long couponId, long customerId, int uses) {
+        CustomerUsageSet set = sets.getIfPresent(couponId);
+        if (set != null) {
+            set.release(customerId, uses);
+        }
+    }
+
+    private CustomerUsageSet load(Long couponId) {
+        long startedAt = System.nanoTime();
+        CustomerUsageSet set = new CustomerUsageSet(expectedCustomers);
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Object[]> usage = usageRepository.streamUsage(couponId)) {
+                usage.forEach(row -> set.add((Long) row[0], ((Number) row[1]).longValue()));
+            }
+        });
+        log.debug("Загружен учет покупателей купона {}: {} покупателей, {} байт за {} мс", couponId,
+                set.size(), set.sizeInBytes(), (System.nanoTime() - startedAt) / 1_000_000);
+        return set;
+    }
+}
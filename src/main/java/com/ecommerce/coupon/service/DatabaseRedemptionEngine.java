@@ -0,0 +1,69 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.repository.CouponRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Режим по умолчанию: каждое использование - атомарный UPDATE в БД
+ *
+ * Резервирование сразу увеличивает usageCount (квота видна всем экземплярам),
+ * подтверждение ничего не меняет, освобождение уменьшает счетчик обратно.
+ */
+@Component
+@ConditionalOnProperty(name = "coupon.redemption.mode", havingValue = "database", matchIfMissing = true)
+@RequiredArgsConstructor
+public class DatabaseRedemptionEngine implements RedemptionEngine {
+
+    private final CouponRepository couponRepository;
+
+    @Override
+    public boolean tryRedeem(String code) {
+        return couponRepository.incrementUsageIfAvailable(code) > 0;
+    }
+
+    @Override
+    public int tryRedeem(String code, int permits) {
+        int requested = permits;
+        while (requested > 0) {
+            if (couponRepository.incrementUsageIfAvailable(code, requested) > 0) {
+                return requested;
+            }
+            // Весь пакет не поместился - уменьшить до фактического остатка и повторить
+            int remaining = couponRepository.findRemainingUsageByCode(code).orElse(0);
+            requested = Math.min(requested, remaining);
+        }
+        return 0;
+    }
+
+    @Override
+    public void refund(String code, int permits) {
+        // UPDATE откатывается вместе с транзакцией применения
+    }
+
+    @Override
+    public boolean tryReserve(String code) {
+        return couponRepository.incrementUsageIfAvailable(code) > 0;
+    }
+
+    @Override
+    public void commitReserved(String code, int permits) {
+        // Использование уже учтено при резервировании
+    }
+
+    @Override
+    public void releaseReserved(String code, int permits) {
+        couponRepository.releaseUsage(code, permits);
+    }
+
+    @Override
+    public int remaining(String code) {
+        return couponRepository.findRemainingUsageByCode(code).orElse(0);
+    }
+
+    @Override
+    public void evict(String code) {
+        // Состояние хранится только в БД
+    }
+}
@@ -0,0 +1,161 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.CartLine;
+import com.ecommerce.coupon.model.CompiledPromotion;
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.model.FixedPointPricing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Расчет скидки по условиям купона
+ *
+ * Основной путь считает в целых копейках ({@link FixedPointPricing}),
+ * расчет на BigDecimal используется, если сумма не представима точно
+ * (больше двух знаков после запятой, переполнение) или задан
+ * coupon.pricing.mode=decimal.
+ *
+ * Купоны {@link DiscountType#RULES} всегда считаются в копейках
+ * скомпилированными правилами ({@link CompiledPromotion}), скидка
+ * ограничена discountValue купона.
+ */
+@Component
+@Slf4j
+public class DiscountCalculator {
+
+    private final boolean fixedPoint;
+
+    public DiscountCalculator() {
+        this(true);
+    }
+
+    @Autowired
+    public DiscountCalculator(@Value("${coupon.pricing.mode:fixed-point}") String pricingMode) {
+        this(!"decimal".equalsIgnoreCase(pricingMode));
+    }
+
+    private DiscountCalculator(boolean fixedPoint) {
+        this.fixedPoint = fixedPoint;
+    }
+
+    /**
+     * Скидка и итоговая цена заказа
+     *
+     * @param discount   размер скидки
+     * @param finalPrice итоговая цена
+     */
+    public record Price(BigDecimal discount, BigDecimal finalPrice) {
+    }
+
+    /**
+     * Рассчитать скидку и итоговую цену
+     *
+     * @param coupon      условия купона
+     * @param orderAmount сумма заказа
+     * @return скидка и итоговая цена
+     */
+    public Price price(CouponDefinition coupon, BigDecimal orderAmount) {
+        return price(coupon, orderAmount, List.of());
+    }
+
+    /**
+     * Рассчитать скидку и итоговую цену с учетом строк корзины
+     *
+     * @param coupon      условия купона
+     * @param orderAmount сумма заказа
+     * @param lines       строки корзины для условий правил (null или пусто - без строк)
+     * @return скидка и итоговая цена
+     */
+    public Price price(CouponDefinition coupon, BigDecimal orderAmount, List<CartLine> lines) {
+        if (coupon.getDiscountType() == DiscountType.RULES) {
+            BigDecimal discount = promotionDiscount(coupon, orderAmount, lines);
+            return new Price(discount, orderAmount.subtract(discount).max(BigDecimal.ZERO));
+        }
+        if (fixedPoint && coupon.getDiscountValueHundredths() != FixedPointPricing.NOT_REPRESENTABLE) {
+            long amountMinor = FixedPointPricing.toMinor(orderAmount);
+            if (amountMinor != FixedPointPricing.NOT_REPRESENTABLE) {
+                long discountMinor = FixedPointPricing.discount(
+                        coupon.getDiscountType(), coupon.getDiscountValueHundredths(), amountMinor);
+                if (discountMinor != FixedPointPricing.NOT_REPRESENTABLE) {
+                    long finalMinor = amountMinor - discountMinor;
+                    // Как и BigDecimal.max(ZERO): отрицательная цена заменяется на ноль без дробной части
+                    return new Price(FixedPointPricing.toDecimal(discountMinor),
+                            finalMinor < 0 ? BigDecimal.ZERO : FixedPointPricing.toDecimal(finalMinor));
+                }
+            }
+        }
+        BigDecimal discount = calculate(coupon, orderAmount);
+        return new Price(discount, orderAmount.subtract(discount).max(BigDecimal.ZERO));
+    }
+
+    /**
+     * Расчет скидки в зависимости от типа купона
+     *
+     * @param coupon      условия купона
+     * @param orderAmount сумма заказа
+     * @return размер скидки
+     */
+    public BigDecimal calculate(CouponDefinition coupon, BigDecimal orderAmount) {
+        BigDecimal discount;
+
+        switch (coupon.getDiscountType()) {
+            case PERCENTAGE:
+                // Процентная скидка: (orderAmount * discountValue / 100)
+                discount = orderAmount
+                        .multiply(coupon.getDiscountValue())
+                        .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+                log.debug("Процентная скидка {}%: {}", coupon.getDiscountValue(), discount);
+                break;
+
+            case FIXED_AMOUNT:
+                // Фиксированная скидка (не больше суммы заказа)
+                discount = coupon.getDiscountValue().min(orderAmount);
+                log.debug("Фиксированная скидка: {}", discount);
+                break;
+
+            case FREE_SHIPPING:
+                // Бесплатная доставка (можно добавить логику расчета стоимости доставки)
+                discount = BigDecimal.ZERO;
+                log.debug("Бесплатная доставка применена");
+                break;
+
+            case RULES:
+                // Правила промо-акции без строк корзины
+                discount = promotionDiscount(coupon, orderAmount, List.of());
+                log.debug("Скидка по правилам промо-акции: {}", discount);
+                break;
+
+            default:
+                discount = BigDecimal.ZERO;
+                log.warn("Неизвестный тип скидки: {}", coupon.getDiscountType());
+        }
+
+        return discount.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Скидка по скомпилированным правилам, не больше discountValue купона
+     */
+    private static BigDecimal promotionDiscount(CouponDefinition coupon, BigDecimal orderAmount, List<CartLine> lines) {
+        CompiledPromotion promotion = coupon.getPromotion();
+        long amountMinor = FixedPointPricing.toMinor(orderAmount);
+        if (amountMinor == FixedPointPricing.NOT_REPRESENTABLE) {
+            amountMinor = FixedPointPricing.toMinor(orderAmount.setScale(2, RoundingMode.HALF_UP));
+        }
+        if (promotion == null || amountMinor == FixedPointPricing.NOT_REPRESENTABLE) {
+            return BigDecimal.ZERO.setScale(2);
+        }
+        long discountMinor = promotion.discount(amountMinor, lines);
+        if (coupon.getDiscountValueHundredths() != FixedPointPricing.NOT_REPRESENTABLE) {
+            discountMinor = Math.min(discountMinor, coupon.getDiscountValueHundredths());
+        }
+        return FixedPointPricing.toDecimal(discountMinor);
+    }
+}
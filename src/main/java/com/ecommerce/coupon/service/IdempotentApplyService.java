@@ -0,0 +1,236 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.ValidationResponse;
+import com.ecommerce.coupon.exception.InvalidCouponException;
+import com.ecommerce.coupon.model.CartLine;
+import com.ecommerce.coupon.model.IdempotencyRecord;
+import com.ecommerce.coupon.repository.IdempotencyRecordRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Идемпотентное применение купона по заголовку Idempotency-Key
+ *
+ * Результаты хранятся в ограниченном по размеру и времени жизни кэше в памяти,
+ * успешные применения дополнительно записываются в idempotency_records в той же
+ * транзакции, что и списание использования. Повтор с тем же ключом получает
+ * исходный результат без обращения к строке купона; конкурентные дубликаты
+ * ждут результат первого запроса, а не выполняют применение параллельно.
+ *
+ * Повтором считается запрос с тем же кодом, суммой, покупателем и строками
+ * корзины (последние два сравниваются по SHA-256); иначе ключ считается
+ * использованным повторно для другого запроса.
+ */
+@Service
+@Slf4j
+public class IdempotentApplyService {
+
+    /**
+     * Максимальная длина ключа (размер колонки idempotency_key)
+     */
+    public static final int MAX_KEY_LENGTH = 64;
+
+    private final CouponService couponService;
+    private final IdempotencyRecordRepository recordRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration retention;
+    private final Cache<String, Entry> entries;
+    private final Counter replayedFromMemory;
+    private final Counter replayedFromDatabase;
+
+    public IdempotentApplyService(CouponService couponService,
+                                  IdempotencyRecordRepository recordRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry registry,
+                                  @Value("${coupon.idempotency.maximum-size:100000}") long maximumSize,
+                                  @Value("${coupon.idempotency.ttl:PT10M}") Duration ttl,
+                                  @Value("${coupon.idempotency.retention:P1D}") Duration retention) {
+        this.couponService = couponService;
+        this.recordRepository = recordRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retention = retention;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.replayedFromMemory = Counter.builder("coupon.idempotency.replayed")
+                .description("Повторные запросы, получившие сохраненный результат")
+                .tag("source", "memory")
+                .register(registry);
+        this.replayedFromDatabase = Counter.builder("coupon.idempotency.replayed")
+                .description("Повторные запросы, получившие сохраненный результат")
+                .tag("source", "database")
+                .register(registry);
+    }
+
+    /**
+     * Применить купон не больше одного раза для ключа
+     *
+     * @param key         значение заголовка Idempotency-Key
+     * @param code        код купона
+     * @param orderAmount сумма заказа
+     * @param lines       строки корзины для условий купонов RULES
+     * @param customerId  идентификатор покупателя (для купонов с лимитом на покупателя)
+     * @return результат первого запроса с этим ключом
+     */
+    public ApplyResult apply(String key, String code, BigDecimal orderAmount, List<CartLine> lines, Long customerId) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidCouponException("Idempotency-Key должен содержать от 1 до " + MAX_KEY_LENGTH + " символов");
+        }
+
+        String fingerprint = fingerprint(customerId, lines);
+        Entry mine = new Entry(code, orderAmount, fingerprint, new CompletableFuture<>());
+        Entry existing = entries.asMap().putIfAbsent(key, mine);
+        if (existing != null) {
+            if (!existing.matches(code, orderAmount, fingerprint)) {
+                return reused(code);
+            }
+            // Повтор или конкурентный дубликат: дождаться результата первого запроса
+            ApplyResult result = await(existing.result());
+            replayedFromMemory.increment();
+            return result;
+        }
+
+        try {
+            ApplyResult result = execute(key, code, orderAmount, lines, customerId, fingerprint);
+            mine.result().complete(result);
+            return result;
+        } catch (RuntimeException ex) {
+            // Следующая попытка с этим ключом выполнится заново
+            entries.asMap().remove(key, mine);
+            mine.result().completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Удалить записи старше срока хранения coupon.idempotency.retention
+     */
+    @Scheduled(fixedDelayString = "${coupon.idempotency.purge-interval-ms:3600000}")
+    public void purgeExpiredRecords() {
+        int deleted = recordRepository.deleteCreatedBefore(LocalDateTime.now().minus(retention));
+        if (deleted > 0) {
+            log.info("Удалено {} устаревших записей идемпотентности", deleted);
+        }
+    }
+
+    private ApplyResult execute(String key, String code, BigDecimal orderAmount, List<CartLine> lines,
+                                Long customerId, String fingerprint) {
+        // Ключ мог быть использован до перезапуска или вытеснен из памяти
+        Optional<ApplyResult> stored = replay(key, code, orderAmount, fingerprint);
+        if (stored.isPresent()) {
+            return stored.get();
+        }
+        try {
+            return transactionTemplate.execute(status -> {
+                ApplyResult result = couponService.tryApply(code, orderAmount, lines, customerId);
+                if (result.isApplied()) {
+                    ValidationResponse response = result.getResponse();
+                    recordRepository.insert(key, code, orderAmount, fingerprint,
+                            response.getDiscount(), response.getFinalPrice(), LocalDateTime.now());
+                }
+                return result;
+            });
+        } catch (DataIntegrityViolationException ex) {
+            // Ключ одновременно обработан другим экземпляром: транзакция откатилась, использование
+            // возвращено в квоту (в режимах memory и lease - после отката, см. CouponService)
+            return replay(key, code, orderAmount, fingerprint).orElseThrow(() -> ex);
+        }
+    }
+
+    private Optional<ApplyResult> replay(String key, String code, BigDecimal orderAmount, String fingerprint) {
+        return recordRepository.findById(key).map(record -> {
+            replayedFromDatabase.increment();
+            boolean sameRequest = record.getCouponCode().equals(code)
+                    && record.getOrderAmount().compareTo(orderAmount) == 0
+                    && (record.getRequestFingerprint() == null || record.getRequestFingerprint().equals(fingerprint));
+            if (!sameRequest) {
+                return reused(code);
+            }
+            return ApplyResult.applied(toResponse(record));
+        });
+    }
+
+    /**
+     * SHA-256 покупателя и строк корзины в порядке запроса; цена строки
+     * сравнивается по значению (1500 и 1500.00 совпадают)
+     */
+    private static String fingerprint(Long customerId, List<CartLine> lines) {
+        StringBuilder canonical = new StringBuilder().append(customerId);
+        if (lines != null) {
+            for (CartLine line : lines) {
+                canonical.append('\u001e')
+                        .append(line.getSku()).append('\u001f')
+                        .append(line.getCategory()).append('\u001f')
+                        .append(line.getQuantity()).append('\u001f');
+                BigDecimal unitPrice = line.getUnitPrice();
+                canonical.append(unitPrice == null ? null : unitPrice.stripTrailingZeros().toPlainString());
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 недоступен", ex);
+        }
+    }
+
+    private static ValidationResponse toResponse(IdempotencyRecord record) {
+        return ValidationResponse.builder()
+                .success(true)
+                .message("Купон успешно применен")
+                .originalPrice(record.getOrderAmount())
+                .discount(record.getDiscount())
+                .finalPrice(record.getFinalPrice())
+                .build();
+    }
+
+    private static ApplyResult reused(String code) {
+        return ApplyResult.rejected(RejectionReason.IDEMPOTENCY_KEY_REUSED, code, null);
+    }
+
+    private static ApplyResult await(CompletableFuture<ApplyResult> result) {
+        try {
+            return result.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Запрос, впервые использовавший ключ, и его результат
+     */
+    private record Entry(String code, BigDecimal orderAmount, String fingerprint,
+                         CompletableFuture<ApplyResult> result) {
+
+        boolean matches(String otherCode, BigDecimal otherAmount, String otherFingerprint) {
+            return code.equals(otherCode) && orderAmount.compareTo(otherAmount) == 0
+                    && Objects.equals(fingerprint, otherFingerprint);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.Coupon;
+import com.ecommerce.coupon.repository.CouponRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Режим для "горячих" купонов: остаток квоты хранится в памяти
+ *
+ * Остаток каждого купона разбит на несколько полос (stripes), чтобы
+ * конкурентные запросы не спорили за одну ячейку. Выдача разрешений
+ * не обращается к БД; накопленные приращения usageCount периодически
+ * сбрасываются в {@link CouponRepository} одним UPDATE на купон.
+ *
+ * Купон загружается из БД при первом обращении (остаток = usageLimit - usageCount),
+ * при остановке приложения все несброшенные приращения записываются в БД.
+ * Режим рассчитан на то, что в базу пишет только этот экземпляр сервиса.
+ *
+ * Резервирование занимает слот в полосах, но в usageCount попадает только
+ * после подтверждения - вместе с остальными приращениями при сбросе.
+ */
+@Component
+@ConditionalOnProperty(name = "coupon.redemption.mode", havingValue = "memory")
+@Slf4j
+public class InMemoryRedemptionEngine implements RedemptionEngine {
+
+    private final CouponRepository couponRepository;
+    private final int stripes;
+    private final Map<String, QuotaCounter> counters = new ConcurrentHashMap<>();
+
+    public InMemoryRedemptionEngine(CouponRepository couponRepository,
+                                    @Value("${coupon.redemption.stripes:8}") int stripes) {
+        this.couponRepository = couponRepository;
+        this.stripes = Math.max(1, stripes);
+    }
+
+    @Override
+    public boolean tryRedeem(String code) {
+        QuotaCounter counter = counters.computeIfAbsent(code, this::load);
+        if (counter == null) {
+            return false;
+        }
+        if (!counter.tryAcquire()) {
+            return false;
+        }
+        counter.pending.increment();
+        return true;
+    }
+
+    @Override
+    public int tryRedeem(String code, int permits) {
+        QuotaCounter counter = counters.computeIfAbsent(code, this::load);
+        if (counter == null) {
+            return 0;
+        }
+        int granted = counter.tryAcquire(permits);
+        counter.pending.add(granted);
+        return granted;
+    }
+
+    @Override
+    public void refund(String code, int permits) {
+        QuotaCounter counter = counters.get(code);
+        if (counter != null) {
+            // Приращение могло уже попасть в БД при сбросе - тогда следующий сброс его вычтет
+            counter.pending.add(-permits);
+            counter.release(permits);
+        }
+    }
+
+    @Override
+    public boolean tryReserve(String code) {
+        QuotaCounter counter = counters.computeIfAbsent(code, this::load);
+        return counter != null && counter.tryAcquire();
+    }
+
+    @Override
+    public void commitReserved(String code, int permits) {
+        QuotaCounter counter = counters.get(code);
+        if (counter != null) {
+            counter.pending.add(permits);
+        }
+    }
+
+    @Override
+    public void releaseReserved(String code, int permits) {
+        QuotaCounter counter = counters.get(code);
+        if (counter != null) {
+            counter.release(permits);
+        }
+    }
+
+    @Override
+    public int remaining(String code) {
+        QuotaCounter counter = counters.get(code);
+        if (counter != null) {
+            return counter.remaining();
+        }
+        // Купон еще не загружен: несброшенных приращений нет, остаток в БД точный
+        return couponRepository.findRemainingUsageByCode(code).orElse(0);
+    }
+
+    @Override
+    public void evict(String code) {
+        counters.remove(code);
+    }
+
+    /**
+     * Сбросить накопленные использования в БД
+     */
+    @Scheduled(fixedDelayString = "${coupon.redemption.flush-interval-ms:500}")
+    public void flush() {
+        counters.forEach(this::flush);
+    }
+
+    @Override
+    public void flush(String code) {
+        QuotaCounter counter = counters.get(code);
+        if (counter != null) {
+            flush(code, counter);
+        }
+    }
+
+    private void flush(String code, QuotaCounter counter) {
+        long delta = counter.pending.sumThenReset();
+        if (delta == 0) {
+            return;
+        }
+        try {
+            couponRepository.addUsage(code, (int) delta);
+        } catch (RuntimeException ex) {
+            // Вернуть приращение, чтобы записать его при следующем сбросе
+            counter.pending.add(delta);
+            log.error("Не удалось сбросить {} использований купона {}", delta, code, ex);
+        }
+    }
+
+    /**
+     * Сверка при остановке: все выданные разрешения должны попасть в БД
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        log.info("Счетчики использований сброшены в БД ({} купонов)", counters.size());
+    }
+
+    private QuotaCounter load(String code) {
+        return couponRepository.findByCode(code)
+                .map(this::toCounter)
+                .orElse(null);
+    }
+
+    private QuotaCounter toCounter(Coupon coupon) {
+        int remaining = Math.max(0, coupon.getUsageLimit() - coupon.getUsageCount());
+        return new QuotaCounter(remaining, stripes);
+    }
+
+    /**
+     * Полосатый счетчик остатка квоты
+     */
+    private static final class QuotaCounter {
+
+        private final AtomicIntegerArray remaining;
+        private final LongAdder pending = new LongAdder();
+
+        QuotaCounter(int total, int stripes) {
+            remaining = new AtomicIntegerArray(stripes);
+            for (int i = 0; i < stripes; i++) {
+                remaining.set(i, total / stripes + (i < total % stripes ? 1 : 0));
+            }
+        }
+
+        int remaining() {
+            int total = 0;
+            for (int i = 0; i < remaining.length(); i++) {
+                total += remaining.get(i);
+            }
+            return total;
+        }
+
+        void release(int permits) {
+            remaining.addAndGet(ThreadLocalRandom.current().nextInt(remaining.length()), permits);
+        }
+
+        boolean tryAcquire() {
+            return tryAcquire(1) == 1;
+        }
+
+        int tryAcquire(int permits) {
+            int length = remaining.length();
+            int start = ThreadLocalRandom.current().nextInt(length);
+            int granted = 0;
+            for (int i = 0; i < length && granted < permits; i++) {
+                int stripe = (start + i) % length;
+                int current;
+                while ((current = remaining.get(stripe)) > 0) {
+                    int take = Math.min(current, permits - granted);
+                    if (remaining.compareAndSet(stripe, current, current - take)) {
+                        granted += take;
+                        break;
+                    }
+                }
+            }
+            return granted;
+        }
+    }
+}
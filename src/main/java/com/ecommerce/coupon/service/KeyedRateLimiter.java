@@ -0,0 +1,73 @@
+package com.ecommerce.coupon.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+
+/**
+ * Набор {@link TokenBucket} по ключу (клиент или код купона)
+ *
+ * Ведра хранятся в кэше, ограниченном по размеру, и удаляются после
+ * периода бездействия, поэтому память не растет от перебора ключей.
+ * Удаленное ведро пересоздается полным - за время бездействия оно
+ * все равно успело бы наполниться.
+ */
+public final class KeyedRateLimiter {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final Cache<String, TokenBucket> buckets;
+
+    /**
+     * @param permitsPerSecond скорость пополнения одного ведра
+     * @param burst            емкость одного ведра
+     * @param maximumKeys      максимальное количество ведер
+     * @param idleTimeout      время бездействия, после которого ведро удаляется
+     */
+    public KeyedRateLimiter(double permitsPerSecond, int burst, long maximumKeys, Duration idleTimeout) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maximumKeys)
+                .expireAfterAccess(idleTimeout)
+                .build();
+    }
+
+    /**
+     * Попытаться пропустить запрос для ключа
+     *
+     * @param key      ключ (клиент или код купона)
+     * @param nowNanos текущее время (System.nanoTime)
+     * @return true если запрос пропущен
+     */
+    public boolean tryAcquire(String key, long nowNanos) {
+        return bucket(key, nowNanos).tryAcquire(nowNanos);
+    }
+
+    /**
+     * Через сколько ключ снова получит токен
+     *
+     * @param key      ключ
+     * @param nowNanos текущее время (System.nanoTime)
+     * @return ожидание в наносекундах
+     */
+    public long nanosUntilNextPermit(String key, long nowNanos) {
+        return bucket(key, nowNanos).nanosUntilNextPermit(nowNanos);
+    }
+
+    /**
+     * Текущее количество ведер
+     */
+    public long size() {
+        return buckets.estimatedSize();
+    }
+
+    private TokenBucket bucket(String key, long nowNanos) {
+        TokenBucket bucket = buckets.getIfPresent(key);
+        if (bucket == null) {
+            bucket = buckets.get(key, k -> new TokenBucket(permitsPerSecond, burst, nowNanos));
+        }
+        return bucket;
+    }
+}
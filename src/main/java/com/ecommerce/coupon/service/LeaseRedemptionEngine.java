@@ -0,0 +1,348 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.repository.CouponRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Режим для нескольких экземпляров сервиса: аренда блоков квоты
+ *
+ * Узел забирает у общей БД блок использований купона одним атомарным
+ * UPDATE (usageCount увеличивается сразу на весь блок, в пределах usageLimit)
+ * и дальше выдает использования из локального остатка без обращений к БД.
+ * Сумма блоков всех узлов не может превысить usageLimit, поэтому лимит
+ * соблюдается точно.
+ *
+ * Неиспользованный остаток возвращается в БД, если купон не применялся на узле
+ * coupon.lease.ttl, и при остановке. Размер следующего блока подстраивается
+ * под скорость применений на узле: блока должно хватать примерно на
+ * coupon.lease.target-duration.
+ *
+ * usageCount в БД включает выданные, но еще не использованные блоки; после
+ * аварийной остановки узла его остаток остается засчитанным (лимит не
+ * превышается, но часть использований теряется).
+ *
+ * Получение и возврат блоков идут через собственный небольшой пул соединений
+ * (coupon.lease.pool-size), а не через пул приложения: блок запрашивается
+ * внутри транзакции применения, и пока один поток держит lock аренды и ждет
+ * соединение, остальные потоки ждут этот lock, удерживая соединения пула
+ * приложения. С общим пулом при потоках больше, чем соединений, такое
+ * ожидание замыкалось бы в deadlock. Отдельные соединения также фиксируют
+ * аренду независимо от транзакции применения: ее откат не возвращает блок,
+ * который уже выдается из памяти.
+ */
+@Component
+@ConditionalOnProperty(name = "coupon.redemption.mode", havingValue = "lease")
+@Slf4j
+public class LeaseRedemptionEngine implements RedemptionEngine {
+
+    private static final String ACQUIRE_SQL =
+            "UPDATE coupons SET usage_count = usage_count + ? WHERE code = ? AND usage_count + ? <= usage_limit";
+    private static final String REMAINING_SQL = "SELECT usage_limit - usage_count FROM coupons WHERE code = ?";
+    private static final String RELEASE_SQL =
+            "UPDATE coupons SET usage_count = usage_count - ? WHERE code = ? AND usage_count >= ?";
+
+    private final CouponRepository couponRepository;
+    private final HikariDataSource leaseDataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final int minBlock;
+    private final int maxBlock;
+    private final long ttlNanos;
+    private final double targetSeconds;
+    private final long exhaustedRecheckNanos;
+    private final Counter acquisitions;
+    private final Counter returned;
+
+    public LeaseRedemptionEngine(CouponRepository couponRepository,
+                                 DataSourceProperties dataSourceProperties,
+                                 MeterRegistry registry,
+                                 @Value("${coupon.lease.min-block:10}") int minBlock,
+                                 @Value("${coupon.lease.max-block:10000}") int maxBlock,
+                                 @Value("${coupon.lease.ttl:PT30S}") Duration ttl,
+                                 @Value("${coupon.lease.target-duration:PT2S}") Duration targetDuration,
+                                 @Value("${coupon.lease.exhausted-recheck:PT1S}") Duration exhaustedRecheck,
+                                 @Value("${coupon.lease.pool-size:2}") int poolSize,
+                                 @Value("${coupon.lease.connection-timeout:PT2S}") Duration connectionTimeout) {
+        this.couponRepository = couponRepository;
+        this.leaseDataSource = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        this.leaseDataSource.setPoolName("coupon-lease");
+        this.leaseDataSource.setMaximumPoolSize(Math.max(1, poolSize));
+        this.leaseDataSource.setMinimumIdle(1);
+        this.leaseDataSource.setConnectionTimeout(connectionTimeout.toMillis());
+        // Каждый UPDATE аренды фиксируется сам (autocommit)
+        this.leaseDataSource.setAutoCommit(true);
+        this.jdbcTemplate = new JdbcTemplate(leaseDataSource);
+        this.minBlock = Math.max(1, minBlock);
+        this.maxBlock = Math.max(this.minBlock, maxBlock);
+        this.ttlNanos = ttl.toNanos();
+        this.targetSeconds = targetDuration.toMillis() / 1000.0;
+        this.exhaustedRecheckNanos = exhaustedRecheck.toNanos();
+        this.acquisitions = Counter.builder("coupon.lease.acquired")
+                .description("Блоки квоты, полученные из БД")
+                .register(registry);
+        this.returned = Counter.builder("coupon.lease.returned")
+                .description("Неиспользованные использования, возвращенные в БД")
+                .register(registry);
+        Gauge.builder("coupon.lease.active", leases, Map::size)
+                .description("Купоны с арендой на узле")
+                .register(registry);
+    }
+
+    @Override
+    public boolean tryRedeem(String code) {
+        return tryRedeem(code, 1) == 1;
+    }
+
+    @Override
+    public int tryRedeem(String code, int permits) {
+        Lease lease = leases.computeIfAbsent(code, key -> new Lease(minBlock));
+        int granted = lease.take(permits);
+        while (granted < permits) {
+            if (lease.retired) {
+                // Аренда закрыта по истечении - продолжить с новой
+                lease.used.add(granted);
+                lease = leases.computeIfAbsent(code, key -> new Lease(minBlock));
+                granted += lease.take(permits - granted);
+                continue;
+            }
+            if (!refill(code, lease)) {
+                break;
+            }
+            granted += lease.take(permits - granted);
+        }
+        lease.used.add(granted);
+        return granted;
+    }
+
+    @Override
+    public void refund(String code, int permits) {
+        // Использования взяты из арендованного блока - вернуть их в аренду (или в БД, если она закрыта)
+        releaseReserved(code, permits);
+    }
+
+    @Override
+    public boolean tryReserve(String code) {
+        return tryRedeem(code);
+    }
+
+    @Override
+    public void commitReserved(String code, int permits) {
+        // Использование уже учтено в БД вместе с арендованным блоком
+    }
+
+    @Override
+    public void releaseReserved(String code, int permits) {
+        Lease lease = leases.get(code);
+        if (lease != null) {
+            lease.lock.lock();
+            try {
+                if (!lease.retired) {
+                    lease.remaining.addAndGet(permits);
+                    return;
+                }
+            } finally {
+                lease.lock.unlock();
+            }
+        }
+        returnToStore(code, permits);
+    }
+
+    /**
+     * Квота, еще не арендованная узлами, плюс остаток аренды этого узла
+     * (неиспользованные блоки других узлов сюда не входят)
+     */
+    @Override
+    public int remaining(String code) {
+        Lease lease = leases.get(code);
+        int leased = lease == null || lease.retired ? 0 : Math.max(0, lease.remaining.get());
+        return couponRepository.findRemainingUsageByCode(code).orElse(0) + leased;
+    }
+
+    @Override
+    public void evict(String code) {
+        leases.remove(code);
+    }
+
+    @Override
+    public boolean reportsExactUsage() {
+        return false;
+    }
+
+    /**
+     * Подстроить размер блоков и вернуть остаток аренд, не использовавшихся coupon.lease.ttl
+     */
+    @Scheduled(fixedDelayString = "${coupon.lease.check-interval-ms:1000}")
+    public void maintain() {
+        long now = System.nanoTime();
+        leases.forEach((code, lease) -> {
+            if (lease.adaptBlock(now)) {
+                lease.activeAt = now;
+            } else if (now - lease.activeAt > ttlNanos) {
+                retire(code, lease);
+            }
+        });
+    }
+
+    /**
+     * Вернуть весь неиспользованный остаток при остановке узла
+     */
+    @PreDestroy
+    public void shutdown() {
+        int total = 0;
+        for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+            total += retire(entry.getKey(), entry.getValue());
+        }
+        leaseDataSource.close();
+        log.info("Остаток арендованной квоты возвращен в БД: {} использований", total);
+    }
+
+    /**
+     * Закрыть аренду и вернуть ее остаток в БД
+     *
+     * @return количество возвращенных использований
+     */
+    private int retire(String code, Lease lease) {
+        lease.lock.lock();
+        try {
+            lease.retired = true;
+            leases.remove(code, lease);
+            int unused = lease.remaining.getAndSet(0);
+            if (unused > 0) {
+                returnToStore(code, unused);
+            }
+            return unused;
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    /**
+     * Получить следующий блок из БД (одновременно - только один поток на купон)
+     *
+     * @return true если в аренде появился остаток
+     */
+    private boolean refill(String code, Lease lease) {
+        lease.lock.lock();
+        try {
+            if (lease.retired) {
+                return true;
+            }
+            if (lease.remaining.get() > 0) {
+                // Блок уже получил другой поток
+                return true;
+            }
+            long now = System.nanoTime();
+            if (now < lease.exhaustedUntil) {
+                return false;
+            }
+            int granted = acquireBlock(code, lease.blockSize);
+            if (granted == 0) {
+                // Квота исчерпана; другие узлы могут вернуть остаток - проверить позже
+                lease.exhaustedUntil = now + exhaustedRecheckNanos;
+                return false;
+            }
+            lease.remaining.addAndGet(granted);
+            lease.activeAt = now;
+            acquisitions.increment();
+            return true;
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    /**
+     * Атомарно забрать блок (или остаток, если блок не помещается в лимит)
+     */
+    private int acquireBlock(String code, int block) {
+        int requested = block;
+        while (requested > 0) {
+            if (jdbcTemplate.update(ACQUIRE_SQL, requested, code, requested) > 0) {
+                return requested;
+            }
+            requested = Math.min(requested, jdbcTemplate.queryForList(REMAINING_SQL, Integer.class, code).stream()
+                    .findFirst()
+                    .orElse(0));
+        }
+        return 0;
+    }
+
+    private void returnToStore(String code, int unused) {
+        try {
+            jdbcTemplate.update(RELEASE_SQL, unused, code, unused);
+            returned.increment(unused);
+        } catch (RuntimeException ex) {
+            log.error("Не удалось вернуть {} использований купона {}", unused, code, ex);
+        }
+    }
+
+    /**
+     * Аренда квоты одного купона на узле
+     */
+    private final class Lease {
+
+        private final AtomicInteger remaining = new AtomicInteger();
+        private final LongAdder used = new LongAdder();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile int blockSize;
+        private volatile boolean retired;
+        private volatile long activeAt = System.nanoTime();
+        private volatile long exhaustedUntil;
+        private long measuredAt = System.nanoTime();
+
+        Lease(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        /**
+         * Взять из локального остатка до permits использований
+         */
+        int take(int permits) {
+            while (true) {
+                int current = remaining.get();
+                if (current <= 0) {
+                    return 0;
+                }
+                int taken = Math.min(current, permits);
+                if (remaining.compareAndSet(current, current - taken)) {
+                    return taken;
+                }
+            }
+        }
+
+        /**
+         * Размер блока = скорость применений за последний интервал * целевая длительность аренды
+         *
+         * @return true если за интервал были применения
+         */
+        boolean adaptBlock(long now) {
+            double seconds = (now - measuredAt) / 1e9;
+            measuredAt = now;
+            long count = used.sumThenReset();
+            if (seconds > 0) {
+                double rate = count / seconds;
+                blockSize = (int) Math.max(minBlock, Math.min(maxBlock, Math.ceil(rate * targetSeconds)));
+            }
+            return count > 0;
+        }
+    }
+}
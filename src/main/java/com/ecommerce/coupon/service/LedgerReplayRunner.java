@@ -0,0 +1,33 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.repository.RedemptionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Восстановление usageCount по журналу использований при запуске
+ *
+ * Включается после сбоя (coupon.ledger.replay-on-startup=true), например
+ * в режиме memory, когда несброшенные приращения счетчиков потеряны, а
+ * журнал уже записан.
+ */
+@Component
+@ConditionalOnProperty(name = "coupon.ledger.replay-on-startup", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class LedgerReplayRunner implements ApplicationRunner {
+
+    private final RedemptionRepository redemptionRepository;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long startedAt = System.currentTimeMillis();
+        int fixed = redemptionRepository.rebuildUsageCounts();
+        log.info("Счетчики использований восстановлены по журналу: исправлено купонов {} за {} мс",
+                fixed, System.currentTimeMillis() - startedAt);
+    }
+}
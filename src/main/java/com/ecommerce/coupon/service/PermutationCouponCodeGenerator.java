@@ -0,0 +1,115 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.repository.CouponRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Коды без коллизий: ключевая перестановка значения счетчика
+ *
+ * Счетчик выдается блоками из последовательности coupon_code_seq
+ * (один запрос к БД на блок), каждое значение переставляется
+ * сетью Фейстеля на пространстве 36^6 = 46656 x 46656. Перестановка
+ * биективна, поэтому разные значения счетчика дают разные коды и
+ * проверка existsByCode не нужна, а ключ делает коды непредсказуемыми.
+ *
+ * Гарантия действует, пока все коды в БД выданы этой стратегией.
+ *
+ * Счетчик защищен ReentrantLock, а не synchronized: поток, ждущий
+ * следующий блок из БД, не закрепляет за собой поток-носитель
+ * при виртуальных потоках (профиль virtual).
+ */
+@Component
+@ConditionalOnProperty(name = "coupon.code.strategy", havingValue = "permutation")
+public class PermutationCouponCodeGenerator implements CouponCodeGenerator {
+
+    /**
+     * Шаг последовательности coupon_code_seq (размер блока)
+     */
+    static final int BLOCK_SIZE = 1000;
+
+    private static final long HALF = 46_656L;
+    private static final int ROUNDS = 6;
+
+    private final CouponRepository couponRepository;
+    private final long[] roundKeys = new long[ROUNDS];
+    private final AtomicLong issued = new AtomicLong();
+    private final ReentrantLock counterLock = new ReentrantLock();
+    private long next;
+    private long blockEnd;
+
+    public PermutationCouponCodeGenerator(CouponRepository couponRepository,
+                                          @Value("${coupon.code.permutation-key}") String key) {
+        this.couponRepository = couponRepository;
+        long seed = 0x9E3779B97F4A7C15L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            seed = mix(seed ^ b);
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            seed = mix(seed + i);
+            roundKeys[i] = seed;
+        }
+    }
+
+    @Override
+    public long nextValue() {
+        return permute(nextCounter());
+    }
+
+    @Override
+    public boolean isCollisionFree() {
+        return true;
+    }
+
+    @Override
+    public long issuedCount() {
+        return issued.get();
+    }
+
+    private long nextCounter() {
+        counterLock.lock();
+        try {
+            if (next == blockEnd) {
+                long blockStart = couponRepository.nextCodeBlock();
+                next = blockStart;
+                blockEnd = blockStart + BLOCK_SIZE;
+            }
+            long counter = next++;
+            issued.set(next);
+            if (counter >= CouponCodeFormat.SPACE) {
+                throw new IllegalStateException("Пространство кодов купонов исчерпано");
+            }
+            return counter;
+        } finally {
+            counterLock.unlock();
+        }
+    }
+
+    /**
+     * Сбалансированная сеть Фейстеля по модулю 46656 на каждой половине
+     */
+    long permute(long value) {
+        long left = value / HALF;
+        long right = value % HALF;
+        for (long roundKey : roundKeys) {
+            long mixed = (left + Math.floorMod(mix(right ^ roundKey), HALF)) % HALF;
+            left = right;
+            right = mixed;
+        }
+        return left * HALF + right;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
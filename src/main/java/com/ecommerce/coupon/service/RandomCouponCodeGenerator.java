@@ -0,0 +1,41 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.repository.CouponRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Случайные коды: у каждого потока свой генератор (ThreadLocalRandom),
+ * общий java.util.Random между запросами не разделяется
+ *
+ * Повторы возможны, поэтому вызывающий код проверяет уникальность.
+ */
+@Component
+@ConditionalOnProperty(name = "coupon.code.strategy", havingValue = "random", matchIfMissing = true)
+public class RandomCouponCodeGenerator implements CouponCodeGenerator {
+
+    private final AtomicLong issued;
+
+    public RandomCouponCodeGenerator(CouponRepository couponRepository) {
+        this.issued = new AtomicLong(couponRepository.count());
+    }
+
+    @Override
+    public long nextValue() {
+        issued.incrementAndGet();
+        return ThreadLocalRandom.current().nextLong(CouponCodeFormat.SPACE);
+    }
+
+    @Override
+    public boolean isCollisionFree() {
+        return false;
+    }
+
+    @Override
+    public long issuedCount() {
+        return issued.get();
+    }
+}
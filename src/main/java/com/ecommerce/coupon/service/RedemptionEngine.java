@@ -0,0 +1,97 @@
+package com.ecommerce.coupon.service;
+
+/**
+ * Движок учета использований купонов
+ *
+ * Отвечает только за квоту (usageLimit / usageCount), бизнес-проверки
+ * купона выполняет {@link CouponService}.
+ */
+public interface RedemptionEngine {
+
+    /**
+     * Попытаться засчитать одно использование купона
+     *
+     * @param code код купона
+     * @return true если использование засчитано, false если лимит исчерпан
+     */
+    boolean tryRedeem(String code);
+
+    /**
+     * Попытаться засчитать несколько использований купона
+     *
+     * Засчитывается столько использований, сколько помещается в лимит.
+     *
+     * @param code    код купона
+     * @param permits запрошенное количество использований
+     * @return фактически засчитанное количество (от 0 до permits)
+     */
+    int tryRedeem(String code, int permits);
+
+    /**
+     * Вернуть использования, засчитанные {@link #tryRedeem(String, int)},
+     * если транзакция применения откатилась
+     *
+     * @param code    код купона
+     * @param permits количество использований
+     */
+    void refund(String code, int permits);
+
+    /**
+     * Зарезервировать одно использование: слот квоты занят, но использование
+     * еще не окончательно (см. {@link ReservationRegistry})
+     *
+     * @param code код купона
+     * @return true если слот зарезервирован, false если лимит исчерпан
+     */
+    boolean tryReserve(String code);
+
+    /**
+     * Подтвердить ранее зарезервированные использования
+     *
+     * @param code    код купона
+     * @param permits количество использований
+     */
+    void commitReserved(String code, int permits);
+
+    /**
+     * Вернуть ранее зарезервированные использования в квоту
+     *
+     * @param code    код купона
+     * @param permits количество использований
+     */
+    void releaseReserved(String code, int permits);
+
+    /**
+     * Остаток квоты купона, как его видит движок на этом узле
+     *
+     * @param code код купона
+     * @return остаток использований (0, если купон не найден)
+     */
+    int remaining(String code);
+
+    /**
+     * Совпадает ли usageCount в БД с фактическими использованиями (не считая задержки сброса)
+     *
+     * @return false, если usageCount включает квоту, выданную узлам, но еще не использованную
+     */
+    default boolean reportsExactUsage() {
+        return true;
+    }
+
+    /**
+     * Записать в БД использования купона, накопленные в памяти, до операции,
+     * которая читает usageCount напрямую (например, перенос в архив)
+     *
+     * @param code код купона
+     */
+    default void flush(String code) {
+        // usageCount в БД уже актуален
+    }
+
+    /**
+     * Забыть состояние купона (например, после удаления)
+     *
+     * @param code код купона
+     */
+    void evict(String code);
+}
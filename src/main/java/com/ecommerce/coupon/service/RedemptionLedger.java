@@ -0,0 +1,195 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.Redemption;
+import com.ecommerce.coupon.repository.RedemptionHourlyRepository;
+import com.ecommerce.coupon.repository.RedemptionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Журнал использований купонов с пакетной записью
+ *
+ * Применение только кладет запись в ограниченную очередь в памяти (после
+ * коммита транзакции применения), поэтому задержка применения не зависит от
+ * записи журнала. Фоновая задача забирает записи пакетами и в одной
+ * транзакции вставляет их в redemptions и прибавляет к почасовым итогам
+ * redemption_hourly.
+ *
+ * При переполнении очереди запись отбрасывается и учитывается метрикой
+ * coupon.ledger.dropped: применение купона важнее полноты журнала.
+ */
+@Component
+@Slf4j
+public class RedemptionLedger {
+
+    private final RedemptionRepository redemptionRepository;
+    private final RedemptionHourlyRepository hourlyRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Redemption> queue;
+    private final int batchSize;
+    private final Counter written;
+    private final Counter dropped;
+    private final Timer batchTimer;
+
+    public RedemptionLedger(RedemptionRepository redemptionRepository,
+                            RedemptionHourlyRepository hourlyRepository,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry registry,
+                            @Value("${coupon.ledger.queue-capacity:100000}") int queueCapacity,
+                            @Value("${coupon.ledger.batch-size:500}") int batchSize) {
+        this.redemptionRepository = redemptionRepository;
+        this.hourlyRepository = hourlyRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        Gauge.builder("coupon.ledger.queue.size", queue, BlockingQueue::size)
+                .description("Записи журнала, ожидающие записи в БД")
+                .register(registry);
+        this.written = Counter.builder("coupon.ledger.written")
+                .description("Записи журнала, сохраненные в БД")
+                .register(registry);
+        this.dropped = Counter.builder("coupon.ledger.dropped")
+                .description("Записи журнала, отброшенные из-за переполнения очереди")
+                .register(registry);
+        this.batchTimer = Timer.builder("coupon.ledger.batch.duration")
+                .description("Длительность записи пакета журнала")
+                .register(registry);
+    }
+
+    /**
+     * Добавить использование в журнал
+     *
+     * Внутри транзакции запись попадает в очередь только после коммита,
+     * чтобы откаченное применение не оставило следа в журнале.
+     *
+     * @param couponId    идентификатор купона
+     * @param code        код купона
+     * @param orderAmount сумма заказа
+     * @param discount    скидка
+     * @param finalPrice  итоговая цена
+     */
+    public void record(Long couponId, String code, BigDecimal orderAmount, BigDecimal discount, BigDecimal finalPrice) {
+        record(couponId, code, null, orderAmount, discount, finalPrice);
+    }
+
+    /**
+     * Добавить использование покупателя в журнал
+     *
+     * Лимит на покупателя журнал не обеспечивает: счетчики ведет
+     * {@link CustomerUsageTracker} в customer_usage.
+     *
+     * @param couponId    идентификатор купона
+     * @param code        код купона
+     * @param customerId  идентификатор покупателя (null - без учета покупателя)
+     * @param orderAmount сумма заказа
+     * @param discount    скидка
+     * @param finalPrice  итоговая цена
+     */
+    public void record(Long couponId, String code, Long customerId,
+                       BigDecimal orderAmount, BigDecimal discount, BigDecimal finalPrice) {
+        Redemption redemption = Redemption.builder()
+                .couponId(couponId)
+                .couponCode(code)
+                .customerId(customerId)
+                .orderAmount(orderAmount)
+                .discount(discount)
+                .finalPrice(finalPrice)
+                .redeemedAt(LocalDateTime.now())
+                .build();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(redemption);
+                }
+            });
+        } else {
+            enqueue(redemption);
+        }
+    }
+
+    /**
+     * Записать накопленные записи пакетами
+     */
+    @Scheduled(fixedDelayString = "${coupon.ledger.flush-interval-ms:200}")
+    public void flush() {
+        List<Redemption> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            try {
+                batchTimer.record(() -> writeBatch(batch));
+                written.increment(batch.size());
+            } catch (RuntimeException ex) {
+                // Транзакция откачена целиком (и журнал, и итоги) - пакет запишется при следующем запуске
+                log.error("Не удалось записать пакет журнала из {} записей", batch.size(), ex);
+                batch.forEach(redemption -> {
+                    redemption.setId(null);
+                    enqueue(redemption);
+                });
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * При остановке записать все, что осталось в очереди
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void enqueue(Redemption redemption) {
+        if (!queue.offer(redemption)) {
+            dropped.increment();
+        }
+    }
+
+    private void writeBatch(List<Redemption> batch) {
+        Map<HourKey, HourTotals> hourly = new HashMap<>();
+        for (Redemption redemption : batch) {
+            HourKey key = new HourKey(redemption.getCouponCode(),
+                    redemption.getRedeemedAt().truncatedTo(ChronoUnit.HOURS));
+            hourly.computeIfAbsent(key, k -> new HourTotals()).add(redemption.getDiscount());
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            redemptionRepository.saveAll(batch);
+            hourly.forEach((key, totals) ->
+                    hourlyRepository.add(key.code(), key.hourStart(), totals.uses, totals.discount));
+        });
+    }
+
+    private record HourKey(String code, LocalDateTime hourStart) {
+    }
+
+    private static final class HourTotals {
+        private long uses;
+        private BigDecimal discount = BigDecimal.ZERO;
+
+        void add(BigDecimal value) {
+            uses++;
+            discount = discount.add(value);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.RedemptionHourlyStats;
+import com.ecommerce.coupon.dto.RedemptionTotals;
+import com.ecommerce.coupon.repository.RedemptionHourlyRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Статистика использований купонов по почасовым итогам журнала
+ */
+@Service
+@RequiredArgsConstructor
+public class RedemptionStatsService {
+
+    private final RedemptionHourlyRepository hourlyRepository;
+
+    /**
+     * Использования купона по часам
+     *
+     * @param code код купона
+     * @param from начало периода (включая)
+     * @param to   конец периода (не включая)
+     * @return итоги по часам
+     */
+    @Transactional(readOnly = true)
+    public List<RedemptionHourlyStats> getHourly(String code, LocalDateTime from, LocalDateTime to) {
+        return hourlyRepository.findHourly(code, from, to);
+    }
+
+    /**
+     * Купоны с наибольшей суммой скидок
+     *
+     * @param from  начало периода (включая)
+     * @param to    конец периода (не включая)
+     * @param limit количество купонов
+     * @return итоги по купонам
+     */
+    @Transactional(readOnly = true)
+    public List<RedemptionTotals> getTopByDiscount(LocalDateTime from, LocalDateTime to, int limit) {
+        return hourlyRepository.findTopByDiscount(from, to, PageRequest.of(0, limit));
+    }
+}
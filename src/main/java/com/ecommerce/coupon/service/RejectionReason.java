@@ -0,0 +1,52 @@
+package com.ecommerce.coupon.service;
+
+/**
+ * Причина отказа в применении купона
+ */
+public enum RejectionReason {
+
+    /**
+     * Купон с таким кодом не найден
+     */
+    NOT_FOUND,
+
+    /**
+     * Купон неактивен
+     */
+    INACTIVE,
+
+    /**
+     * Срок действия купона истек
+     */
+    EXPIRED,
+
+    /**
+     * Исчерпан лимит использований
+     */
+    USAGE_LIMIT_EXCEEDED,
+
+    /**
+     * Покупатель исчерпал свой лимит использований купона
+     */
+    CUSTOMER_LIMIT_EXCEEDED,
+
+    /**
+     * У купона есть лимит на покупателя, а customerId не передан
+     */
+    CUSTOMER_ID_REQUIRED,
+
+    /**
+     * Сумма заказа меньше минимальной
+     */
+    BELOW_MIN_ORDER_AMOUNT,
+
+    /**
+     * Корзина не выполняет ни одного правила купона RULES
+     */
+    CONDITIONS_NOT_MET,
+
+    /**
+     * Ключ идемпотентности уже использован для другого купона или суммы
+     */
+    IDEMPOTENCY_KEY_REUSED
+}
@@ -0,0 +1,254 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.ValidationResponse;
+import com.ecommerce.coupon.exception.InvalidCouponException;
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.DiscountType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Открытые резервирования купонов (reserve / commit / release)
+ *
+ * Резервирование занимает слот квоты в {@link RedemptionEngine} на время
+ * coupon.reservation.ttl. Брошенные резервирования истекают через
+ * {@link TimingWheel}: стоимость истечения O(1) на резервирование, без
+ * просмотра БД. Переход из открытого состояния выполняет тот, кто удалил
+ * резервирование из карты, поэтому подтверждение, освобождение и истечение
+ * не могут сработать для одного резервирования дважды.
+ *
+ * Использование покупателя (купоны с лимитом на покупателя) засчитывается
+ * до резервирования и возвращается в {@link CustomerUsageTracker} при
+ * освобождении и истечении. После аварийной остановки оно остается засчитанным.
+ *
+ * Резервирования хранятся в памяти узла. При остановке открытые
+ * резервирования освобождаются (одна операция на купон); после аварийной
+ * остановки они теряются, и в режиме database их слоты остаются занятыми.
+ * Количество открытых резервирований по коду видно через {@link #openCount(String)}:
+ * фоновая очистка не переносит в архив купоны, исчерпанные только ими.
+ */
+@Component
+@Slf4j
+public class ReservationRegistry {
+
+    private final RedemptionEngine redemptionEngine;
+    private final CustomerUsageTracker customerUsage;
+    private final Map<String, Reservation> open = new ConcurrentHashMap<>();
+    private final Map<String, Integer> openByCode = new ConcurrentHashMap<>();
+    private final TimingWheel<Reservation> wheel;
+    private final long ttlMillis;
+    private final int maxOpen;
+    private final Counter committed;
+    private final Counter released;
+    private final Counter expired;
+
+    public ReservationRegistry(RedemptionEngine redemptionEngine,
+                               CustomerUsageTracker customerUsage,
+                               MeterRegistry registry,
+                               @Value("${coupon.reservation.ttl:PT15M}") Duration ttl,
+                               @Value("${coupon.reservation.tick-ms:100}") long tickMillis,
+                               @Value("${coupon.reservation.wheel-size:1024}") int wheelSize,
+                               @Value("${coupon.reservation.max-open:100000}") int maxOpen) {
+        this.redemptionEngine = redemptionEngine;
+        this.customerUsage = customerUsage;
+        this.wheel = new TimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+        this.ttlMillis = ttl.toMillis();
+        this.maxOpen = maxOpen;
+        Gauge.builder("coupon.reservations.open", open, Map::size)
+                .description("Открытые резервирования купонов")
+                .register(registry);
+        this.committed = outcome(registry, "committed");
+        this.released = outcome(registry, "released");
+        this.expired = outcome(registry, "expired");
+    }
+
+    /**
+     * Зарезервировать одно использование купона
+     *
+     * @param coupon     условия купона
+     * @param response   рассчитанный результат применения
+     * @param customerId покупатель, которому уже засчитано использование (null - без учета покупателя)
+     * @return резервирование или пусто, если лимит исчерпан
+     */
+    public Optional<Reservation> reserve(CouponDefinition coupon, ValidationResponse response, Long customerId) {
+        if (open.size() >= maxOpen) {
+            throw new InvalidCouponException("Слишком много открытых резервирований, повторите позже");
+        }
+        if (!redemptionEngine.tryReserve(coupon.getCode())) {
+            return Optional.empty();
+        }
+        Reservation reservation = new Reservation(UUID.randomUUID().toString(), coupon.getId(), coupon.getCode(),
+                coupon.getDiscountType(), customerId, response, System.currentTimeMillis() + ttlMillis);
+        openByCode.merge(reservation.code(), 1, Integer::sum);
+        open.put(reservation.id(), reservation);
+        wheel.schedule(reservation, reservation.expiresAtMillis());
+        return Optional.of(reservation);
+    }
+
+    /**
+     * Подтвердить резервирование: использование становится окончательным
+     *
+     * @param id идентификатор резервирования
+     * @return подтвержденное резервирование или пусто, если оно не найдено или истекло
+     */
+    public Optional<Reservation> commit(String id) {
+        Reservation reservation = open.remove(id);
+        if (reservation == null) {
+            return Optional.empty();
+        }
+        closed(reservation);
+        if (reservation.expiresAtMillis() <= System.currentTimeMillis()) {
+            // Срок вышел, но колесо еще не дошло до этого тика
+            redemptionEngine.releaseReserved(reservation.code(), 1);
+            releaseCustomer(reservation);
+            expired.increment();
+            return Optional.empty();
+        }
+        redemptionEngine.commitReserved(reservation.code(), 1);
+        committed.increment();
+        return Optional.of(reservation);
+    }
+
+    /**
+     * Освободить резервирование: слот возвращается в квоту
+     *
+     * @param id идентификатор резервирования
+     * @return true если резервирование было открыто
+     */
+    public boolean release(String id) {
+        Reservation reservation = open.remove(id);
+        if (reservation == null) {
+            return false;
+        }
+        closed(reservation);
+        redemptionEngine.releaseReserved(reservation.code(), 1);
+        releaseCustomer(reservation);
+        released.increment();
+        return true;
+    }
+
+    /**
+     * Количество открытых резервирований
+     */
+    public int openCount() {
+        return open.size();
+    }
+
+    /**
+     * Количество открытых резервирований купона
+     *
+     * @param code код купона
+     */
+    public int openCount(String code) {
+        return openByCode.getOrDefault(code, 0);
+    }
+
+    /**
+     * Продвинуть колесо и вернуть слоты истекших резервирований (одна операция на купон)
+     */
+    @Scheduled(fixedDelayString = "${coupon.reservation.tick-ms:100}")
+    public void expireDue() {
+        Map<String, Integer> releases = new HashMap<>();
+        wheel.advance(System.currentTimeMillis(), reservation -> {
+            if (open.remove(reservation.id(), reservation)) {
+                closed(reservation);
+                releases.merge(reservation.code(), 1, Integer::sum);
+                releaseCustomer(reservation);
+            }
+        });
+        if (releases.isEmpty()) {
+            return;
+        }
+        int total = releaseAll(releases);
+        expired.increment(total);
+        log.debug("Истекло резервирований: {}", total);
+    }
+
+    /**
+     * Освободить все открытые резервирования при остановке узла
+     *
+     * Слоты возвращаются в квоту одной операцией на купон до остановки
+     * {@link RedemptionEngine}: реестр зависит от движка, поэтому движок
+     * останавливается позже.
+     */
+    @PreDestroy
+    public void shutdown() {
+        Map<String, Integer> releases = new HashMap<>();
+        for (Reservation reservation : open.values()) {
+            if (open.remove(reservation.id(), reservation)) {
+                closed(reservation);
+                releases.merge(reservation.code(), 1, Integer::sum);
+                releaseCustomer(reservation);
+            }
+        }
+        int total = releaseAll(releases);
+        released.increment(total);
+        log.info("Открытые резервирования освобождены при остановке: {} (купонов: {})", total, releases.size());
+    }
+
+    /**
+     * Вернуть слоты в квоту одной операцией на купон
+     *
+     * @return количество возвращенных слотов
+     */
+    private int releaseAll(Map<String, Integer> releases) {
+        int total = 0;
+        for (Map.Entry<String, Integer> entry : releases.entrySet()) {
+            try {
+                redemptionEngine.releaseReserved(entry.getKey(), entry.getValue());
+                total += entry.getValue();
+            } catch (RuntimeException ex) {
+                log.error("Не удалось вернуть {} слотов купона {}", entry.getValue(), entry.getKey(), ex);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Учесть закрытие резервирования (вызывает тот, кто удалил его из open)
+     */
+    private void closed(Reservation reservation) {
+        openByCode.computeIfPresent(reservation.code(), (code, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void releaseCustomer(Reservation reservation) {
+        if (reservation.customerId() != null) {
+            customerUsage.release(reservation.couponId(), reservation.customerId(), 1);
+        }
+    }
+
+    private static Counter outcome(MeterRegistry registry, String outcome) {
+        return Counter.builder("coupon.reservations.closed")
+                .description("Закрытые резервирования купонов")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Открытое резервирование
+     *
+     * @param id              идентификатор
+     * @param couponId        идентификатор купона
+     * @param code            код купона
+     * @param discountType    тип скидки
+     * @param customerId      покупатель с засчитанным использованием (null - без учета покупателя)
+     * @param response        результат применения, рассчитанный при резервировании
+     * @param expiresAtMillis момент истечения (epoch millis)
+     */
+    public record Reservation(String id, Long couponId, String code, DiscountType discountType,
+                              Long customerId, ValidationResponse response, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,100 @@
+package com.ecommerce.coupon.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Объединение конкурентных загрузок одного ключа (single-flight)
+ *
+ * Первый вызывающий для ключа выполняет загрузку, остальные, пришедшие
+ * пока она идет, ждут ее результат (или исключение) вместо собственного
+ * запроса к БД. Результат не кэшируется: после завершения загрузки
+ * следующий вызов загружает заново.
+ *
+ * Одновременно для одного ключа выполняется не больше maxLoadersPerKey
+ * загрузок: вызывающие распределяются по слотам ключа случайно, и внутри
+ * слота действует single-flight.
+ *
+ * @param <K> тип ключа
+ * @param <V> тип значения
+ */
+public final class SingleFlight<K, V> {
+
+    private final Map<Slot<K>, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final int maxLoadersPerKey;
+    private final Counter loads;
+    private final Counter coalesced;
+
+    /**
+     * @param name             имя загрузки (тег lookup в метриках)
+     * @param maxLoadersPerKey потолок одновременных загрузок одного ключа
+     * @param registry         реестр метрик
+     */
+    public SingleFlight(String name, int maxLoadersPerKey, MeterRegistry registry) {
+        this.maxLoadersPerKey = Math.max(1, maxLoadersPerKey);
+        this.loads = Counter.builder("coupon.lookup.loads")
+                .description("Загрузки, выполненные в БД")
+                .tag("lookup", name)
+                .register(registry);
+        this.coalesced = Counter.builder("coupon.lookup.coalesced")
+                .description("Вызовы, дождавшиеся чужой загрузки того же ключа")
+                .tag("lookup", name)
+                .register(registry);
+        Gauge.builder("coupon.lookup.in_flight", inFlight, Map::size)
+                .description("Загрузки, выполняемые в данный момент")
+                .tag("lookup", name)
+                .register(registry);
+    }
+
+    /**
+     * Загрузить значение, присоединившись к уже идущей загрузке ключа
+     *
+     * @param key    ключ
+     * @param loader загрузка (выполняется в потоке первого вызывающего)
+     * @return результат загрузки
+     */
+    public V execute(K key, Supplier<V> loader) {
+        int slotIndex = maxLoadersPerKey == 1 ? 0 : ThreadLocalRandom.current().nextInt(maxLoadersPerKey);
+        Slot<K> slot = new Slot<>(key, slotIndex);
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(slot, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        loads.increment();
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(slot, mine);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private record Slot<K>(K key, int index) {
+    }
+}
@@ -0,0 +1,81 @@
+package com.ecommerce.coupon.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Хэшированное колесо таймеров
+ *
+ * Время разбито на тики фиксированной длины, элемент кладется в ячейку
+ * {@code deadlineTick % size}, где deadlineTick - первая граница тика не
+ * раньше срока: элемент срабатывает не раньше срока и не позже чем через тик. Добавление - O(1), продвижение на тик
+ * просматривает только одну ячейку; элементы со сроком дальше одного оборота
+ * остаются в ячейке до нужного оборота. Отмена не требуется: владелец
+ * элемента сам игнорирует уже неактуальные элементы при срабатывании.
+ *
+ * Добавлять можно из любых потоков, продвигать - из одного.
+ *
+ * @param <T> тип элемента
+ */
+public final class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final Queue<Timeout<T>>[] buckets;
+    /**
+     * Последний обработанный тик
+     */
+    private volatile long currentTick;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tickMillis, int size, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.buckets = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Запланировать срабатывание
+     *
+     * @param item           элемент
+     * @param deadlineMillis момент срабатывания (epoch millis)
+     */
+    public void schedule(T item, long deadlineMillis) {
+        // Не раньше следующего тика: текущая ячейка может уже обрабатываться
+        long deadlineTick = Math.max(-Math.floorDiv(-deadlineMillis, tickMillis), currentTick + 1);
+        buckets[(int) (deadlineTick % buckets.length)].add(new Timeout<>(item, deadlineTick));
+    }
+
+    /**
+     * Обработать все тики до текущего момента
+     *
+     * @param nowMillis текущее время (epoch millis)
+     * @param expired   получатель сработавших элементов
+     */
+    public void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        // После долгой паузы достаточно одного оборота: каждая ячейка будет просмотрена
+        long tick = Math.max(currentTick + 1, targetTick - buckets.length + 1);
+        for (; tick <= targetTick; tick++) {
+            Queue<Timeout<T>> bucket = buckets[(int) (tick % buckets.length)];
+            for (int pending = bucket.size(); pending > 0; pending--) {
+                Timeout<T> timeout = bucket.poll();
+                if (timeout == null) {
+                    break;
+                }
+                if (timeout.deadlineTick <= targetTick) {
+                    expired.accept(timeout.item);
+                } else {
+                    bucket.add(timeout);
+                }
+            }
+            currentTick = tick;
+        }
+    }
+
+    private record Timeout<T>(T item, long deadlineTick) {
+    }
+}
@@ -0,0 +1,59 @@
+package com.ecommerce.coupon.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Неблокирующее ведро токенов
+ *
+ * Хранит одно число - теоретическое время прихода следующего запроса (GCRA):
+ * каждый разрешенный запрос сдвигает его на интервал 1/rate, запрос
+ * отклоняется, если сдвиг ушел в будущее дальше емкости ведра. Поведение
+ * совпадает с классическим ведром токенов емкостью burst, но проверка -
+ * одно чтение и один CAS без блокировок и без отдельного пополнения.
+ */
+public final class TokenBucket {
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param permitsPerSecond скорость пополнения
+     * @param burst            емкость ведра (сколько запросов проходит подряд)
+     * @param nowNanos         текущее время (System.nanoTime)
+     */
+    public TokenBucket(double permitsPerSecond, int burst, long nowNanos) {
+        this.emissionIntervalNanos = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+        this.burstToleranceNanos = emissionIntervalNanos * (Math.max(1, burst) - 1);
+        this.theoreticalArrival = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Попытаться взять один токен
+     *
+     * @param nowNanos текущее время (System.nanoTime)
+     * @return true если токен выдан
+     */
+    public boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long start = Math.max(arrival, nowNanos);
+            if (start - nowNanos > burstToleranceNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, start + emissionIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Через сколько появится следующий токен
+     *
+     * @param nowNanos текущее время (System.nanoTime)
+     * @return ожидание в наносекундах (0, если токен уже доступен)
+     */
+    public long nanosUntilNextPermit(long nowNanos) {
+        return Math.max(0, theoreticalArrival.get() - burstToleranceNanos - nowNanos);
+    }
+}
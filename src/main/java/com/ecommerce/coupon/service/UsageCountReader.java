@@ -0,0 +1,38 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.repository.CouponRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Чтение текущего usageCount с объединением конкурентных запросов
+ *
+ * Счетчик меняется постоянно и не кэшируется, но одновременные чтения
+ * одного кода получают результат одного запроса к БД.
+ */
+@Component
+public class UsageCountReader {
+
+    private final CouponRepository couponRepository;
+    private final SingleFlight<String, Optional<Integer>> lookups;
+
+    public UsageCountReader(CouponRepository couponRepository,
+                            MeterRegistry registry,
+                            @Value("${coupon.lookup.max-loaders-per-key:1}") int maxLoadersPerKey) {
+        this.couponRepository = couponRepository;
+        this.lookups = new SingleFlight<>("usage_count", maxLoadersPerKey, registry);
+    }
+
+    /**
+     * Текущий счетчик использований купона
+     *
+     * @param code код купона
+     * @return Optional со значением usageCount (пусто, если купон не найден)
+     */
+    public Optional<Integer> read(String code) {
+        return lookups.execute(code, () -> couponRepository.findUsageCountByCode(code));
+    }
+}
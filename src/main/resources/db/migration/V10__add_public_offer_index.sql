@@ -0,0 +1,2 @@
+-- Перестроение индекса подбора (CouponThresholdIndex) читает только публичные купоны
+CREATE INDEX idx_coupons_public_offer ON coupons (public_offer, expiry_date);
@@ -0,0 +1,28 @@
+-- Начальная схема (профиль prod). Должна совпадать с маппингом Coupon:
+-- Hibernate проверяет ее при старте (ddl-auto=validate).
+
+-- Идентификаторы купонов, шаг равен allocationSize в Coupon
+CREATE SEQUENCE IF NOT EXISTS coupon_seq START WITH 1 INCREMENT BY 100;
+
+-- Счетчик для стратегии генерации кодов permutation (см. schema.sql)
+CREATE SEQUENCE IF NOT EXISTS coupon_code_seq START WITH 1 INCREMENT BY 1000;
+
+CREATE TABLE coupons (
+    id               BIGINT         NOT NULL PRIMARY KEY,
+    code             VARCHAR(20)    NOT NULL,
+    discount_type    VARCHAR(32)    NOT NULL,
+    discount_value   NUMERIC(10, 2) NOT NULL,
+    min_order_amount NUMERIC(10, 2) NOT NULL,
+    expiry_date      TIMESTAMP(6)   NOT NULL,
+    usage_limit      INTEGER        NOT NULL,
+    usage_count      INTEGER        NOT NULL DEFAULT 0,
+    active           BOOLEAN        NOT NULL DEFAULT TRUE,
+    created_at       TIMESTAMP(6)   NOT NULL
+);
+
+-- Поиск по коду (get/apply/batch)
+CREATE UNIQUE INDEX idx_code ON coupons (code);
+-- Список купонов с фильтрами active/expiringBefore
+CREATE INDEX idx_coupons_active_expiry ON coupons (active, expiry_date);
+-- Выборка просроченных купонов
+CREATE INDEX idx_coupons_expiry ON coupons (expiry_date);
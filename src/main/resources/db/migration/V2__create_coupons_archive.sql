@@ -0,0 +1,17 @@
+-- Архив истекших и исчерпанных купонов (см. CouponSweeper)
+CREATE TABLE coupons_archive (
+    id               BIGINT         NOT NULL PRIMARY KEY,
+    code             VARCHAR(20)    NOT NULL,
+    discount_type    VARCHAR(32)    NOT NULL,
+    discount_value   NUMERIC(10, 2) NOT NULL,
+    min_order_amount NUMERIC(10, 2) NOT NULL,
+    expiry_date      TIMESTAMP(6)   NOT NULL,
+    usage_limit      INTEGER        NOT NULL,
+    usage_count      INTEGER        NOT NULL,
+    active           BOOLEAN        NOT NULL,
+    created_at       TIMESTAMP(6)   NOT NULL,
+    archived_at      TIMESTAMP(6)   NOT NULL,
+    archive_reason   VARCHAR(16)    NOT NULL
+);
+
+CREATE INDEX idx_coupons_archive_code ON coupons_archive (code);
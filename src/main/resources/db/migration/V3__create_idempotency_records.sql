@@ -0,0 +1,12 @@
+-- Результаты применения купонов с заголовком Idempotency-Key (см. IdempotentApplyService)
+CREATE TABLE idempotency_records (
+    idempotency_key VARCHAR(64)    NOT NULL PRIMARY KEY,
+    coupon_code     VARCHAR(20)    NOT NULL,
+    order_amount    NUMERIC(19, 2) NOT NULL,
+    discount        NUMERIC(19, 2) NOT NULL,
+    final_price     NUMERIC(19, 2) NOT NULL,
+    created_at      TIMESTAMP(6)   NOT NULL
+);
+
+-- Удаление записей старше срока хранения
+CREATE INDEX idx_idempotency_created_at ON idempotency_records (created_at);
@@ -0,0 +1,25 @@
+-- Журнал использований купонов и почасовые итоги (см. RedemptionLedger)
+CREATE SEQUENCE IF NOT EXISTS redemption_seq START WITH 1 INCREMENT BY 500;
+
+CREATE TABLE redemptions (
+    id           BIGINT         NOT NULL PRIMARY KEY,
+    coupon_id    BIGINT         NOT NULL,
+    coupon_code  VARCHAR(20)    NOT NULL,
+    order_amount NUMERIC(19, 2) NOT NULL,
+    discount     NUMERIC(19, 2) NOT NULL,
+    final_price  NUMERIC(19, 2) NOT NULL,
+    redeemed_at  TIMESTAMP(6)   NOT NULL
+);
+
+-- Восстановление usageCount по купону
+CREATE INDEX idx_redemptions_coupon_id ON redemptions (coupon_id);
+-- Выборки журнала за период (аналитика, разбор мошенничества)
+CREATE INDEX idx_redemptions_redeemed_at ON redemptions (redeemed_at);
+
+CREATE TABLE redemption_hourly (
+    coupon_code    VARCHAR(20)    NOT NULL,
+    hour_start     TIMESTAMP(6)   NOT NULL,
+    uses           BIGINT         NOT NULL,
+    total_discount NUMERIC(19, 2) NOT NULL,
+    PRIMARY KEY (coupon_code, hour_start)
+);
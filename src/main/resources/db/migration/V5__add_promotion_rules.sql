@@ -0,0 +1,4 @@
+-- Правила промо-акций купонов типа RULES (JSON, см. PromotionRules)
+ALTER TABLE coupons ADD COLUMN rules VARCHAR(16000);
+
+ALTER TABLE coupons_archive ADD COLUMN rules VARCHAR(16000);
@@ -0,0 +1,9 @@
+-- Лимит использований на покупателя (см. CustomerUsageTracker)
+ALTER TABLE coupons ADD COLUMN per_customer_limit INTEGER;
+
+ALTER TABLE coupons_archive ADD COLUMN per_customer_limit INTEGER;
+
+-- Покупатель в журнале: по нему загружаются использования купона по покупателям
+ALTER TABLE redemptions ADD COLUMN customer_id BIGINT;
+
+CREATE INDEX idx_redemptions_coupon_customer ON redemptions (coupon_id, customer_id);
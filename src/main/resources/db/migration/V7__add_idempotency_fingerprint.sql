@@ -0,0 +1,3 @@
+-- Покупатель и строки корзины запроса с Idempotency-Key (SHA-256, см. IdempotentApplyService).
+-- Записи, созданные до миграции, сравниваются только по коду купона и сумме заказа
+ALTER TABLE idempotency_records ADD COLUMN request_fingerprint VARCHAR(64);
@@ -0,0 +1,5 @@
+-- Публичное предложение: только такие купоны подбираются POST /api/coupons/evaluate без списка codes.
+-- Купоны, созданные до миграции, считаются персональными
+ALTER TABLE coupons ADD COLUMN public_offer BOOLEAN DEFAULT FALSE NOT NULL;
+
+ALTER TABLE coupons_archive ADD COLUMN public_offer BOOLEAN DEFAULT FALSE NOT NULL;
@@ -0,0 +1,14 @@
+-- Использования купонов по покупателям (см. CustomerUsageTracker): засчитываются
+-- в транзакции применения, а не по журналу redemptions, который может отбрасывать записи
+CREATE TABLE customer_usage (
+    coupon_id   BIGINT  NOT NULL,
+    customer_id BIGINT  NOT NULL,
+    uses        INTEGER NOT NULL,
+    PRIMARY KEY (coupon_id, customer_id)
+);
+
+INSERT INTO customer_usage (coupon_id, customer_id, uses)
+SELECT coupon_id, customer_id, COUNT(*)
+FROM redemptions
+WHERE customer_id IS NOT NULL
+GROUP BY coupon_id, customer_id;
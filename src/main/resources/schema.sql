@@ -0,0 +1,3 @@
+-- Счетчик для стратегии генерации кодов permutation.
+-- Шаг равен размеру блока, который узел забирает за один запрос.
+CREATE SEQUENCE IF NOT EXISTS coupon_code_seq START WITH 1 INCREMENT BY 1000;
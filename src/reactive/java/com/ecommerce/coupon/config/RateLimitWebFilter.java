@@ -0,0 +1,119 @@
+package com.ecommerce.coupon.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.cors.reactive.CorsUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.Set;
+
+/**
+ * Ограничение частоты запросов на реактивном стеке
+ *
+ * Те же группы и правила, что у {@link RateLimitInterceptor} в {@link WebConfig}:
+ * apply - POST /api/coupons/{code}/apply, /reserve и /batch/apply, lookup - GET /api/coupons/{code},
+ * evaluate - POST /api/coupons/evaluate. Отклоненный запрос (429) не доходит до контроллера.
+ * Для пакетного применения и подбора здесь проверяется только лимит по клиенту:
+ * лимит по коду за каждую позицию тела списывает контроллер.
+ */
+public class RateLimitWebFilter implements WebFilter {
+
+    private static final PathPattern APPLY = PathPatternParser.defaultInstance.parse("/api/coupons/{code}/{action:apply|reserve}");
+    private static final PathPattern LOOKUP = PathPatternParser.defaultInstance.parse("/api/coupons/{code}");
+    private static final PathPattern EVALUATE = PathPatternParser.defaultInstance.parse("/api/coupons/evaluate");
+    /** GET /api/coupons/export и /bulk не ограничиваются (как в WebConfig) */
+    private static final Set<String> NOT_LIMITED = Set.of("export", "bulk");
+    /** POST /api/coupons/batch/apply ограничивается только по клиенту */
+    private static final String BATCH = "batch";
+
+    private final RateLimitRule applyRule;
+    private final RateLimitRule lookupRule;
+    private final RateLimitRule evaluateRule;
+    private final String clientHeader;
+    private final ObjectMapper objectMapper;
+
+    public RateLimitWebFilter(RateLimitRule applyRule, RateLimitRule lookupRule, RateLimitRule evaluateRule,
+                              String clientHeader, ObjectMapper objectMapper) {
+        this.applyRule = applyRule;
+        this.lookupRule = lookupRule;
+        this.evaluateRule = evaluateRule;
+        this.clientHeader = clientHeader;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (CorsUtils.isPreFlightRequest(request)) {
+            return chain.filter(exchange);
+        }
+        PathContainer path = request.getPath().pathWithinApplication();
+        RateLimitRule rule = null;
+        PathPattern.PathMatchInfo match = null;
+        if (HttpMethod.POST.equals(request.getMethod()) && EVALUATE.matches(path)) {
+            long retryAfterNanos = evaluateRule.tryAcquire(clientId(request), null, System.nanoTime());
+            return retryAfterNanos > 0 ? reject(exchange.getResponse(), retryAfterNanos) : chain.filter(exchange);
+        }
+        if (HttpMethod.POST.equals(request.getMethod())) {
+            match = APPLY.matchAndExtract(path);
+            rule = applyRule;
+        } else if (HttpMethod.GET.equals(request.getMethod())) {
+            match = LOOKUP.matchAndExtract(path);
+            rule = lookupRule;
+        }
+        if (match == null) {
+            return chain.filter(exchange);
+        }
+        String code = match.getUriVariables().get("code");
+        if (NOT_LIMITED.contains(code)) {
+            return chain.filter(exchange);
+        }
+        if (BATCH.equals(code) && rule == applyRule) {
+            code = null;
+        }
+        long retryAfterNanos = rule.tryAcquire(clientId(request), code, System.nanoTime());
+        if (retryAfterNanos > 0) {
+            return reject(exchange.getResponse(), retryAfterNanos);
+        }
+        return chain.filter(exchange);
+    }
+
+    private String clientId(ServerHttpRequest request) {
+        if (!clientHeader.isEmpty()) {
+            String value = request.getHeaders().getFirst(clientHeader);
+            if (value != null && !value.isBlank()) {
+                return value;
+            }
+        }
+        InetSocketAddress address = request.getRemoteAddress();
+        return address == null ? "unknown" : address.getHostString();
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response, long retryAfterNanos) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(RateLimitRule.tooManyRequests());
+        } catch (JsonProcessingException ex) {
+            return Mono.error(ex);
+        }
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(RateLimitRule.retryAfterSeconds(retryAfterNanos)));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        DataBuffer buffer = response.bufferFactory().wrap(body);
+        return response.writeWith(Mono.just(buffer));
+    }
+}
@@ -0,0 +1,59 @@
+package com.ecommerce.coupon.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.time.Duration;
+
+/**
+ * Подключение R2DBC для реактивного варианта API
+ *
+ * Пул не публикуется как бин ConnectionFactory: иначе автоконфигурация Spring Boot
+ * выполнила бы schema.sql через R2DBC вместо DataSource и добавила бы
+ * R2dbcTransactionManager рядом с JPA. Схемой по-прежнему управляют
+ * Hibernate/Flyway, R2DBC используется только для горячего пути применения.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+public class ReactiveDataConfig {
+
+    private ConnectionPool pool;
+
+    @Bean
+    public DatabaseClient reactiveDatabaseClient(
+            @Value("${coupon.reactive.r2dbc-url}") String url,
+            @Value("${spring.datasource.username:sa}") String username,
+            @Value("${spring.datasource.password:}") String password,
+            @Value("${coupon.reactive.pool.max-size:10}") int maxSize,
+            @Value("${coupon.reactive.pool.max-acquire-time:PT2S}") Duration maxAcquireTime) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        pool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .name("coupon-r2dbc")
+                .initialSize(maxSize)
+                .maxSize(maxSize)
+                .maxAcquireTime(maxAcquireTime)
+                .build());
+        log.info("Пул R2DBC: {} соединений, ожидание соединения не больше {}", maxSize, maxAcquireTime);
+        return DatabaseClient.create(pool);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (pool != null) {
+            pool.dispose();
+        }
+    }
+}
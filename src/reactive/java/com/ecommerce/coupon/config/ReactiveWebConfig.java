@@ -0,0 +1,47 @@
+package com.ecommerce.coupon.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.config.CorsRegistry;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+/**
+ * Web конфигурация реактивного стека (аналог {@link WebConfig})
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+public class ReactiveWebConfig implements WebFluxConfigurer {
+
+    private final ObjectMapper objectMapper;
+    private final RateLimitRules rateLimitRules;
+
+    /**
+     * Настройка CORS для работы с frontend
+     */
+    @Override
+    public void addCorsMappings(CorsRegistry registry) {
+        registry.addMapping("/api/**")
+                .allowedOrigins("*")
+                .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
+                .allowedHeaders("*")
+                .exposedHeaders("X-Next-Cursor", "Retry-After")
+                .maxAge(3600);
+    }
+
+    /**
+     * Ограничение частоты запросов (coupon.rate-limit.apply.*, coupon.rate-limit.lookup.*
+     * и coupon.rate-limit.evaluate.*)
+     */
+    @Bean
+    @ConditionalOnProperty(name = "coupon.rate-limit.enabled", havingValue = "true")
+    public RateLimitWebFilter rateLimitWebFilter() {
+        return new RateLimitWebFilter(rateLimitRules.rule("apply"), rateLimitRules.rule("lookup"),
+                rateLimitRules.rule("evaluate"),
+                rateLimitRules.getClientHeader(), objectMapper);
+    }
+}
@@ -0,0 +1,371 @@
+package com.ecommerce.coupon.controller;
+
+import com.ecommerce.coupon.config.RateLimitRules;
+import com.ecommerce.coupon.config.RequestLogSampler;
+import com.ecommerce.coupon.dto.BatchApplyRequest;
+import com.ecommerce.coupon.dto.BatchApplyResponse;
+import com.ecommerce.coupon.dto.BulkGenerateRequest;
+import com.ecommerce.coupon.dto.BulkGenerationProgress;
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.dto.CouponFilter;
+import com.ecommerce.coupon.dto.CouponResponse;
+import com.ecommerce.coupon.dto.EvaluateRequest;
+import com.ecommerce.coupon.dto.EvaluateResponse;
+import com.ecommerce.coupon.dto.ReservationResponse;
+import com.ecommerce.coupon.dto.ValidationRequest;
+import com.ecommerce.coupon.dto.ValidationResponse;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.service.BulkCouponService;
+import com.ecommerce.coupon.service.CouponService;
+import com.ecommerce.coupon.service.IdempotentApplyService;
+import com.ecommerce.coupon.service.ReactiveApplyService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * REST Controller для работы с купонами (реактивный стек)
+ *
+ * Тот же REST контракт, что и у {@link CouponController}: пути, коды ответов,
+ * заголовки и JSON. Применение купона без Idempotency-Key выполняется без
+ * блокировок через {@link ReactiveApplyService}. Остальные операции используют
+ * общие JPA сервисы на Schedulers.boundedElastic, не занимая потоки event loop.
+ */
+@RestController
+@RequestMapping("/api/coupons")
+@CrossOrigin(origins = "*")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveCouponController {
+
+    private final CouponService couponService;
+    private final BulkCouponService bulkCouponService;
+    private final IdempotentApplyService idempotentApplyService;
+    private final ReactiveApplyService reactiveApplyService;
+    private final ObjectMapper objectMapper;
+    private final RequestLogSampler requestLogSampler;
+    private final RateLimitRules rateLimitRules;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    private static final String CSV_HEADER =
+            "id,code,discountType,discountValue,minOrderAmount,expiryDate,usageLimit,usageCount,active,createdAt,"
+            + "perCustomerLimit,publicOffer,rules\n";
+    /** Верхняя граница накопленного спроса подписчика на выгрузку */
+    private static final int MAX_DEMAND = 1 << 20;
+
+    /**
+     * Создать новый купон
+     * POST /api/coupons
+     */
+    @PostMapping
+    public Mono<ResponseEntity<CouponResponse>> createCoupon(@Valid @RequestBody CouponCreateRequest request) {
+        log.info("POST /api/coupons - Создание купона");
+        return blocking(() -> ResponseEntity.status(HttpStatus.CREATED).body(couponService.createCoupon(request)));
+    }
+
+    /**
+     * Массово сгенерировать купоны по шаблону
+     * POST /api/coupons/bulk
+     *
+     * Прогресс передается потоком NDJSON: одна строка после каждой записанной порции.
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<Flux<BulkGenerationProgress>> generateCoupons(@Valid @RequestBody BulkGenerateRequest request) {
+        log.info("POST /api/coupons/bulk - Массовая генерация {} купонов", request.getCount());
+        bulkCouponService.validateTemplate(request.getTemplate());
+        Flux<BulkGenerationProgress> body = streamBlocking(
+                progress -> bulkCouponService.generate(request.getCount(), request.getTemplate(), progress));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Получить страницу купонов (keyset-пагинация по id)
+     * GET /api/coupons?afterId=&limit=&active=&discountType=&expiringBefore=
+     */
+    @GetMapping
+    public Mono<ResponseEntity<List<CouponResponse>>> getCoupons(
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(required = false) DiscountType discountType,
+            @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime expiringBefore) {
+        log.info("GET /api/coupons - Получение страницы купонов после id {}", afterId);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        CouponFilter filter = new CouponFilter(active, discountType, expiringBefore);
+        return blocking(() -> {
+            List<CouponResponse> coupons = couponService.getCouponsPage(filter, afterId, pageSize);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (coupons.size() == pageSize) {
+                response.header(NEXT_CURSOR_HEADER, String.valueOf(coupons.get(coupons.size() - 1).getId()));
+            }
+            return response.body(coupons);
+        });
+    }
+
+    /**
+     * Потоковая выгрузка купонов в JSON Lines или CSV
+     * GET /api/coupons/export?format=jsonl|csv&active=&discountType=&expiringBefore=
+     *
+     * Курсор читается с учетом спроса клиента: медленный клиент
+     * приостанавливает чтение, а не копит выгрузку в памяти.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<Flux<DataBuffer>> exportCoupons(
+            @RequestParam(defaultValue = "jsonl") String format,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(required = false) DiscountType discountType,
+            @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime expiringBefore) {
+        log.info("GET /api/coupons/export - Выгрузка купонов в формате {}", format);
+        CouponFilter filter = new CouponFilter(active, discountType, expiringBefore);
+        boolean csv = "csv".equalsIgnoreCase(format);
+
+        Flux<DataBuffer> lines = ReactiveCouponController.<CouponResponse>streamBlocking(
+                        consumer -> couponService.exportCoupons(filter, consumer))
+                .map(coupon -> csv ? csvLine(coupon) : jsonLine(coupon));
+        Flux<DataBuffer> body = csv ? Flux.concat(Mono.fromSupplier(() -> buffer(CSV_HEADER)), lines) : lines;
+        return ResponseEntity.ok()
+                .contentType(csv ? TEXT_CSV : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=coupons." + (csv ? "csv" : "jsonl"))
+                .body(body);
+    }
+
+    /**
+     * Получить купон по коду
+     * GET /api/coupons/{code}
+     */
+    @GetMapping("/{code}")
+    public Mono<ResponseEntity<CouponResponse>> getCouponByCode(@PathVariable String code) {
+        if (requestLogSampler.sample()) {
+            log.info("GET /api/coupons/{} - Получение купона по коду", code);
+        }
+        return blocking(() -> ResponseEntity.ok(couponService.getCouponByCode(code)));
+    }
+
+    /**
+     * Применить купон (валидация и расчет скидки)
+     * POST /api/coupons/{code}/apply
+     *
+     * Без Idempotency-Key - неблокирующий путь через R2DBC, с ключом -
+     * {@link IdempotentApplyService}, как на servlet стеке.
+     */
+    @PostMapping("/{code}/apply")
+    public Mono<ResponseEntity<?>> applyCoupon(
+            @PathVariable String code,
+            @Valid @RequestBody ValidationRequest request,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/{}/apply - Применение купона для суммы {}", code, request.getOrderAmount());
+        }
+        if (idempotencyKey == null) {
+            return reactiveApplyService.tryApply(code, request.getOrderAmount(), request.getLines(),
+                            request.getCustomerId())
+                    .map(ApplyResponses::toResponse);
+        }
+        return blocking(() -> ApplyResponses.toResponse(
+                idempotentApplyService.apply(idempotencyKey, code, request.getOrderAmount(), request.getLines(),
+                        request.getCustomerId())));
+    }
+
+    /**
+     * Зарезервировать использование купона
+     * POST /api/coupons/{code}/reserve
+     */
+    @PostMapping("/{code}/reserve")
+    public Mono<ResponseEntity<ReservationResponse>> reserveCoupon(
+            @PathVariable String code,
+            @Valid @RequestBody ValidationRequest request) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/{}/reserve - Резервирование купона для суммы {}", code, request.getOrderAmount());
+        }
+        return blocking(() -> ResponseEntity.status(HttpStatus.CREATED)
+                .body(couponService.reserve(code, request.getOrderAmount(), request.getLines(),
+                        request.getCustomerId())));
+    }
+
+    /**
+     * Подтвердить резервирование
+     * POST /api/coupons/reservations/{reservationId}/commit
+     */
+    @PostMapping("/reservations/{reservationId}/commit")
+    public Mono<ResponseEntity<ValidationResponse>> commitReservation(@PathVariable String reservationId) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/reservations/{}/commit - Подтверждение резервирования", reservationId);
+        }
+        return blocking(() -> ResponseEntity.ok(couponService.commitReservation(reservationId)));
+    }
+
+    /**
+     * Освободить резервирование
+     * POST /api/coupons/reservations/{reservationId}/release
+     */
+    @PostMapping("/reservations/{reservationId}/release")
+    public Mono<ResponseEntity<Void>> releaseReservation(@PathVariable String reservationId) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/reservations/{}/release - Освобождение резервирования", reservationId);
+        }
+        return blocking(() -> {
+            couponService.releaseReservation(reservationId);
+            return ResponseEntity.noContent().build();
+        });
+    }
+
+    /**
+     * Пакетно применить купоны одной корзины
+     * POST /api/coupons/batch/apply
+     *
+     * Лимит частоты по коду списывается за каждую позицию (как RateLimitBodyAdvice на servlet стеке).
+     */
+    @PostMapping("/batch/apply")
+    public Mono<ResponseEntity<BatchApplyResponse>> applyCouponsBatch(@Valid @RequestBody BatchApplyRequest request) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/batch/apply - Пакетное применение {} купонов", request.getItems().size());
+        }
+        rateLimitRules.checkCodes("apply", request.getItems().stream().map(BatchApplyRequest.Item::getCode).toList());
+        return blocking(() -> ResponseEntity.ok(
+                couponService.validateAndApplyBatch(request.getItems(), request.getCustomerId())));
+    }
+
+    /**
+     * Подобрать купоны с наибольшей скидкой для суммы заказа (без применения)
+     * POST /api/coupons/evaluate
+     *
+     * Подбор идет по индексу в памяти без обращения к БД, поэтому выполняется
+     * прямо в event loop. Лимит частоты по коду списывается за каждый код-кандидат.
+     */
+    @PostMapping("/evaluate")
+    public ResponseEntity<EvaluateResponse> evaluateCoupons(@Valid @RequestBody EvaluateRequest request) {
+        if (requestLogSampler.sample()) {
+            log.info("POST /api/coupons/evaluate - Подбор купонов для суммы {}", request.getOrderAmount());
+        }
+        rateLimitRules.checkCodes("evaluate", request.getCodes());
+        return ResponseEntity.ok(couponService.evaluate(request));
+    }
+
+    /**
+     * Удалить купон
+     * DELETE /api/coupons/{code}
+     */
+    @DeleteMapping("/{code}")
+    public Mono<ResponseEntity<Void>> deleteCoupon(@PathVariable String code) {
+        log.info("DELETE /api/coupons/{} - Удаление купона", code);
+        return blocking(() -> {
+            couponService.deleteCoupon(code);
+            return ResponseEntity.noContent().build();
+        });
+    }
+
+    /**
+     * Вызов блокирующего (JPA) сервиса вне event loop
+     */
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Поток из блокирующего производителя с учетом спроса подписчика
+     *
+     * Производитель (курсор выгрузки, генерация порций) работает на
+     * boundedElastic и ждет, пока подписчик запросит следующий элемент.
+     * При отмене (клиент отключился) производитель прерывается исключением,
+     * транзакция откатывается, курсор закрывается.
+     */
+    private static <T> Flux<T> streamBlocking(Consumer<Consumer<T>> producer) {
+        return Flux.<T>create(sink -> {
+            Semaphore demand = new Semaphore(0);
+            AtomicBoolean unbounded = new AtomicBoolean();
+            sink.onRequest(n -> {
+                if (n == Long.MAX_VALUE) {
+                    unbounded.set(true);
+                }
+                demand.release((int) Math.min(n, MAX_DEMAND));
+            });
+            sink.onCancel(() -> demand.release(MAX_DEMAND));
+            try {
+                producer.accept(item -> {
+                    if (!unbounded.get()) {
+                        demand.acquireUninterruptibly();
+                    }
+                    if (sink.isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    sink.next(item);
+                });
+                sink.complete();
+            } catch (CancellationException ex) {
+                log.debug("Поток прерван: подписчик отменил подписку");
+            } catch (RuntimeException ex) {
+                sink.error(ex);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private DataBuffer jsonLine(Object value) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(value);
+            byte[] line = new byte[json.length + 1];
+            System.arraycopy(json, 0, line, 0, json.length);
+            line[json.length] = '\n';
+            return DefaultDataBufferFactory.sharedInstance.wrap(line);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private DataBuffer csvLine(CouponResponse coupon) {
+        return buffer(coupon.getId() + "," + coupon.getCode() + "," + coupon.getDiscountType() + ","
+                + coupon.getDiscountValue() + "," + coupon.getMinOrderAmount() + "," + coupon.getExpiryDate() + ","
+                + coupon.getUsageLimit() + "," + coupon.getUsageCount() + "," + coupon.getActive() + ","
+                + coupon.getCreatedAt() + "," + coupon.getPerCustomerLimit() + "," + coupon.getPublicOffer() + ","
+                + csvRules(coupon) + "\n");
+    }
+
+    /**
+     * Правила купона RULES как поле CSV: JSON в кавычках (пусто для остальных купонов)
+     */
+    private String csvRules(CouponResponse coupon) {
+        if (coupon.getRules() == null) {
+            return "";
+        }
+        try {
+            return '"' + objectMapper.writeValueAsString(coupon.getRules()).replace("\"", "\"\"") + '"';
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static DataBuffer buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
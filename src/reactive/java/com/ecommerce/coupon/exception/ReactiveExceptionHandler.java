@@ -0,0 +1,70 @@
+package com.ecommerce.coupon.exception;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Обработчик исключений, специфичных для реактивного стека
+ *
+ * Остальные исключения обрабатывает {@link GlobalExceptionHandler}. Порядок выше,
+ * иначе его обработчик Exception перехватил бы и эти исключения.
+ */
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Slf4j
+public class ReactiveExceptionHandler {
+
+    /**
+     * Обработка ошибок валидации (Bean Validation) - тот же ответ, что и на servlet стеке
+     */
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<GlobalExceptionHandler.ErrorResponse> handleValidationErrors(WebExchangeBindException ex) {
+        Map<String, String> errors = new HashMap<>();
+        ex.getBindingResult().getAllErrors().forEach(error -> {
+            String fieldName = ((FieldError) error).getField();
+            String errorMessage = error.getDefaultMessage();
+            errors.put(fieldName, errorMessage);
+        });
+
+        log.error("Ошибка валидации: {}", errors);
+        GlobalExceptionHandler.ErrorResponse error = GlobalExceptionHandler.ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.BAD_REQUEST.value())
+                .error("Validation Error")
+                .message("Ошибка валидации входных данных")
+                .validationErrors(errors)
+                .build();
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+    }
+
+    /**
+     * Обработка перегрузки: клиенту предлагается повторить запрос
+     */
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<GlobalExceptionHandler.ErrorResponse> handleOverloaded(ServiceOverloadedException ex) {
+        log.debug("Сервис перегружен: {}", ex.getMessage());
+        GlobalExceptionHandler.ErrorResponse error = GlobalExceptionHandler.ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .error(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase())
+                .message(ex.getMessage())
+                .build();
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(error);
+    }
+}
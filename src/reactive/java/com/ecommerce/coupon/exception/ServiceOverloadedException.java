@@ -0,0 +1,16 @@
+package com.ecommerce.coupon.exception;
+
+/**
+ * Исключение, выбрасываемое когда сервис перегружен: превышено число
+ * одновременных применений или свободное соединение с БД не получено вовремя
+ */
+public class ServiceOverloadedException extends RuntimeException {
+
+    public ServiceOverloadedException(String message) {
+        super(message);
+    }
+
+    public ServiceOverloadedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,82 @@
+package com.ecommerce.coupon.repository;
+
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.model.PromotionRulesConverter;
+import io.r2dbc.spi.Readable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Неблокирующий доступ к купонам через R2DBC (реактивный путь применения)
+ *
+ * Работает с той же таблицей coupons, что и {@link CouponRepository}: SQL совпадает
+ * с JPQL запросами, на которые опирается servlet вариант.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+public class ReactiveCouponRepository {
+
+    private static final String FIND_DEFINITION =
+            "SELECT id, code, discount_type, discount_value, min_order_amount, expiry_date, " +
+            "usage_limit, per_customer_limit, active, public_offer, created_at, rules FROM coupons WHERE code = :code";
+
+    private static final String INCREMENT_USAGE =
+            "UPDATE coupons SET usage_count = usage_count + 1 " +
+            "WHERE code = :code AND usage_count < usage_limit";
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Найти условия купона по коду
+     *
+     * @param code код купона
+     * @return условия купона или пустой Mono, если купона нет
+     */
+    public Mono<CouponDefinition> findDefinitionByCode(String code) {
+        return databaseClient.sql(FIND_DEFINITION)
+                .bind("code", code)
+                .map(ReactiveCouponRepository::toDefinition)
+                .one();
+    }
+
+    /**
+     * Атомарно засчитать использование, если лимит не исчерпан
+     *
+     * Один условный UPDATE, как и {@link CouponRepository#incrementUsageIfAvailable(String)}.
+     *
+     * @param code код купона
+     * @return true, если использование засчитано
+     */
+    public Mono<Boolean> incrementUsageIfAvailable(String code) {
+        return databaseClient.sql(INCREMENT_USAGE)
+                .bind("code", code)
+                .fetch()
+                .rowsUpdated()
+                .map(updated -> updated > 0);
+    }
+
+    private static CouponDefinition toDefinition(Readable row) {
+        return CouponDefinition.builder()
+                .id(row.get("id", Long.class))
+                .code(row.get("code", String.class))
+                .discountType(DiscountType.valueOf(row.get("discount_type", String.class)))
+                .discountValue(row.get("discount_value", BigDecimal.class))
+                .minOrderAmount(row.get("min_order_amount", BigDecimal.class))
+                .expiryDate(row.get("expiry_date", LocalDateTime.class))
+                .usageLimit(row.get("usage_limit", Integer.class))
+                .perCustomerLimit(row.get("per_customer_limit", Integer.class))
+                .active(row.get("active", Boolean.class))
+                .publicOffer(row.get("public_offer", Boolean.class))
+                .createdAt(row.get("created_at", LocalDateTime.class))
+                .rules(PromotionRulesConverter.fromJson(row.get("rules", String.class)))
+                .build();
+    }
+}
@@ -0,0 +1,190 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.ValidationResponse;
+import com.ecommerce.coupon.exception.ServiceOverloadedException;
+import com.ecommerce.coupon.model.CartLine;
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.repository.ReactiveCouponRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Применение купона без блокировок (реактивный вариант API)
+ *
+ * Проверки, расчет скидки, метрики и журнал те же, что и в
+ * {@link CouponService#tryApply}. Отличаются только обращения к БД: условия
+ * купона при промахе кэша читаются через R2DBC, а в режиме database
+ * использование засчитывается одним условным UPDATE через R2DBC. В режимах
+ * memory и lease остаток квоты в памяти, но пополнение может обратиться к БД
+ * через JPA, поэтому такой вызов выполняется на boundedElastic. Купоны с
+ * лимитом на покупателя применяются через {@link CouponService#tryApply}
+ * на boundedElastic: использования покупателя засчитываются в customer_usage
+ * через JPA в транзакции применения.
+ *
+ * Перегрузка: число одновременных применений ограничено
+ * (coupon.reactive.max-in-flight), а ожидание соединения из пула R2DBC -
+ * coupon.reactive.pool.max-acquire-time. В обоих случаях запрос сразу
+ * завершается {@link ServiceOverloadedException} (503), а не копится в очереди.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+public class ReactiveApplyService {
+
+    private final CouponService couponService;
+    private final ReactiveCouponRepository reactiveCouponRepository;
+    private final RedemptionEngine redemptionEngine;
+    private final CouponDefinitionCache definitionCache;
+    private final DiscountCalculator discountCalculator;
+    private final CouponMetrics couponMetrics;
+    private final RedemptionLedger redemptionLedger;
+    private final CouponThresholdIndex thresholdIndex;
+    private final boolean databaseMode;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter overloaded;
+
+    /** Загрузки условий при промахе кэша: одновременные промахи одного кода ждут одну загрузку */
+    private final ConcurrentMap<String, Mono<Optional<CouponDefinition>>> loads = new ConcurrentHashMap<>();
+
+    public ReactiveApplyService(CouponService couponService,
+                                ReactiveCouponRepository reactiveCouponRepository,
+                                RedemptionEngine redemptionEngine,
+                                CouponDefinitionCache definitionCache,
+                                DiscountCalculator discountCalculator,
+                                CouponMetrics couponMetrics,
+                                RedemptionLedger redemptionLedger,
+                                CouponThresholdIndex thresholdIndex,
+                                MeterRegistry registry,
+                                @Value("${coupon.reactive.max-in-flight:1024}") int maxInFlight) {
+        this.couponService = couponService;
+        this.reactiveCouponRepository = reactiveCouponRepository;
+        this.redemptionEngine = redemptionEngine;
+        this.definitionCache = definitionCache;
+        this.discountCalculator = discountCalculator;
+        this.couponMetrics = couponMetrics;
+        this.redemptionLedger = redemptionLedger;
+        this.thresholdIndex = thresholdIndex;
+        this.databaseMode = redemptionEngine instanceof DatabaseRedemptionEngine;
+        this.maxInFlight = maxInFlight;
+        this.overloaded = Counter.builder("coupon.reactive.overloaded")
+                .description("Применения, отклоненные из-за перегрузки (503)")
+                .register(registry);
+        Gauge.builder("coupon.reactive.in_flight", inFlight, AtomicInteger::get)
+                .description("Применения в обработке")
+                .register(registry);
+    }
+
+    /**
+     * Валидация и применение купона
+     *
+     * @param code        код купона
+     * @param orderAmount сумма заказа
+     * @param lines       строки корзины для условий купонов RULES
+     * @param customerId  идентификатор покупателя (для купонов с лимитом на покупателя)
+     * @return результат применения или причина отказа
+     */
+    public Mono<ApplyResult> tryApply(String code, BigDecimal orderAmount, List<CartLine> lines, Long customerId) {
+        return Mono.defer(() -> {
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                overloaded.increment();
+                return Mono.error(new ServiceOverloadedException(
+                        "Слишком много одновременных применений, повторите позже"));
+            }
+            return apply(code, orderAmount, lines, customerId).doFinally(signal -> inFlight.decrementAndGet());
+        });
+    }
+
+    private Mono<ApplyResult> apply(String code, BigDecimal orderAmount, List<CartLine> lines, Long customerId) {
+        log.debug("Валидация купона: {} для заказа на сумму: {}", code, orderAmount);
+        return findDefinition(code)
+                .flatMap(definition -> {
+                    ApplyResult rejection = couponService.checkApplicable(code, definition, orderAmount);
+                    if (rejection != null) {
+                        couponMetrics.rejected(rejection.getReason());
+                        return Mono.just(rejection);
+                    }
+                    CouponDefinition coupon = definition.get();
+                    if (coupon.getPerCustomerLimit() != null) {
+                        return Mono.fromCallable(() -> couponService.tryApply(code, orderAmount, lines, customerId))
+                                .subscribeOn(Schedulers.boundedElastic());
+                    }
+                    DiscountCalculator.Price price = discountCalculator.price(coupon, orderAmount, lines);
+                    ApplyResult conditionsRejection = couponService.checkConditions(code, coupon, price);
+                    if (conditionsRejection != null) {
+                        couponMetrics.rejected(conditionsRejection.getReason());
+                        return Mono.just(conditionsRejection);
+                    }
+                    return redeem(code).map(redeemed -> {
+                        if (!redeemed) {
+                            log.debug("Купон {} превысил лимит использований", code);
+                            couponMetrics.rejected(RejectionReason.USAGE_LIMIT_EXCEEDED);
+                            thresholdIndex.exhausted(code);
+                            return ApplyResult.rejected(RejectionReason.USAGE_LIMIT_EXCEEDED, code, null);
+                        }
+                        couponMetrics.applied(code, coupon.getDiscountType());
+                        redemptionLedger.record(coupon.getId(), code, orderAmount, price.discount(), price.finalPrice());
+                        return ApplyResult.applied(ValidationResponse.builder()
+                                .success(true)
+                                .message("Купон успешно применен")
+                                .originalPrice(orderAmount)
+                                .discount(price.discount())
+                                .finalPrice(price.finalPrice())
+                                .build());
+                    });
+                })
+                .onErrorMap(ReactiveApplyService::isSaturated, ex -> {
+                    overloaded.increment();
+                    return new ServiceOverloadedException("Нет свободного соединения с БД, повторите позже", ex);
+                });
+    }
+
+    private Mono<Optional<CouponDefinition>> findDefinition(String code) {
+        Optional<CouponDefinition> cached = definitionCache.getIfPresent(code);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return loads.computeIfAbsent(code, this::load);
+    }
+
+    private Mono<Optional<CouponDefinition>> load(String code) {
+        return reactiveCouponRepository.findDefinitionByCode(code)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .doOnNext(definition -> definitionCache.putIfAbsent(code, definition))
+                .doFinally(signal -> loads.remove(code))
+                .cache();
+    }
+
+    private Mono<Boolean> redeem(String code) {
+        if (databaseMode) {
+            return reactiveCouponRepository.incrementUsageIfAvailable(code);
+        }
+        return Mono.fromCallable(() -> redemptionEngine.tryRedeem(code))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Соединение из пула не получено за max-acquire-time или БД недоступна
+     */
+    private static boolean isSaturated(Throwable ex) {
+        return ex instanceof DataAccessResourceFailureException || ex instanceof TransientDataAccessException;
+    }
+}
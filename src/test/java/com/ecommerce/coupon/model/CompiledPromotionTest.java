@@ -0,0 +1,309 @@
+package com.ecommerce.coupon.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Скомпилированные правила промо-акции совпадают с прямым обходом модели правил
+ *
+ * Эталон - {@link #interpret}: для каждого правила заново отбирает строки корзины
+ * и считает скидку на BigDecimal (тот же алгоритм, что interpreted в
+ * PromotionRulesBenchmark, плюс сочетания BEST и FIRST). Случайные правила
+ * и корзины сравниваются с {@link CompiledPromotion#discount} в копейках.
+ */
+class CompiledPromotionTest {
+
+    private static final int CASES = 20_000;
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+    private static final String[] SKUS = {"sku1", "sku2", "sku3", "sku4"};
+    private static final String[] CATEGORIES = {"food", "toys", "books"};
+
+    @Test
+    void randomRulesMatchInterpreter() {
+        SplittableRandom random = new SplittableRandom(20240601);
+        for (int i = 0; i < CASES; i++) {
+            PromotionRules rules = randomRules(random);
+            List<CartLine> lines = randomLines(random);
+            BigDecimal orderAmount = lines.stream()
+                    .map(line -> line.getUnitPrice().multiply(BigDecimal.valueOf(line.getQuantity())))
+                    .reduce(BigDecimal.ZERO, BigDecimal::add)
+                    .add(money(random, 100_000));
+            long expected = FixedPointPricing.toMinor(interpret(rules, orderAmount, lines));
+            long actual = CompiledPromotion.of(rules).discount(FixedPointPricing.toMinor(orderAmount), lines);
+            assertEquals(expected, actual, () -> rules + " " + lines + " " + orderAmount);
+        }
+    }
+
+    @Test
+    void stackingCombinesApplicableRules() {
+        List<PromotionRules.Rule> rules = List.of(
+                // Не выполняется: нужна категория toys
+                percent("50", null, new PromotionRules.Condition(null, "toys", null, null)),
+                fixed("100", null),
+                percent("15", null, null));
+        List<CartLine> lines = List.of(line("sku1", "food", 2, "500.00"));
+        long order = 100_000;
+
+        assertEquals(10_000 + 15_000, discount(PromotionRules.Stacking.SUM, rules, order, lines));
+        assertEquals(15_000, discount(PromotionRules.Stacking.BEST, rules, order, lines));
+        // Первое выполненное правило - фиксированная сумма
+        assertEquals(10_000, discount(PromotionRules.Stacking.FIRST, rules, order, lines));
+    }
+
+    @Test
+    void matchedScopeUsesOnlyMatchingLines() {
+        PromotionRules.Rule rule = new PromotionRules.Rule(PromotionRules.Effect.PERCENTAGE,
+                new BigDecimal("10"), null, null, null,
+                new PromotionRules.Condition(null, "toys", 2, null), PromotionRules.Scope.MATCHED);
+        List<CartLine> lines = List.of(
+                line("sku1", "toys", 1, "300.00"),
+                line("sku2", "toys", 1, "200.00"),
+                line("sku3", "food", 5, "1000.00"));
+
+        // 10% от 500.00 игрушек, а не от заказа
+        assertEquals(5_000, discount(PromotionRules.Stacking.SUM, List.of(rule), 550_000, lines));
+        // Одной игрушки мало для minQuantity
+        assertEquals(0, discount(PromotionRules.Stacking.SUM, List.of(rule), 550_000, lines.subList(1, 3)));
+    }
+
+    @Test
+    void tiersPickHighestReachedAndCapLimits() {
+        PromotionRules.Rule tiered = new PromotionRules.Rule(PromotionRules.Effect.TIERED,
+                null, null, new BigDecimal("400"),
+                List.of(new PromotionRules.Tier(new BigDecimal("1000"), null, new BigDecimal("100")),
+                        new PromotionRules.Tier(new BigDecimal("5000"), new BigDecimal("5"), null)),
+                null, null);
+        List<PromotionRules.Rule> rules = List.of(tiered);
+
+        assertEquals(0, discount(PromotionRules.Stacking.SUM, rules, 99_999, null));
+        assertEquals(10_000, discount(PromotionRules.Stacking.SUM, rules, 100_000, null));
+        assertEquals(10_000, discount(PromotionRules.Stacking.SUM, rules, 499_999, null));
+        assertEquals(25_000, discount(PromotionRules.Stacking.SUM, rules, 500_000, null));
+        // 5% от 10000.00 = 500.00, ограничено cap 400.00
+        assertEquals(40_000, discount(PromotionRules.Stacking.SUM, rules, 1_000_000, null));
+    }
+
+    @Test
+    void discountNeverExceedsOrder() {
+        List<PromotionRules.Rule> rules = List.of(fixed("700", null), percent("100", null, null));
+
+        assertEquals(50_000, discount(PromotionRules.Stacking.SUM, rules, 50_000, null));
+    }
+
+    @Test
+    void percentOfLargeOrderDoesNotOverflow() {
+        long order = Long.MAX_VALUE / 2;
+        List<PromotionRules.Rule> rules = List.of(percent("99.99", null, null));
+
+        long expected = new BigDecimal(order).multiply(new BigDecimal("0.9999"))
+                .setScale(0, RoundingMode.HALF_UP).longValueExact();
+        assertEquals(expected, discount(PromotionRules.Stacking.SUM, rules, order, null));
+    }
+
+    @Test
+    void equalRulesShareCompiledInstance() {
+        PromotionRules first = new PromotionRules(PromotionRules.Stacking.SUM, List.of(percent("10", "300", null)));
+        PromotionRules second = new PromotionRules(PromotionRules.Stacking.SUM, List.of(percent("10", "300", null)));
+
+        assertSame(CompiledPromotion.of(first), CompiledPromotion.of(second));
+    }
+
+    @Test
+    void contradictoryRulesAreRejected() {
+        assertRejected(new PromotionRules(PromotionRules.Stacking.SUM, List.of()));
+        assertRejected(new PromotionRules(null, List.of(fixed("10", null))));
+        assertRejected(rules(percent("10", null, new PromotionRules.Condition("sku1", "food", null, null))));
+        assertRejected(rules(percent("100.01", null, null)));
+        assertRejected(rules(fixed("0.001", null)));
+        assertRejected(rules(new PromotionRules.Rule(PromotionRules.Effect.TIERED, null, null, null,
+                List.of(new PromotionRules.Tier(new BigDecimal("500"), null, BigDecimal.TEN),
+                        new PromotionRules.Tier(new BigDecimal("500"), null, BigDecimal.ONE)),
+                null, null)));
+        assertRejected(rules(new PromotionRules.Rule(PromotionRules.Effect.TIERED, null, null, null,
+                List.of(new PromotionRules.Tier(new BigDecimal("500"), BigDecimal.TEN, BigDecimal.TEN)),
+                null, null)));
+    }
+
+    private static long discount(PromotionRules.Stacking stacking, List<PromotionRules.Rule> rules,
+                                 long orderMinor, List<CartLine> lines) {
+        return CompiledPromotion.of(new PromotionRules(stacking, rules)).discount(orderMinor, lines);
+    }
+
+    private static void assertRejected(PromotionRules rules) {
+        assertThrows(IllegalArgumentException.class, () -> CompiledPromotion.of(rules));
+    }
+
+    private static PromotionRules rules(PromotionRules.Rule rule) {
+        return new PromotionRules(PromotionRules.Stacking.SUM, List.of(rule));
+    }
+
+    private static PromotionRules.Rule percent(String percent, String cap, PromotionRules.Condition when) {
+        return new PromotionRules.Rule(PromotionRules.Effect.PERCENTAGE, new BigDecimal(percent), null,
+                cap == null ? null : new BigDecimal(cap), null, when, null);
+    }
+
+    private static PromotionRules.Rule fixed(String amount, PromotionRules.Condition when) {
+        return new PromotionRules.Rule(PromotionRules.Effect.FIXED_AMOUNT, null, new BigDecimal(amount),
+                null, null, when, null);
+    }
+
+    private static CartLine line(String sku, String category, int quantity, String unitPrice) {
+        return CartLine.builder()
+                .sku(sku)
+                .category(category)
+                .quantity(quantity)
+                .unitPrice(new BigDecimal(unitPrice))
+                .build();
+    }
+
+    private static PromotionRules randomRules(SplittableRandom random) {
+        PromotionRules.Stacking stacking = PromotionRules.Stacking.values()[random.nextInt(3)];
+        List<PromotionRules.Rule> rules = new ArrayList<>();
+        int count = 1 + random.nextInt(8);
+        for (int i = 0; i < count; i++) {
+            PromotionRules.Effect effect = PromotionRules.Effect.values()[random.nextInt(3)];
+            BigDecimal cap = random.nextInt(3) == 0 ? money(random, 50_000).add(new BigDecimal("0.01")) : null;
+            PromotionRules.Scope scope = random.nextBoolean() ? PromotionRules.Scope.MATCHED : null;
+            switch (effect) {
+                case PERCENTAGE -> rules.add(new PromotionRules.Rule(effect, percent(random), null, cap, null,
+                        randomCondition(random), scope));
+                case FIXED_AMOUNT -> rules.add(new PromotionRules.Rule(effect, null, positiveMoney(random), cap,
+                        null, randomCondition(random), scope));
+                default -> rules.add(new PromotionRules.Rule(effect, null, null, cap, randomTiers(random),
+                        randomCondition(random), scope));
+            }
+        }
+        return new PromotionRules(stacking, rules);
+    }
+
+    private static PromotionRules.Condition randomCondition(SplittableRandom random) {
+        if (random.nextInt(4) == 0) {
+            return null;
+        }
+        String sku = null;
+        String category = null;
+        switch (random.nextInt(3)) {
+            case 0 -> sku = SKUS[random.nextInt(SKUS.length)];
+            case 1 -> category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            default -> {
+                // Отбор не задан: условия на всю корзину
+            }
+        }
+        Integer minQuantity = random.nextBoolean() ? 1 + random.nextInt(6) : null;
+        BigDecimal minAmount = random.nextBoolean() ? money(random, 300_000) : null;
+        return new PromotionRules.Condition(sku, category, minQuantity, minAmount);
+    }
+
+    private static List<PromotionRules.Tier> randomTiers(SplittableRandom random) {
+        List<PromotionRules.Tier> tiers = new ArrayList<>();
+        long from = random.nextLong(100_000);
+        int count = 1 + random.nextInt(4);
+        for (int t = 0; t < count; t++) {
+            boolean isPercent = random.nextBoolean();
+            tiers.add(new PromotionRules.Tier(BigDecimal.valueOf(from, 2),
+                    isPercent ? percent(random) : null,
+                    isPercent ? null : positiveMoney(random)));
+            from += 1 + random.nextLong(200_000);
+        }
+        return tiers;
+    }
+
+    private static List<CartLine> randomLines(SplittableRandom random) {
+        List<CartLine> lines = new ArrayList<>();
+        int count = random.nextInt(12);
+        for (int j = 0; j < count; j++) {
+            lines.add(CartLine.builder()
+                    .sku(random.nextInt(5) == 0 ? null : SKUS[random.nextInt(SKUS.length)])
+                    .category(random.nextInt(5) == 0 ? null : CATEGORIES[random.nextInt(CATEGORIES.length)])
+                    .quantity(1 + random.nextInt(5))
+                    .unitPrice(money(random, 50_000))
+                    .build());
+        }
+        return lines;
+    }
+
+    private static BigDecimal percent(SplittableRandom random) {
+        return BigDecimal.valueOf(1 + random.nextLong(10_000), 2);
+    }
+
+    private static BigDecimal money(SplittableRandom random, long maxMinor) {
+        return BigDecimal.valueOf(random.nextLong(maxMinor), 2);
+    }
+
+    private static BigDecimal positiveMoney(SplittableRandom random) {
+        return BigDecimal.valueOf(1 + random.nextLong(100_000), 2);
+    }
+
+    /**
+     * Прямой обход модели правил: для каждого правила - отбор строк корзины
+     */
+    private static BigDecimal interpret(PromotionRules rules, BigDecimal orderAmount, List<CartLine> lines) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (PromotionRules.Rule rule : rules.rules()) {
+            PromotionRules.Condition when = rule.when();
+            long quantity = 0;
+            BigDecimal amount = BigDecimal.ZERO;
+            boolean filtered = when != null && (when.sku() != null || when.category() != null);
+            for (CartLine line : lines) {
+                boolean matches = !filtered
+                        || (when.sku() != null && when.sku().equals(line.getSku()))
+                        || (when.category() != null && when.category().equals(line.getCategory()));
+                if (matches) {
+                    quantity += line.getQuantity();
+                    amount = amount.add(line.getUnitPrice().multiply(BigDecimal.valueOf(line.getQuantity())));
+                }
+            }
+            if (!filtered) {
+                amount = orderAmount;
+            } else if (quantity == 0) {
+                continue;
+            }
+            if (when != null && ((when.minQuantity() != null && quantity < when.minQuantity())
+                    || (when.minAmount() != null && amount.compareTo(when.minAmount()) < 0))) {
+                continue;
+            }
+            BigDecimal base = rule.scope() == PromotionRules.Scope.MATCHED ? amount : orderAmount;
+            BigDecimal discount;
+            switch (rule.effect()) {
+                case PERCENTAGE -> discount = percentOf(base, rule.percent());
+                case FIXED_AMOUNT -> discount = rule.amount().min(base);
+                default -> {
+                    PromotionRules.Tier reached = null;
+                    for (PromotionRules.Tier tier : rule.tiers()) {
+                        if (base.compareTo(tier.from()) >= 0) {
+                            reached = tier;
+                        }
+                    }
+                    if (reached == null) {
+                        continue;
+                    }
+                    discount = reached.percent() != null ? percentOf(base, reached.percent()) : reached.amount().min(base);
+                }
+            }
+            if (rule.cap() != null) {
+                discount = discount.min(rule.cap());
+            }
+            switch (rules.stacking()) {
+                case FIRST -> {
+                    return discount.min(orderAmount).setScale(2, RoundingMode.HALF_UP);
+                }
+                case BEST -> total = total.max(discount);
+                default -> total = total.add(discount);
+            }
+        }
+        return total.min(orderAmount).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal percentOf(BigDecimal base, BigDecimal percent) {
+        return base.multiply(percent).divide(HUNDRED, 2, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,171 @@
+package com.ecommerce.coupon.repository;
+
+import com.ecommerce.coupon.model.Coupon;
+import com.ecommerce.coupon.model.DiscountType;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Конкурентное списание использований одним условным UPDATE
+ *
+ * Потоки одновременно списывают использования купона: засчитанных
+ * использований ровно usageLimit, счетчик в БД совпадает с ними. Для
+ * сравнения та же нагрузка прогоняется через прежний путь (загрузка entity,
+ * проверка в Java и сохранение): условный UPDATE должен быть не медленнее
+ * (с запасом на шум замера на общей машине).
+ */
+@Slf4j
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "coupon.sweeper.enabled=false",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.ecommerce.coupon=INFO",
+        "logging.level.org.hibernate.SQL=WARN"
+})
+class CouponRepositoryConcurrencyTest {
+
+    private static final int THREADS = 16;
+    /** Допустимая доля пропускной способности прежнего пути (шум замера) */
+    private static final double THROUGHPUT_TOLERANCE = 0.8;
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void concurrentIncrementsNeverExceedUsageLimit() throws Exception {
+        int usageLimit = 500;
+        String code = createCoupon(usageLimit);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        int successes = hammer(THREADS, usageLimit * 4,
+                () -> transaction.execute(status -> couponRepository.incrementUsageIfAvailable(code)) > 0);
+
+        assertEquals(usageLimit, successes);
+        assertEquals(usageLimit, couponRepository.findUsageCountByCode(code).orElseThrow());
+    }
+
+    @Test
+    void concurrentBlockIncrementsNeverExceedUsageLimit() throws Exception {
+        int usageLimit = 1000;
+        String code = createCoupon(usageLimit);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        // Блоками по 3: последний неполный блок не помещается в лимит
+        int blocks = hammer(THREADS, usageLimit,
+                () -> transaction.execute(status -> couponRepository.incrementUsageIfAvailable(code, 3)) > 0);
+
+        assertEquals(usageLimit / 3, blocks);
+        assertEquals(usageLimit / 3 * 3, couponRepository.findUsageCountByCode(code).orElseThrow());
+    }
+
+    @Test
+    void conditionalUpdateThroughputComparedToReadModifyWrite() throws Exception {
+        int operations = 4000;
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        String legacyCode = createCoupon(Integer.MAX_VALUE);
+        String conditionalCode = createCoupon(Integer.MAX_VALUE);
+        BooleanSupplier legacy = () -> Boolean.TRUE.equals(transaction.execute(status -> {
+            Coupon coupon = couponRepository.findByCode(legacyCode).orElseThrow();
+            if (coupon.getUsageCount() >= coupon.getUsageLimit()) {
+                return false;
+            }
+            coupon.setUsageCount(coupon.getUsageCount() + 1);
+            couponRepository.save(coupon);
+            return true;
+        }));
+        BooleanSupplier conditional = () ->
+                transaction.execute(status -> couponRepository.incrementUsageIfAvailable(conditionalCode)) > 0;
+
+        // Прогрев обоих путей
+        hammer(THREADS, operations / 4, legacy);
+        hammer(THREADS, operations / 4, conditional);
+
+        long legacyStarted = System.nanoTime();
+        assertEquals(operations, hammer(THREADS, operations, legacy));
+        double legacyRate = operations / seconds(legacyStarted);
+
+        long conditionalStarted = System.nanoTime();
+        assertEquals(operations, hammer(THREADS, operations, conditional));
+        double conditionalRate = operations / seconds(conditionalStarted);
+
+        log.info("Применений в секунду ({} потоков): загрузка и сохранение entity - {}, условный UPDATE - {}",
+                THREADS, Math.round(legacyRate), Math.round(conditionalRate));
+        assertTrue(conditionalRate >= legacyRate * THROUGHPUT_TOLERANCE,
+                "Условный UPDATE медленнее прежнего пути: " + Math.round(conditionalRate) + " < "
+                        + Math.round(legacyRate) + " применений в секунду");
+        assertEquals(operations + operations / 4,
+                couponRepository.findUsageCountByCode(conditionalCode).orElseThrow());
+    }
+
+    /**
+     * Выполнить attempts попыток в threads потоках, стартующих одновременно
+     *
+     * @return количество успешных попыток
+     */
+    private static int hammer(int threads, int attempts, BooleanSupplier attempt) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int share = attempts / threads + (t < attempts % threads ? 1 : 0);
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int succeeded = 0;
+                    for (int i = 0; i < share; i++) {
+                        if (attempt.getAsBoolean()) {
+                            succeeded++;
+                        }
+                    }
+                    return succeeded;
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get(2, TimeUnit.MINUTES);
+            }
+            return total;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String createCoupon(int usageLimit) {
+        String code = UUID.randomUUID().toString().replace("-", "").substring(0, 12).toUpperCase();
+        couponRepository.save(Coupon.builder()
+                .code(code)
+                .discountType(DiscountType.PERCENTAGE)
+                .discountValue(BigDecimal.TEN)
+                .minOrderAmount(BigDecimal.ZERO)
+                .expiryDate(LocalDateTime.now().plusDays(1))
+                .usageLimit(usageLimit)
+                .build());
+        return code;
+    }
+
+    private static double seconds(long startedAt) {
+        return (System.nanoTime() - startedAt) / 1e9;
+    }
+}
@@ -0,0 +1,116 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.Coupon;
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.repository.CouponRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Объединение промахов {@link CouponDefinitionCache} вокруг запроса к репозиторию
+ */
+class CouponDefinitionCacheTest {
+
+    private static final int THREADS = 16;
+    private static final String CODE = "SUMMER2024";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger queries = new AtomicInteger();
+    private final CountDownLatch loading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CouponDefinitionCache cache = new CouponDefinitionCache(
+            repository(), registry, 1, 1000, Duration.ofMinutes(5), Duration.ofSeconds(30));
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentReadersShareOneQuery() throws Exception {
+        List<Future<Optional<CouponDefinition>>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> cache.find(CODE)));
+        }
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        // Запрос держится, пока все остальные читатели не присоединятся к нему
+        awaitCoalesced(THREADS - 1);
+        release.countDown();
+
+        for (Future<Optional<CouponDefinition>> result : results) {
+            assertEquals(CODE, result.get(10, TimeUnit.SECONDS).orElseThrow().getCode());
+        }
+        assertEquals(1, queries.get());
+
+        // Следующее чтение обслуживается кэшем
+        cache.find(CODE);
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    void invalidationDuringLoadDropsLoadedEntry() throws Exception {
+        Future<Optional<CouponDefinition>> reader = executor.submit(() -> cache.find(CODE));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        cache.invalidate(CODE);
+        release.countDown();
+        reader.get(10, TimeUnit.SECONDS);
+
+        cache.find(CODE);
+        assertEquals(2, queries.get());
+    }
+
+    private CouponRepository repository() {
+        return (CouponRepository) Proxy.newProxyInstance(
+                CouponRepository.class.getClassLoader(),
+                new Class<?>[]{CouponRepository.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("findByCode")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    queries.incrementAndGet();
+                    loading.countDown();
+                    release.await();
+                    return Optional.of(coupon((String) args[0]));
+                });
+    }
+
+    private void awaitCoalesced(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (registry.get("coupon.lookup.coalesced").tag("lookup", "definition").counter().count() < expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "coalesced не достиг " + expected);
+            Thread.sleep(1);
+        }
+    }
+
+    private static Coupon coupon(String code) {
+        return Coupon.builder()
+                .id(1L)
+                .code(code)
+                .discountType(DiscountType.PERCENTAGE)
+                .discountValue(new BigDecimal("10.00"))
+                .minOrderAmount(BigDecimal.ZERO)
+                .expiryDate(LocalDateTime.now().plusDays(30))
+                .build();
+    }
+}
@@ -0,0 +1,80 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.dto.EvaluateRequest;
+import com.ecommerce.coupon.dto.EvaluateResponse;
+import com.ecommerce.coupon.model.DiscountType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Подбор купонов: индекс хранит только публичные купоны, переданные коды
+ * берутся из кэша условий с проверкой остатка квоты
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "coupon.sweeper.enabled=false",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.ecommerce.coupon=INFO",
+        "logging.level.org.hibernate.SQL=WARN"
+})
+class CouponEvaluateTest {
+
+    private static final BigDecimal ORDER = new BigDecimal("1000.00");
+
+    @Autowired
+    private CouponService couponService;
+
+    @Autowired
+    private CouponThresholdIndex thresholdIndex;
+
+    @Test
+    void indexHoldsOnlyPublicOffersAfterRebuild() {
+        String publicCode = create(true, 5, new BigDecimal("11.00"));
+        String personalCode = create(false, 5, new BigDecimal("12.00"));
+
+        thresholdIndex.rebuild();
+
+        List<String> all = codes(couponService.evaluate(EvaluateRequest.builder()
+                .orderAmount(ORDER).limit(50).build()));
+        assertTrue(all.contains(publicCode));
+        assertFalse(all.contains(personalCode));
+    }
+
+    @Test
+    void candidateCodesAreResolvedWithoutIndex() {
+        String personalCode = create(false, 5, new BigDecimal("30.00"));
+        String exhaustedCode = create(false, 1, new BigDecimal("40.00"));
+        assertTrue(couponService.tryApply(exhaustedCode, ORDER).isApplied());
+
+        List<String> found = codes(couponService.evaluate(EvaluateRequest.builder()
+                .orderAmount(ORDER)
+                .codes(List.of(personalCode, exhaustedCode, "NOSUCHCODE"))
+                .build()));
+
+        assertEquals(List.of(personalCode), found);
+    }
+
+    private String create(boolean publicOffer, int usageLimit, BigDecimal percent) {
+        return couponService.createCoupon(CouponCreateRequest.builder()
+                .discountType(DiscountType.PERCENTAGE)
+                .discountValue(percent)
+                .minOrderAmount(BigDecimal.ZERO)
+                .expiryDate(LocalDateTime.now().plusDays(1))
+                .usageLimit(usageLimit)
+                .publicOffer(publicOffer)
+                .build()).getCode();
+    }
+
+    private static List<String> codes(EvaluateResponse response) {
+        return response.getCoupons().stream().map(EvaluateResponse.Candidate::getCode).toList();
+    }
+}
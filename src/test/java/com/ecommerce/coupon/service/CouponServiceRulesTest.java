@@ -0,0 +1,107 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.BatchApplyRequest;
+import com.ecommerce.coupon.dto.BatchApplyResponse;
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.exception.InvalidCouponException;
+import com.ecommerce.coupon.model.CartLine;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.model.PromotionRules;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Купоны RULES: корзина, не выполняющая правил, получает отказ и не расходует квоту
+ *
+ * Правило купона - 10% на категорию books при двух и более книгах в корзине.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "coupon.sweeper.enabled=false",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.ecommerce.coupon=INFO",
+        "logging.level.org.hibernate.SQL=WARN"
+})
+class CouponServiceRulesTest {
+
+    private static final BigDecimal ORDER = new BigDecimal("1000.00");
+
+    @Autowired
+    private CouponService couponService;
+
+    @Test
+    void unmetConditionsAreRejectedWithoutUsingQuota() {
+        String code = createRulesCoupon();
+
+        ApplyResult result = couponService.tryApply(code, ORDER, List.of(line("books", 1)), null);
+
+        assertFalse(result.isApplied());
+        assertEquals(RejectionReason.CONDITIONS_NOT_MET, result.getReason());
+        assertEquals(0, couponService.getCouponByCode(code).getUsageCount());
+
+        ApplyResult applied = couponService.tryApply(code, ORDER, List.of(line("books", 2)), null);
+
+        assertTrue(applied.isApplied());
+        assertEquals(new BigDecimal("40.00"), applied.getResponse().getDiscount());
+        assertEquals(1, couponService.getCouponByCode(code).getUsageCount());
+    }
+
+    @Test
+    void reserveRejectsUnmetConditions() {
+        String code = createRulesCoupon();
+
+        assertThrows(InvalidCouponException.class,
+                () -> couponService.reserve(code, ORDER, List.of(line("toys", 5)), null));
+        assertEquals(0, couponService.getCouponByCode(code).getUsageCount());
+    }
+
+    @Test
+    void batchItemsAreEvaluatedAgainstTheirLines() {
+        String code = createRulesCoupon();
+        List<BatchApplyRequest.Item> items = List.of(
+                BatchApplyRequest.Item.builder().code(code).orderAmount(ORDER).build(),
+                BatchApplyRequest.Item.builder().code(code).orderAmount(ORDER)
+                        .lines(List.of(line("books", 3))).build());
+
+        BatchApplyResponse response = couponService.validateAndApplyBatch(items, null);
+
+        assertEquals(1, response.getAppliedCount());
+        assertFalse(response.getResults().get(0).getSuccess());
+        assertEquals("Корзина не выполняет условия купона", response.getResults().get(0).getMessage());
+        assertTrue(response.getResults().get(1).getSuccess());
+        assertEquals(new BigDecimal("60.00"), response.getResults().get(1).getDiscount());
+        assertEquals(1, couponService.getCouponByCode(code).getUsageCount());
+    }
+
+    private String createRulesCoupon() {
+        PromotionRules rules = new PromotionRules(PromotionRules.Stacking.SUM, List.of(
+                new PromotionRules.Rule(PromotionRules.Effect.PERCENTAGE, BigDecimal.TEN, null, null, null,
+                        new PromotionRules.Condition(null, "books", 2, null), PromotionRules.Scope.MATCHED)));
+        return couponService.createCoupon(CouponCreateRequest.builder()
+                .discountType(DiscountType.RULES)
+                .discountValue(new BigDecimal("500.00"))
+                .minOrderAmount(BigDecimal.ZERO)
+                .expiryDate(LocalDateTime.now().plusDays(1))
+                .usageLimit(10)
+                .rules(rules)
+                .build()).getCode();
+    }
+
+    private static CartLine line(String category, int quantity) {
+        return CartLine.builder()
+                .sku(category + "-" + quantity)
+                .category(category)
+                .quantity(quantity)
+                .unitPrice(new BigDecimal("200.00"))
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.CouponCreateRequest;
+import com.ecommerce.coupon.model.DiscountType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Первые применения купона новым покупателем из нескольких потоков
+ *
+ * Все потоки одновременно создают строку customer_usage одного покупателя:
+ * проигравшие вставку не должны падать с нарушением первичного ключа.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "coupon.sweeper.enabled=false",
+        "spring.jpa.show-sql=false",
+        "logging.level.com.ecommerce.coupon=INFO",
+        "logging.level.org.hibernate.SQL=WARN"
+})
+class CustomerUsageConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int PER_CUSTOMER_LIMIT = 3;
+    private static final BigDecimal ORDER = new BigDecimal("1000.00");
+
+    @Autowired
+    private CouponService couponService;
+
+    @Test
+    void concurrentFirstUsesStayWithinLimit() throws Exception {
+        for (long customerId = 1; customerId <= 20; customerId++) {
+            String code = createCoupon();
+            assertEquals(PER_CUSTOMER_LIMIT, applyConcurrently(code, customerId));
+            assertEquals(PER_CUSTOMER_LIMIT, couponService.getCouponByCode(code).getUsageCount());
+        }
+    }
+
+    private int applyConcurrently(String code, long customerId) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<ApplyResult>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return couponService.tryApply(code, ORDER, List.of(), customerId);
+                }));
+            }
+            start.countDown();
+
+            int applied = 0;
+            for (Future<ApplyResult> result : results) {
+                ApplyResult outcome = result.get(30, TimeUnit.SECONDS);
+                if (outcome.isApplied()) {
+                    applied++;
+                } else {
+                    assertEquals(RejectionReason.CUSTOMER_LIMIT_EXCEEDED, outcome.getReason());
+                }
+            }
+            return applied;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String createCoupon() {
+        return couponService.createCoupon(CouponCreateRequest.builder()
+                .discountType(DiscountType.PERCENTAGE)
+                .discountValue(BigDecimal.TEN)
+                .minOrderAmount(BigDecimal.ZERO)
+                .expiryDate(LocalDateTime.now().plusDays(1))
+                .usageLimit(100)
+                .perCustomerLimit(PER_CUSTOMER_LIMIT)
+                .build()).getCode();
+    }
+}
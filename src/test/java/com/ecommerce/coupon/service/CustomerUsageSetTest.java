@@ -0,0 +1,150 @@
+package com.ecommerce.coupon.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Таблица использований по покупателям сверяется с HashMap
+ *
+ * Маленький диапазон идентификаторов и таблица минимальной емкости дают
+ * длинные цепочки пробирования, в том числе через конец массива: удаление
+ * сдвигом назад не должно терять записи, стоящие за удаленной.
+ */
+class CustomerUsageSetTest {
+
+    @Test
+    void randomOperationsMatchModel() {
+        SplittableRandom random = new SplittableRandom(20240701);
+        for (int round = 0; round < 50; round++) {
+            CustomerUsageSet set = new CustomerUsageSet(0);
+            Map<Long, Integer> model = new HashMap<>();
+            int limit = 1 + random.nextInt(3);
+            long universe = 8 + random.nextInt(40);
+            for (int op = 0; op < 20_000; op++) {
+                long id = 1 + random.nextLong(universe);
+                int uses = 1 + random.nextInt(2);
+                int current = model.getOrDefault(id, 0);
+                if (random.nextBoolean()) {
+                    int expected = Math.max(0, Math.min(uses, limit - current));
+                    assertEquals(expected, set.tryAcquire(id, limit, uses));
+                    if (expected > 0) {
+                        model.put(id, current + expected);
+                    }
+                } else {
+                    set.release(id, uses);
+                    if (current > uses) {
+                        model.put(id, current - uses);
+                    } else {
+                        model.remove(id);
+                    }
+                }
+                assertEquals(model.size(), set.size());
+            }
+            for (long id = 1; id <= universe; id++) {
+                assertEquals(model.getOrDefault(id, 0).intValue(), set.uses(id), "покупатель " + id);
+            }
+        }
+    }
+
+    @Test
+    void deletingEveryKeyInAnyOrderKeepsTheRestReachable() {
+        SplittableRandom random = new SplittableRandom(20240702);
+        for (int round = 0; round < 200; round++) {
+            CustomerUsageSet set = new CustomerUsageSet(0);
+            long[] ids = new long[12];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = 1 + random.nextLong(1L << 40);
+                assertTrue(set.tryAcquire(ids[i], 1));
+            }
+            // Случайный порядок удаления
+            for (int i = ids.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long swap = ids[i];
+                ids[i] = ids[j];
+                ids[j] = swap;
+            }
+            for (int i = 0; i < ids.length; i++) {
+                set.release(ids[i], 1);
+                assertEquals(0, set.uses(ids[i]));
+                for (int k = i + 1; k < ids.length; k++) {
+                    assertEquals(1, set.uses(ids[k]), "запись потеряна после удаления");
+                }
+            }
+            assertEquals(0, set.size());
+        }
+    }
+
+    @Test
+    void releasedCustomersDoNotGrowTable() {
+        CustomerUsageSet set = new CustomerUsageSet(0);
+        long bytes = set.sizeInBytes();
+        long id = 1;
+        // Резервирования новых покупателей истекают: без надгробий таблица не растет
+        for (int cycle = 0; cycle < 100_000; cycle++) {
+            for (int i = 0; i < 8; i++) {
+                assertTrue(set.tryAcquire(id + i, 1));
+            }
+            for (int i = 0; i < 8; i++) {
+                set.release(id + i, 1);
+            }
+            id += 8;
+        }
+        assertEquals(0, set.size());
+        assertEquals(bytes, set.sizeInBytes());
+    }
+
+    @Test
+    void limitIsEnforcedPerCustomer() {
+        CustomerUsageSet set = new CustomerUsageSet(4);
+
+        assertEquals(2, set.tryAcquire(42, 3, 2));
+        assertEquals(1, set.tryAcquire(42, 3, 5));
+        assertFalse(set.tryAcquire(42, 3));
+        assertTrue(set.tryAcquire(43, 3));
+
+        set.release(42, 1);
+        assertEquals(2, set.uses(42));
+        assertTrue(set.tryAcquire(42, 3));
+    }
+
+    @Test
+    void ledgerLoadSaturatesAtMaxUses() {
+        CustomerUsageSet set = new CustomerUsageSet(0);
+
+        set.add(7, 100);
+        set.add(7, 100);
+
+        assertEquals(CustomerUsageSet.MAX_USES, set.uses(7));
+        assertFalse(set.tryAcquire(7, 1_000));
+    }
+
+    @Test
+    void tableGrowsPastLoadFactor() {
+        CustomerUsageSet set = new CustomerUsageSet(0);
+        for (long id = 1; id <= 100_000; id++) {
+            assertTrue(set.tryAcquire(id, 1));
+        }
+        assertEquals(100_000, set.size());
+        for (long id = 1; id <= 100_000; id++) {
+            assertEquals(1, set.uses(id));
+        }
+        // Заполнение не больше 3/4
+        assertTrue(set.sizeInBytes() >= 100_000L * 9 * 4 / 3);
+    }
+
+    @Test
+    void nonPositiveIdIsRejected() {
+        CustomerUsageSet set = new CustomerUsageSet(0);
+
+        assertThrows(IllegalArgumentException.class, () -> set.tryAcquire(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> set.add(-1, 1));
+    }
+}
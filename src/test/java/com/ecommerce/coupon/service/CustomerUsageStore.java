@@ -0,0 +1,98 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.CustomerUsage;
+import com.ecommerce.coupon.repository.CustomerUsageRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Таблица customer_usage в памяти с семантикой запросов {@link CustomerUsageRepository}
+ */
+final class CustomerUsageStore {
+
+    private final Map<List<Long>, Integer> rows = new HashMap<>();
+
+    /**
+     * Репозиторий над этой таблицей (общей для всех трекеров, как БД для узлов)
+     */
+    CustomerUsageRepository repository() {
+        return (CustomerUsageRepository) Proxy.newProxyInstance(
+                CustomerUsageRepository.class.getClassLoader(),
+                new Class<?>[]{CustomerUsageRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "tryAdd" -> tryAdd((Long) args[0], (long) args[1], (int) args[2], (int) args[3]);
+                    case "insertIfAbsent" -> insertIfAbsent((Long) args[0], (long) args[1]);
+                    case "existsById" -> exists((CustomerUsage.Key) args[0]);
+                    case "subtract" -> subtract((Long) args[0], (long) args[1], (int) args[2]);
+                    case "streamUsage" -> streamUsage((Long) args[0]);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    synchronized int uses(long couponId, long customerId) {
+        return rows.getOrDefault(List.of(couponId, customerId), 0);
+    }
+
+    private synchronized int tryAdd(Long couponId, long customerId, int uses, int limit) {
+        List<Long> key = List.of(couponId, customerId);
+        Integer current = rows.get(key);
+        if (current == null || current + uses > limit) {
+            return 0;
+        }
+        rows.put(key, current + uses);
+        return 1;
+    }
+
+    private synchronized boolean exists(CustomerUsage.Key key) {
+        return rows.containsKey(List.of(key.getCouponId(), key.getCustomerId()));
+    }
+
+    private synchronized int insertIfAbsent(Long couponId, long customerId) {
+        return rows.putIfAbsent(List.of(couponId, customerId), 0) == null ? 1 : 0;
+    }
+
+    private synchronized int subtract(Long couponId, long customerId, int uses) {
+        List<Long> key = List.of(couponId, customerId);
+        int current = rows.getOrDefault(key, 0);
+        if (current < uses) {
+            return 0;
+        }
+        rows.put(key, current - uses);
+        return 1;
+    }
+
+    private synchronized Stream<Object[]> streamUsage(Long couponId) {
+        return rows.entrySet().stream()
+                .filter(row -> row.getKey().get(0).equals(couponId) && row.getValue() > 0)
+                .map(row -> new Object[]{row.getKey().get(1), row.getValue()})
+                .toList()
+                .stream();
+    }
+
+    /**
+     * Транзакции без ресурсов: загрузка учета покупателей читает таблицу в памяти
+     */
+    static final class NoTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
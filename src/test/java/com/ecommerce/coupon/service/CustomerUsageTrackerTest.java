@@ -0,0 +1,135 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.DiscountType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Лимит на покупателя поверх общей таблицы customer_usage
+ *
+ * Несколько трекеров над одной {@link CustomerUsageStore} моделируют
+ * перезапуск узла и несколько узлов с общей БД.
+ */
+class CustomerUsageTrackerTest {
+
+    private final CustomerUsageStore store = new CustomerUsageStore();
+
+    @Test
+    void usageSurvivesRestart() {
+        CouponDefinition coupon = coupon(2);
+        CustomerUsageTracker before = tracker("memory");
+        assertEquals(2, before.tryAcquire(coupon, 42, 3));
+        assertTrue(before.tryAcquire(coupon, 43));
+
+        CustomerUsageTracker after = tracker("memory");
+
+        assertFalse(after.tryAcquire(coupon, 42));
+        assertEquals(1, after.tryAcquire(coupon, 43, 5));
+        assertEquals(2, store.uses(coupon.getId(), 42));
+        assertEquals(2, store.uses(coupon.getId(), 43));
+    }
+
+    @Test
+    void releaseReturnsUsageToStore() {
+        CouponDefinition coupon = coupon(1);
+        CustomerUsageTracker tracker = tracker("memory");
+        assertTrue(tracker.tryAcquire(coupon, 42));
+
+        tracker.release(coupon.getId(), 42, 1);
+
+        assertEquals(0, store.uses(coupon.getId(), 42));
+        assertTrue(tracker("memory").tryAcquire(coupon, 42));
+    }
+
+    @Test
+    void leaseNodesShareLimit() throws Exception {
+        int limit = 3;
+        CouponDefinition coupon = coupon(limit);
+        List<CustomerUsageTracker> nodes = List.of(tracker("lease"), tracker("lease"), tracker("lease"), tracker("lease"));
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(nodes.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> callers = new ArrayList<>();
+            for (CustomerUsageTracker node : nodes) {
+                callers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 100; i++) {
+                        granted.addAndGet(node.tryAcquire(coupon, 42, 2));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> caller : callers) {
+                caller.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(limit, granted.get());
+        assertEquals(limit, store.uses(coupon.getId(), 42));
+    }
+
+    @Test
+    void leaseNodeSeesReleaseOfAnotherNode() {
+        CouponDefinition coupon = coupon(1);
+        CustomerUsageTracker first = tracker("lease");
+        CustomerUsageTracker second = tracker("lease");
+        assertTrue(first.tryAcquire(coupon, 42));
+        assertFalse(second.tryAcquire(coupon, 42));
+
+        first.release(coupon.getId(), 42, 1);
+
+        assertTrue(second.tryAcquire(coupon, 42));
+    }
+
+    @Test
+    void memoryNodeStaysWithinStoreWhenAnotherWriterUsedLimit() {
+        CouponDefinition coupon = coupon(2);
+        CustomerUsageTracker node = tracker("memory");
+        assertEquals(1, node.tryAcquire(coupon, 42, 1));
+        // Использование засчитано мимо таблицы этого узла
+        assertTrue(tracker("lease").tryAcquire(coupon, 42));
+
+        assertEquals(0, node.tryAcquire(coupon, 42, 1));
+        assertEquals(2, store.uses(coupon.getId(), 42));
+    }
+
+    private CustomerUsageTracker tracker(String redemptionMode) {
+        return new CustomerUsageTracker(store.repository(), new CustomerUsageStore.NoTransactionManager(),
+                new SimpleMeterRegistry(), redemptionMode, Duration.ofHours(1), 16);
+    }
+
+    private static CouponDefinition coupon(int perCustomerLimit) {
+        return CouponDefinition.builder()
+                .id(7L)
+                .code("CUSTOMER01")
+                .discountType(DiscountType.PERCENTAGE)
+                .discountValue(BigDecimal.TEN)
+                .minOrderAmount(BigDecimal.ZERO)
+                .expiryDate(LocalDateTime.now().plusDays(1))
+                .usageLimit(1000)
+                .perCustomerLimit(perCustomerLimit)
+                .active(true)
+                .build();
+    }
+}
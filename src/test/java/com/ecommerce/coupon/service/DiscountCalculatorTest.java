@@ -0,0 +1,148 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.model.FixedPointPricing;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Расчет в копейках совпадает с расчетом на BigDecimal
+ *
+ * Случайные суммы (scale 0-4, включая непредставимые в копейках) и значения
+ * скидок (scale 0-3) сравниваются с coupon.pricing.mode=decimal по значению
+ * и scale. Отдельно проверяются половины копейки (округление HALF_UP) и 100%.
+ */
+class DiscountCalculatorTest {
+
+    private static final int CASES = 200_000;
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    private final DiscountCalculator fixedPoint = new DiscountCalculator("fixed-point");
+    private final DiscountCalculator decimal = new DiscountCalculator("decimal");
+
+    @Test
+    void randomPercentageMatchesDecimal() {
+        SplittableRandom random = new SplittableRandom(20240501);
+        for (int i = 0; i < CASES; i++) {
+            BigDecimal percent = randomDecimal(random, 10_000, 3).min(HUNDRED);
+            assertSamePrice(coupon(DiscountType.PERCENTAGE, percent), randomAmount(random));
+        }
+    }
+
+    @Test
+    void randomFixedAmountMatchesDecimal() {
+        SplittableRandom random = new SplittableRandom(20240502);
+        for (int i = 0; i < CASES; i++) {
+            BigDecimal value = randomDecimal(random, 1_000_000, 3);
+            assertSamePrice(coupon(DiscountType.FIXED_AMOUNT, value), randomAmount(random));
+        }
+    }
+
+    @Test
+    void halfKopeckRoundsUp() {
+        int boundaries = 0;
+        for (long amountMinor = 1; amountMinor <= 20_000; amountMinor++) {
+            for (long basisPoints : new long[]{1, 10, 50, 250, 1250, 3333, 5000, 9999}) {
+                if (amountMinor * basisPoints % 10_000 != 5_000) {
+                    continue;
+                }
+                boundaries++;
+                BigDecimal amount = FixedPointPricing.toDecimal(amountMinor);
+                BigDecimal percent = FixedPointPricing.toDecimal(basisPoints);
+                long expected = (amountMinor * basisPoints + 5_000) / 10_000;
+                assertEquals(expected, FixedPointPricing.discount(DiscountType.PERCENTAGE, basisPoints, amountMinor));
+                assertEquals(FixedPointPricing.toDecimal(expected), reference(amount, percent));
+                assertSamePrice(coupon(DiscountType.PERCENTAGE, percent), amount);
+            }
+        }
+        assertTrue(boundaries > 1000, "проверено половин копейки: " + boundaries);
+        // 0.50 * 1% = 0.005 -> 0.01
+        assertEquals(new BigDecimal("0.01"),
+                fixedPoint.price(coupon(DiscountType.PERCENTAGE, BigDecimal.ONE), new BigDecimal("0.50")).discount());
+    }
+
+    @Test
+    void fullPercentageLeavesZeroPrice() {
+        SplittableRandom random = new SplittableRandom(20240503);
+        for (BigDecimal percent : new BigDecimal[]{HUNDRED, new BigDecimal("100.00"), new BigDecimal("100.000")}) {
+            CouponDefinition coupon = coupon(DiscountType.PERCENTAGE, percent);
+            for (int i = 0; i < 10_000; i++) {
+                BigDecimal amount = randomAmount(random);
+                DiscountCalculator.Price price = assertSamePrice(coupon, amount);
+                // Доли копейки скидка не покрывает: скидка округляется до копеек
+                if (FixedPointPricing.toMinor(amount) != FixedPointPricing.NOT_REPRESENTABLE) {
+                    assertEquals(0, price.finalPrice().signum(), () -> amount + " при 100%");
+                }
+            }
+        }
+    }
+
+    @Test
+    void fixedAmountAboveOrderIsCapped() {
+        CouponDefinition coupon = coupon(DiscountType.FIXED_AMOUNT, new BigDecimal("500.00"));
+        for (String amount : new String[]{"0", "0.01", "499.99", "500", "500.00", "500.01", "0.005"}) {
+            assertSamePrice(coupon, new BigDecimal(amount));
+        }
+    }
+
+    @Test
+    void overflowFallsBackToDecimal() {
+        CouponDefinition coupon = coupon(DiscountType.PERCENTAGE, new BigDecimal("99.99"));
+        BigDecimal amount = FixedPointPricing.toDecimal(Long.MAX_VALUE / 1000);
+        assertEquals(FixedPointPricing.NOT_REPRESENTABLE,
+                FixedPointPricing.discount(DiscountType.PERCENTAGE, 9_999, Long.MAX_VALUE / 1000));
+        assertSamePrice(coupon, amount);
+    }
+
+    private DiscountCalculator.Price assertSamePrice(CouponDefinition coupon, BigDecimal amount) {
+        DiscountCalculator.Price expected = decimal.price(coupon, amount);
+        DiscountCalculator.Price actual = fixedPoint.price(coupon, amount);
+        assertEquals(expected, actual, () -> coupon.getDiscountType() + " " + coupon.getDiscountValue() + " от " + amount);
+        if (coupon.getDiscountType() == DiscountType.PERCENTAGE) {
+            assertEquals(reference(amount, coupon.getDiscountValue()), actual.discount(),
+                    () -> coupon.getDiscountValue() + "% от " + amount);
+        }
+        return actual;
+    }
+
+    /**
+     * Исходная формула процентной скидки на BigDecimal
+     */
+    private static BigDecimal reference(BigDecimal amount, BigDecimal percent) {
+        return amount.multiply(percent).divide(HUNDRED, 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Сумма заказа: в основном в копейках, иногда целая или с лишними знаками
+     */
+    private static BigDecimal randomAmount(SplittableRandom random) {
+        return randomDecimal(random, 100_000_000, 4);
+    }
+
+    private static BigDecimal randomDecimal(SplittableRandom random, long maxUnits, int maxScale) {
+        int scale = random.nextInt(10) < 7 ? 2 : random.nextInt(maxScale + 1);
+        long units = random.nextInt(20) == 0 ? random.nextLong(100) : random.nextLong(maxUnits);
+        return BigDecimal.valueOf(units * (long) Math.pow(10, scale) + random.nextLong((long) Math.pow(10, scale)), scale);
+    }
+
+    private static CouponDefinition coupon(DiscountType discountType, BigDecimal value) {
+        return CouponDefinition.builder()
+                .id(1L)
+                .code("PRICETEST1")
+                .discountType(discountType)
+                .discountValue(value)
+                .minOrderAmount(BigDecimal.ZERO)
+                .expiryDate(LocalDateTime.now().plusDays(1))
+                .usageLimit(Integer.MAX_VALUE)
+                .active(true)
+                .build();
+    }
+}
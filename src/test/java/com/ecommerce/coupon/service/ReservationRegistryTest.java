@@ -0,0 +1,327 @@
+package com.ecommerce.coupon.service;
+
+import com.ecommerce.coupon.dto.ValidationResponse;
+import com.ecommerce.coupon.model.Coupon;
+import com.ecommerce.coupon.model.CouponDefinition;
+import com.ecommerce.coupon.model.DiscountType;
+import com.ecommerce.coupon.repository.CouponRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Резервирования поверх настоящего {@link InMemoryRedemptionEngine}
+ *
+ * Репозиторий купонов заменен заглушкой: она отдает купон при загрузке и
+ * накапливает сброшенные использования, как usageCount в БД.
+ */
+class ReservationRegistryTest {
+
+    private static final String CODE = "RESERVE0001";
+    private static final String OTHER_CODE = "RESERVE0002";
+
+    private final Map<String, AtomicLong> flushedUsage = new ConcurrentHashMap<>();
+    private final Map<String, Integer> usageLimits = new ConcurrentHashMap<>();
+    private final InMemoryRedemptionEngine engine = new InMemoryRedemptionEngine(couponRepository(), 4);
+    private final CustomerUsageStore usageStore = new CustomerUsageStore();
+    private final CustomerUsageTracker customerUsage = new CustomerUsageTracker(usageStore.repository(),
+            new CustomerUsageStore.NoTransactionManager(), new SimpleMeterRegistry(), "memory", Duration.ofHours(1), 16);
+    private ExecutorService executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentReserveCommitReleaseAndExpiryStayWithinLimit() throws Exception {
+        int usageLimit = 300;
+        usageLimits.put(CODE, usageLimit);
+        RecordingEngine recording = new RecordingEngine(engine);
+        // Срок жизни больше оборота колеса (8 x 2 мс): часть резервирований переживает оборот
+        ReservationRegistry registry = registry(recording, Duration.ofMillis(40), 2, 8);
+        CouponDefinition coupon = coupon(CODE, null);
+
+        int threads = 8;
+        AtomicInteger committed = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        executor = Executors.newFixedThreadPool(threads + 1);
+        Future<?> expiry = executor.submit(() -> {
+            while (running.get()) {
+                registry.expireDue();
+                Thread.onSpinWait();
+            }
+        });
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2_000; i++) {
+                    Optional<ReservationRegistry.Reservation> reservation = registry.reserve(coupon, response(), null);
+                    if (reservation.isEmpty()) {
+                        continue;
+                    }
+                    int action = random.nextInt(10);
+                    if (action < 3) {
+                        if (registry.commit(reservation.get().id()).isPresent()) {
+                            committed.incrementAndGet();
+                        }
+                    } else if (action < 8) {
+                        registry.release(reservation.get().id());
+                    }
+                    // Остальные брошены и истекают по колесу
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(1, TimeUnit.MINUTES);
+        }
+        awaitNoOpenReservations(registry);
+        running.set(false);
+        expiry.get(10, TimeUnit.SECONDS);
+
+        engine.flush();
+        assertTrue(committed.get() <= usageLimit, "подтверждено " + committed.get());
+        assertEquals(committed.get(), flushedUsage.get(CODE).get());
+        assertEquals(usageLimit - committed.get(), engine.remaining(CODE));
+        assertEquals(0, registry.openCount(CODE));
+        assertTrue(recording.released.get() > 0, "ни одно резервирование не истекло и не освобождено");
+    }
+
+    @Test
+    void expiryReturnsCustomerUsage() throws Exception {
+        usageLimits.put(CODE, 10);
+        ReservationRegistry registry = registry(engine, Duration.ofMillis(30), 5, 4);
+        CouponDefinition coupon = coupon(CODE, 1);
+        long customerId = 42;
+
+        assertTrue(customerUsage.tryAcquire(coupon, customerId));
+        assertTrue(registry.reserve(coupon, response(), customerId).isPresent());
+        assertFalse(customerUsage.tryAcquire(coupon, customerId));
+        assertEquals(1, usageStore.uses(coupon.getId(), customerId));
+
+        awaitNoOpenReservations(registry);
+        assertEquals(0, usageStore.uses(coupon.getId(), customerId));
+        assertTrue(customerUsage.tryAcquire(coupon, customerId));
+        assertEquals(10, engine.remaining(CODE));
+    }
+
+    @Test
+    void wheelWrapAroundDoesNotExpireEarly() throws Exception {
+        usageLimits.put(CODE, 10);
+        // Оборот колеса 4 x 10 мс, срок жизни - пять оборотов
+        ReservationRegistry registry = registry(engine, Duration.ofMillis(200), 10, 4);
+        String id = registry.reserve(coupon(CODE, null), response(), null).orElseThrow().id();
+
+        long deadline = System.currentTimeMillis() + 100;
+        while (System.currentTimeMillis() < deadline) {
+            registry.expireDue();
+            Thread.sleep(3);
+        }
+        assertEquals(1, registry.openCount(CODE));
+        assertEquals(9, engine.remaining(CODE));
+
+        awaitNoOpenReservations(registry);
+        assertTrue(registry.commit(id).isEmpty());
+        assertEquals(10, engine.remaining(CODE));
+    }
+
+    @Test
+    void longPauseExpiresEverythingInOneAdvance() throws Exception {
+        usageLimits.put(CODE, 100);
+        ReservationRegistry registry = registry(engine, Duration.ofMillis(20), 5, 4);
+        for (int i = 0; i < 50; i++) {
+            registry.reserve(coupon(CODE, null), response(), null).orElseThrow();
+        }
+        assertEquals(50, engine.remaining(CODE));
+
+        // Пауза в десятки оборотов колеса: один вызов просматривает каждую ячейку
+        Thread.sleep(300);
+        registry.expireDue();
+
+        assertEquals(0, registry.openCount());
+        assertEquals(100, engine.remaining(CODE));
+    }
+
+    @Test
+    void openCountIsTrackedPerCode() {
+        usageLimits.put(CODE, 10);
+        usageLimits.put(OTHER_CODE, 10);
+        ReservationRegistry registry = registry(engine, Duration.ofMinutes(15), 100, 1024);
+        String first = registry.reserve(coupon(CODE, null), response(), null).orElseThrow().id();
+        String second = registry.reserve(coupon(CODE, null), response(), null).orElseThrow().id();
+        registry.reserve(coupon(OTHER_CODE, null), response(), null).orElseThrow();
+
+        assertEquals(2, registry.openCount(CODE));
+        assertEquals(1, registry.openCount(OTHER_CODE));
+        registry.commit(first);
+        registry.release(second);
+        assertEquals(0, registry.openCount(CODE));
+        assertEquals(1, registry.openCount(OTHER_CODE));
+    }
+
+    @Test
+    void shutdownReleasesOpenReservationsOncePerCode() {
+        usageLimits.put(CODE, 10);
+        usageLimits.put(OTHER_CODE, 10);
+        RecordingEngine recording = new RecordingEngine(engine);
+        ReservationRegistry registry = registry(recording, Duration.ofMinutes(15), 100, 1024);
+        CouponDefinition limited = coupon(CODE, 1);
+        for (long customerId = 1; customerId <= 3; customerId++) {
+            assertTrue(customerUsage.tryAcquire(limited, customerId));
+            registry.reserve(limited, response(), customerId).orElseThrow();
+        }
+        for (int i = 0; i < 2; i++) {
+            registry.reserve(coupon(OTHER_CODE, null), response(), null).orElseThrow();
+        }
+
+        registry.shutdown();
+
+        assertEquals(0, registry.openCount());
+        assertEquals(Map.of(CODE, List.of(3), OTHER_CODE, List.of(2)), recording.releaseCalls);
+        assertEquals(10, engine.remaining(CODE));
+        assertEquals(10, engine.remaining(OTHER_CODE));
+        assertEquals(0, usageStore.uses(limited.getId(), 2));
+        assertTrue(customerUsage.tryAcquire(limited, 1));
+    }
+
+    private ReservationRegistry registry(RedemptionEngine redemptionEngine, Duration ttl, long tickMillis,
+                                         int wheelSize) {
+        return new ReservationRegistry(redemptionEngine, customerUsage, new SimpleMeterRegistry(),
+                ttl, tickMillis, wheelSize, 1_000_000);
+    }
+
+    private static void awaitNoOpenReservations(ReservationRegistry registry) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (registry.openCount() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "резервирования не истекли");
+            registry.expireDue();
+            Thread.sleep(1);
+        }
+    }
+
+    private static CouponDefinition coupon(String code, Integer perCustomerLimit) {
+        return CouponDefinition.builder()
+                .id((long) code.hashCode())
+                .code(code)
+                .discountType(DiscountType.PERCENTAGE)
+                .discountValue(BigDecimal.TEN)
+                .minOrderAmount(BigDecimal.ZERO)
+                .expiryDate(LocalDateTime.now().plusDays(1))
+                .usageLimit(1000)
+                .perCustomerLimit(perCustomerLimit)
+                .active(true)
+                .build();
+    }
+
+    private static ValidationResponse response() {
+        return ValidationResponse.builder()
+                .success(true)
+                .originalPrice(new BigDecimal("100.00"))
+                .discount(new BigDecimal("10.00"))
+                .finalPrice(new BigDecimal("90.00"))
+                .build();
+    }
+
+    private CouponRepository couponRepository() {
+        return (CouponRepository) Proxy.newProxyInstance(
+                CouponRepository.class.getClassLoader(),
+                new Class<?>[]{CouponRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findByCode" -> Optional.ofNullable(usageLimits.get((String) args[0]))
+                            .map(limit -> Coupon.builder().code((String) args[0]).usageLimit(limit).build());
+                    case "findRemainingUsageByCode" -> Optional.ofNullable(usageLimits.get((String) args[0]));
+                    case "addUsage" -> {
+                        flushedUsage.computeIfAbsent((String) args[0], code -> new AtomicLong()).addAndGet((int) args[1]);
+                        yield 1;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Движок, запоминающий возвраты слотов по кодам
+     */
+    private static final class RecordingEngine implements RedemptionEngine {
+
+        private final RedemptionEngine delegate;
+        private final Map<String, List<Integer>> releaseCalls = new ConcurrentHashMap<>();
+        private final AtomicInteger released = new AtomicInteger();
+
+        RecordingEngine(RedemptionEngine delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean tryRedeem(String code) {
+            return delegate.tryRedeem(code);
+        }
+
+        @Override
+        public int tryRedeem(String code, int permits) {
+            return delegate.tryRedeem(code, permits);
+        }
+
+        @Override
+        public void refund(String code, int permits) {
+            delegate.refund(code, permits);
+        }
+
+        @Override
+        public boolean tryReserve(String code) {
+            return delegate.tryReserve(code);
+        }
+
+        @Override
+        public void commitReserved(String code, int permits) {
+            delegate.commitReserved(code, permits);
+        }
+
+        @Override
+        public void releaseReserved(String code, int permits) {
+            releaseCalls.computeIfAbsent(code, key -> java.util.Collections.synchronizedList(new ArrayList<>()))
+                    .add(permits);
+            released.addAndGet(permits);
+            delegate.releaseReserved(code, permits);
+        }
+
+        @Override
+        public int remaining(String code) {
+            return delegate.remaining(code);
+        }
+
+        @Override
+        public void evict(String code) {
+            delegate.evict(code);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.ecommerce.coupon.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private static final int THREADS = 16;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>("test", 1, registry);
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger invocations = new AtomicInteger();
+
+        List<Future<String>> results = submitAll(() -> singleFlight.execute("SUMMER2024", () -> {
+            invocations.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "loaded";
+        }));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        // Загрузка держится, пока все остальные вызовы не присоединятся к ней
+        awaitCount("coupon.lookup.coalesced", THREADS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("loaded", result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, invocations.get());
+        assertEquals(1.0, count("coupon.lookup.loads"));
+        assertEquals(THREADS - 1.0, count("coupon.lookup.coalesced"));
+    }
+
+    @Test
+    void waitersReceiveLoaderException() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = submitAll(() -> singleFlight.execute("BROKEN", () -> {
+            loading.countDown();
+            await(release);
+            throw new IllegalStateException("БД недоступна");
+        }));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        awaitCount("coupon.lookup.coalesced", THREADS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            ExecutionException failure = assertThrows(ExecutionException.class,
+                    () -> result.get(10, TimeUnit.SECONDS));
+            assertEquals(IllegalStateException.class, failure.getCause().getClass());
+        }
+        assertEquals(1.0, count("coupon.lookup.loads"));
+    }
+
+    @Test
+    void resultIsNotCachedAfterLoadCompletes() {
+        AtomicInteger invocations = new AtomicInteger();
+
+        singleFlight.execute("SUMMER2024", () -> "v" + invocations.incrementAndGet());
+        String second = singleFlight.execute("SUMMER2024", () -> "v" + invocations.incrementAndGet());
+
+        assertEquals("v2", second);
+        assertEquals(2.0, count("coupon.lookup.loads"));
+        assertEquals(0.0, count("coupon.lookup.coalesced"));
+    }
+
+    private List<Future<String>> submitAll(java.util.concurrent.Callable<String> call) {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(call));
+        }
+        return results;
+    }
+
+    private void awaitCount(String meter, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (count(meter) < expected) {
+            assertTrue(System.currentTimeMillis() < deadline, meter + " не достиг " + expected);
+            Thread.sleep(1);
+        }
+    }
+
+    private double count(String meter) {
+        return registry.get(meter).tag("lookup", "test").counter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.ecommerce.coupon.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Колесо таймеров с явным временем: тик 10 мс, 8 ячеек (оборот - 80 мс)
+ */
+class TimingWheelTest {
+
+    private static final long TICK = 10;
+    private static final int SIZE = 8;
+
+    private final TimingWheel<String> wheel = new TimingWheel<>(TICK, SIZE, 0);
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    void neverFiresBeforeDeadline() {
+        wheel.schedule("a", 35);
+
+        advance(30);
+        advance(39);
+        assertEquals(List.of(), fired);
+
+        advance(40);
+        assertEquals(List.of("a"), fired);
+    }
+
+    @Test
+    void deadlineSeveralRevolutionsAheadSurvivesWrapAround() {
+        // Пять оборотов: ячейка просматривается четыре раза до срока
+        wheel.schedule("far", 400);
+        wheel.schedule("near", 20);
+
+        for (long now = TICK; now < 400; now += TICK) {
+            advance(now);
+        }
+        assertEquals(List.of("near"), fired);
+
+        advance(400);
+        assertEquals(List.of("near", "far"), fired);
+    }
+
+    @Test
+    void longPauseFiresEverythingDueOnceInOneAdvance() {
+        for (int i = 1; i <= 50; i++) {
+            wheel.schedule("due" + i, i * 7L);
+        }
+        wheel.schedule("later", 100_000);
+
+        // Пауза - десятки оборотов
+        advance(5_000);
+        assertEquals(50, fired.size());
+        assertEquals(50, fired.stream().distinct().count());
+
+        advance(5_010);
+        advance(99_990);
+        assertEquals(50, fired.size());
+
+        advance(100_000);
+        assertEquals("later", fired.get(50));
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextTick() {
+        advance(50);
+        wheel.schedule("late", 10);
+
+        advance(50);
+        assertEquals(List.of(), fired);
+        advance(60);
+        assertEquals(List.of("late"), fired);
+    }
+
+    @Test
+    void concurrentSchedulingFiresEachItemOnce() throws Exception {
+        TimingWheel<Integer> concurrent = new TimingWheel<>(1, 16, System.currentTimeMillis());
+        ConcurrentHashMap<Integer, AtomicInteger> counts = new ConcurrentHashMap<>();
+        int threads = 4;
+        int perThread = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> producers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int base = t * perThread;
+                producers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        concurrent.schedule(base + i, System.currentTimeMillis() + i % 40);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (counts.size() < threads * perThread) {
+                assertTrue(System.currentTimeMillis() < deadline, "сработало " + counts.size());
+                concurrent.advance(System.currentTimeMillis(),
+                        item -> counts.computeIfAbsent(item, key -> new AtomicInteger()).incrementAndGet());
+            }
+            for (Future<?> producer : producers) {
+                producer.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(counts.values().stream().allMatch(count -> count.get() == 1), "элемент сработал дважды");
+    }
+
+    private void advance(long nowMillis) {
+        wheel.advance(nowMillis, fired::add);
+    }
+}
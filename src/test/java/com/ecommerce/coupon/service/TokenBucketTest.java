@@ -0,0 +1,102 @@
+package com.ecommerce.coupon.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ведро токенов с явным временем: 10 запросов в секунду, емкость 5
+ */
+class TokenBucketTest {
+
+    private static final long MILLI = 1_000_000L;
+    private static final long START = 1_000_000_000L;
+
+    private final TokenBucket bucket = new TokenBucket(10, 5, START);
+
+    @Test
+    void burstPassesThenRejects() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(START), "запрос " + i);
+        }
+        assertFalse(bucket.tryAcquire(START));
+        assertEquals(100 * MILLI, bucket.nanosUntilNextPermit(START));
+    }
+
+    @Test
+    void tokenRefillsAfterEmissionInterval() {
+        drain(START);
+
+        assertFalse(bucket.tryAcquire(START + 99 * MILLI));
+        assertTrue(bucket.tryAcquire(START + 100 * MILLI));
+        assertFalse(bucket.tryAcquire(START + 100 * MILLI));
+    }
+
+    @Test
+    void idleTimeDoesNotAccumulateBeyondBurst() {
+        drain(START);
+
+        assertEquals(5, drain(START + 60_000 * MILLI));
+        assertEquals(0, bucket.nanosUntilNextPermit(START + 120_000 * MILLI));
+    }
+
+    @Test
+    void sustainedRateMatchesPermitsPerSecond() {
+        int granted = 0;
+        // 10 секунд попыток каждую миллисекунду
+        for (long now = START; now < START + 10_000 * MILLI; now += MILLI) {
+            if (bucket.tryAcquire(now)) {
+                granted++;
+            }
+        }
+        assertEquals(5 + 10 * 10 - 1, granted);
+    }
+
+    @Test
+    void concurrentCallersShareBurst() throws Exception {
+        int threads = 8;
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> callers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                callers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1_000; i++) {
+                        if (bucket.tryAcquire(START)) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> caller : callers) {
+                caller.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(5, granted.get());
+    }
+
+    private int drain(long now) {
+        int granted = 0;
+        while (bucket.tryAcquire(now)) {
+            granted++;
+        }
+        return granted;
+    }
+}